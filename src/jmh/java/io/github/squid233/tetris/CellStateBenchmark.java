@@ -0,0 +1,58 @@
+package io.github.squid233.tetris;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author squid233
+ * @since 0.1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CellStateBenchmark {
+    @Param
+    public WallFill fill;
+    @Param({"I", "O", "T"})
+    public CellStateType type;
+    @Param({"15x25", "200x4000"})
+    public String size;
+    private Wall wall;
+    private CellState state;
+
+    @Setup
+    public void setup() {
+        wall = fill.create(size);
+        state = new CellState();
+        state.reset(type, wall);
+    }
+
+    @Benchmark
+    public boolean isOnGround() {
+        return state.isOnGround(wall);
+    }
+
+    @Benchmark
+    public boolean moveLeft() {
+        final boolean moved = state.moveLeft(wall);
+        if (moved) state.moveRight(wall);
+        return moved;
+    }
+
+    @Benchmark
+    public boolean moveRight() {
+        final boolean moved = state.moveRight(wall);
+        if (moved) state.moveLeft(wall);
+        return moved;
+    }
+
+    @Benchmark
+    public int dropDown() {
+        state.reset(type, wall);
+        return state.dropDown(wall);
+    }
+}
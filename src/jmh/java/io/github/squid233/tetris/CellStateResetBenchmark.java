@@ -0,0 +1,28 @@
+package io.github.squid233.tetris;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author squid233
+ * @since 0.1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CellStateResetBenchmark {
+    @Param
+    public CellStateType type;
+    private final CellState state = new CellState();
+    private final Wall wall = new Wall();
+
+    @Benchmark
+    public CellState reset() {
+        state.reset(type, wall);
+        return state;
+    }
+}
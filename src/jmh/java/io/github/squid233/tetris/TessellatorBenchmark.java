@@ -0,0 +1,77 @@
+package io.github.squid233.tetris;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CPU side of rendering the wall. Nothing is uploaded, so no GL context is needed.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TessellatorBenchmark {
+    @Param({"EMPTY", "HALF", "HIGH"})
+    public WallFill fill;
+    @Param({"15x25", "200x4000"})
+    public String size;
+    private Wall wall;
+    private WallView view;
+    private CellState state;
+    private Tessellator tessellator;
+    private WallMesh wallMesh;
+    private CellInstances cellInstances;
+
+    @Setup
+    public void setup() {
+        wall = fill.create(size);
+        state = new CellState();
+        state.reset(CellStateType.T, wall);
+        view = new WallView();
+        view.update(wall, state, 1280, 720, GameRenderer.MAX_BATCH_QUADS);
+        tessellator = new Tessellator(new QuadIndexBuffer(GameRenderer.MAX_BATCH_QUADS), GLFeatures.NONE);
+        wallMesh = new WallMesh();
+        wallMesh.update(wall, view);
+        cellInstances = new CellInstances();
+    }
+
+    @TearDown
+    public void tearDown() {
+        tessellator.dispose();
+    }
+
+    @Benchmark
+    public Tessellator renderWall() {
+        tessellator.begin();
+        CellRenderer.renderWall(tessellator, Sprite.WHOLE, wall, view);
+        CellRenderer.renderState(tessellator, Sprite.WHOLE, state);
+        return tessellator;
+    }
+
+    @Benchmark
+    public WallMesh updateWallMeshUnchanged() {
+        wallMesh.update(wall, view);
+        return wallMesh;
+    }
+
+    @Benchmark
+    public WallMesh updateWallMeshOneRow() {
+        wall.setCell(wall.getCell(0, view.bottom()), 0, view.bottom());
+        wallMesh.update(wall, view);
+        wallMesh.clearDirty();
+        return wallMesh;
+    }
+
+    @Benchmark
+    public CellInstances updateCellInstances() {
+        wall.setCell(wall.getCell(0, view.bottom()), 0, view.bottom());
+        cellInstances.update(wall, view, state);
+        return cellInstances;
+    }
+}
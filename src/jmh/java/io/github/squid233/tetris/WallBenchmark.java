@@ -0,0 +1,69 @@
+package io.github.squid233.tetris;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author squid233
+ * @since 0.1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WallBenchmark {
+    @Param({"EMPTY", "HALF", "HIGH"})
+    public WallFill fill;
+    @Param({"15x25", "200x4000"})
+    public String size;
+    private Wall wall;
+
+    @Setup
+    public void setup() {
+        wall = fill.create(size);
+    }
+
+    @Benchmark
+    public int getCell() {
+        int sum = 0;
+        for (int y = 0, height = wall.height(); y < height; y++) {
+            for (int x = 0, width = wall.width(); x < width; x++) {
+                sum += wall.getCell(x, y).ordinal();
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public Wall setCell() {
+        for (int y = 0, height = wall.height(); y < height; y++) {
+            for (int x = 0, width = wall.width(); x < width; x++) {
+                wall.setCell(wall.getCell(x, y), x, y);
+            }
+        }
+        return wall;
+    }
+
+    /**
+     * Places a piece on the stack and takes it out again, the per-tick work of the wall.
+     */
+    @Benchmark
+    public boolean placeAndCollide() {
+        final int shape = CellStateType.T.shape(Direction.UP);
+        final int x = wall.width() / 2 - 2;
+        final int y = wall.top();
+        final boolean collides = wall.collides(shape, x, y);
+        wall.place(shape, x, y, CellType.MAGENTA);
+        for (int dy = 0; dy < CellState.STATE_HEIGHT; dy++) {
+            for (int dx = 0; dx < CellState.STATE_WIDTH; dx++) {
+                if ((shape >>> (dy * CellState.STATE_WIDTH + dx) & 1) != 0) {
+                    wall.setCell(CellType.NONE, x + dx, y + dy);
+                }
+            }
+        }
+        return collides;
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.squid233.tetris;
+
+import java.util.SplittableRandom;
+
+/**
+ * The wall fill patterns used by the benchmarks.
+ * <p>
+ * Every filled row keeps at least one hole, so the patterns never contain a full row.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public enum WallFill {
+    EMPTY,
+    LOW,
+    HALF,
+    HIGH;
+
+    private int height(int visibleHeight) {
+        return switch (this) {
+            case EMPTY -> 0;
+            case LOW -> Math.min(4, visibleHeight);
+            case HALF -> visibleHeight / 2;
+            case HIGH -> Math.max(visibleHeight - 2, 0);
+        };
+    }
+
+    public Wall create() {
+        return create(Wall.DEFAULT_WIDTH, Wall.DEFAULT_VISIBLE_HEIGHT);
+    }
+
+    /**
+     * Creates a filled wall of the given size.
+     *
+     * @param size the size as {@code <width>x<visible height>}, e.g. {@code 15x25}.
+     * @return the wall.
+     */
+    public Wall create(String size) {
+        final int separator = size.indexOf('x');
+        return create(Integer.parseInt(size.substring(0, separator)), Integer.parseInt(size.substring(separator + 1)));
+    }
+
+    public Wall create(int width, int visibleHeight) {
+        final Wall wall = new Wall(width, visibleHeight);
+        final SplittableRandom random = new SplittableRandom(42);
+        final int height = height(visibleHeight);
+        for (int y = 0; y < height; y++) {
+            final int hole = random.nextInt(width);
+            for (int x = 0; x < width; x++) {
+                if (x != hole && random.nextInt(4) != 0) {
+                    wall.setCell(CellType.byId(1 + random.nextInt(CellType.VALUE_COUNT - 1)), x, y);
+                }
+            }
+        }
+        return wall;
+    }
+}
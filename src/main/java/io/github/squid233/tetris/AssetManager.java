@@ -0,0 +1,271 @@
+package io.github.squid233.tetris;
+
+import org.overrun.glib.RuntimeHelper;
+import org.overrun.glib.stb.STBImage;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentScope;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+/**
+ * Loads and caches the images of the game.
+ * <p>
+ * Images are decoded on virtual threads as soon as they are requested, and each name is only decoded once until
+ * it is uploaded; the decoded pixels are freed as soon as they are in a texture.
+ * Sprites requested with {@link #requestSprite(String)} are packed into one atlas texture by {@link #stitch()},
+ * so drawing any of them only needs the atlas bound. The pixels of the atlas are kept, so a later stitch copies
+ * the sprites already in it instead of decoding them again. Textures are only created on the GL thread, in
+ * {@link #stitch()} and {@link #texture(String)}.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class AssetManager implements Disposable {
+    /**
+     * The empty pixels between two sprites in the atlas.
+     */
+    private static final int PADDING = 1;
+    private final ExecutorService decoder = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, CompletableFuture<Image>> images = new ConcurrentHashMap<>();
+    private final Set<String> pendingSprites = new LinkedHashSet<>();
+    private final Map<String, Sprite> sprites = new HashMap<>();
+    private final Map<String, Texture> textures = new HashMap<>();
+    private Texture atlas;
+    private Arena atlasArena;
+    private MemorySegment atlasPixels;
+    private int atlasSize;
+
+    /**
+     * A decoded image in RGBA, allocated by STB.
+     *
+     * @param name   the name of the image.
+     * @param width  the width.
+     * @param height the height.
+     * @param pixels the pixels.
+     * @author squid233
+     * @since 0.1.0
+     */
+    public record Image(String name, int width, int height, MemorySegment pixels) {
+        public void free() {
+            STBImage.imageFree(pixels);
+        }
+    }
+
+    /**
+     * The pixels of a sprite to pack, in a decoded image or in the previous atlas.
+     *
+     * @param name   the name of the sprite.
+     * @param width  the width.
+     * @param height the height.
+     * @param pixels the segment holding the pixels.
+     * @param offset the offset of the first row.
+     * @param stride the bytes between two rows.
+     * @author squid233
+     * @since 0.1.0
+     */
+    private record Region(String name, int width, int height, MemorySegment pixels, long offset, long stride) {
+        Region(Image image) {
+            this(image.name(), image.width(), image.height(), image.pixels(), 0, image.width() * 4L);
+        }
+    }
+
+    private static Image decode(String name) {
+        try (Arena arena = Arena.openConfined()) {
+            final MemorySegment pw = arena.allocate(JAVA_INT);
+            final MemorySegment ph = arena.allocate(JAVA_INT);
+            final MemorySegment pc = arena.allocate(JAVA_INT);
+            final MemorySegment data = STBImage.loadFromMemory(IOUtil.ioResourceToSegment(arena.scope(), name), pw, ph, pc, STBImage.RGB_ALPHA);
+            if (data.address() == RuntimeHelper.NULL) {
+                throw new IllegalStateException("Failed to load image " + name + ": " + STBImage.failureReason());
+            }
+            final int width = pw.get(JAVA_INT, 0);
+            final int height = ph.get(JAVA_INT, 0);
+            return new Image(name, width, height, MemorySegment.ofAddress(data.address(), (long) width * height * 4, SegmentScope.global()));
+        } catch (IllegalStateException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to load image " + name, e);
+        }
+    }
+
+    /**
+     * Starts decoding an image if it is not decoding or decoded yet.
+     *
+     * @param name the resource name of the image.
+     * @return the decoded image.
+     */
+    private CompletableFuture<Image> image(String name) {
+        return images.computeIfAbsent(name, k -> CompletableFuture.supplyAsync(Startup.timed("decode " + k, () -> decode(k)), decoder));
+    }
+
+    private Image join(String name) {
+        try {
+            return image(name).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
+
+    /**
+     * Requests an image to be packed into the atlas by the next {@link #stitch()}, and starts decoding it.
+     *
+     * @param name the resource name of the image.
+     */
+    public void requestSprite(String name) {
+        if (!sprites.containsKey(name) && pendingSprites.add(name)) {
+            image(name);
+        }
+    }
+
+    /**
+     * Packs all requested sprites into a new atlas texture and uploads it. Only called on the GL thread.
+     * <p>
+     * The sprites are packed in rows from the tallest to the shortest, into the smallest power-of-two square
+     * that fits them.
+     */
+    public void stitch() {
+        if (pendingSprites.isEmpty()) return;
+        final List<Region> packed = new ArrayList<>();
+        final List<Image> decoded = new ArrayList<>();
+        final long oldStride = atlasSize * 4L;
+        for (Map.Entry<String, Sprite> entry : sprites.entrySet()) {
+            final Sprite sprite = entry.getValue();
+            final int x = Math.round(sprite.u0() * atlasSize);
+            final int y = Math.round(sprite.v0() * atlasSize);
+            packed.add(new Region(entry.getKey(), sprite.width(), sprite.height(),
+                atlasPixels, y * oldStride + x * 4L, oldStride));
+        }
+        for (String name : pendingSprites) {
+            final Image image = join(name);
+            decoded.add(image);
+            packed.add(new Region(image));
+        }
+        pendingSprites.clear();
+        packed.sort(Comparator.comparingInt(Region::height).reversed());
+
+        int size = 64;
+        int[] positions;
+        while ((positions = pack(packed, size)) == null) {
+            size *= 2;
+        }
+        final Arena arena = Arena.openConfined();
+        final MemorySegment pixels = arena.allocate((long) size * size * 4);
+        final long stride = (long) size * 4;
+        for (int i = 0; i < packed.size(); i++) {
+            final Region region = packed.get(i);
+            final int x = positions[i * 2];
+            final int y = positions[i * 2 + 1];
+            for (int row = 0; row < region.height(); row++) {
+                MemorySegment.copy(region.pixels(), region.offset() + row * region.stride(),
+                    pixels, y * stride + row * stride + x * 4L,
+                    region.width() * 4L);
+            }
+            sprites.put(region.name(), new Sprite((float) x / size,
+                (float) y / size,
+                (float) (x + region.width()) / size,
+                (float) (y + region.height()) / size,
+                region.width(), region.height()));
+        }
+        if (atlas != null) atlas.dispose();
+        atlas = new Texture(size, size, pixels);
+        if (atlasArena != null) atlasArena.close();
+        atlasArena = arena;
+        atlasPixels = pixels;
+        atlasSize = size;
+        for (Image image : decoded) {
+            release(image);
+        }
+    }
+
+    /**
+     * Frees an uploaded image, so the next request of its name decodes it again.
+     *
+     * @param image the image.
+     */
+    private void release(Image image) {
+        images.remove(image.name());
+        image.free();
+    }
+
+    private static int[] pack(List<Region> regions, int size) {
+        final int[] positions = new int[regions.size() * 2];
+        int x = 0, y = 0, rowHeight = 0;
+        for (int i = 0; i < regions.size(); i++) {
+            final Region region = regions.get(i);
+            if (region.width() > size) return null;
+            if (x + region.width() > size) {
+                x = 0;
+                y += rowHeight + PADDING;
+                rowHeight = 0;
+            }
+            if (y + region.height() > size) return null;
+            positions[i * 2] = x;
+            positions[i * 2 + 1] = y;
+            x += region.width() + PADDING;
+            rowHeight = Math.max(rowHeight, region.height());
+        }
+        return positions;
+    }
+
+    /**
+     * {@return the sprite of the given image in the atlas}
+     *
+     * @param name the resource name of the image. must have been stitched.
+     */
+    public Sprite sprite(String name) {
+        final Sprite sprite = sprites.get(name);
+        if (sprite == null) {
+            throw new IllegalStateException("The sprite " + name + " was not stitched");
+        }
+        return sprite;
+    }
+
+    /**
+     * {@return the atlas texture of the sprites}
+     */
+    public Texture atlas() {
+        return atlas;
+    }
+
+    /**
+     * Gets or creates a standalone texture, for images too large for the atlas. Only called on the GL thread.
+     *
+     * @param name the resource name of the image.
+     * @return the texture.
+     */
+    public Texture texture(String name) {
+        return textures.computeIfAbsent(name, k -> {
+            final Image image = join(k);
+            final Texture texture = new Texture(image.width(), image.height(), image.pixels());
+            release(image);
+            return texture;
+        });
+    }
+
+    @Override
+    public void dispose() {
+        decoder.shutdown();
+        for (CompletableFuture<Image> future : images.values()) {
+            future.thenAccept(Image::free);
+        }
+        images.clear();
+        if (atlas != null) atlas.dispose();
+        if (atlasArena != null) atlasArena.close();
+        textures.values().forEach(Texture::dispose);
+        textures.clear();
+    }
+}
@@ -0,0 +1,143 @@
+package io.github.squid233.tetris;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentScope;
+import java.lang.foreign.ValueLayout;
+import java.net.URISyntaxException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A memory-mapped file of assets.
+ * <pre>{@code
+ * header: magic "TPAK", i32 version, i32 entry count
+ * index:  for each entry: u16 name length, UTF-8 name, i64 offset, i64 length
+ * data:   the entries, each aligned to 8 bytes
+ * }</pre>
+ * All numbers are big-endian and the offsets are from the start of the file. The file is mapped once and each
+ * entry is a slice of the mapping, so loading an asset from a pack does not copy it.
+ * <p>
+ * Packs are built from {@code src/main/resources} and the Unifont font by {@link AssetPackWriter},
+ * with {@code ./gradlew assetPack}.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class AssetPack {
+    static final int MAGIC = 0x5450414b;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 4 + 4 + 4;
+    static final int ALIGNMENT = 8;
+    static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    public static final String FILE_NAME = "tetris.tpak";
+    /**
+     * The pack used by {@link IOUtil}: {@link #FILE_NAME} next to the jar, where {@code ./gradlew assetPack} writes it.
+     * Can be changed with {@code -Dtetris.assetPack=<file>}.
+     */
+    public static final String DEFAULT_PATH = System.getProperty("tetris.assetPack", besideCode());
+    private final Map<String, MemorySegment> entries = new HashMap<>();
+
+    private AssetPack(Path path, MemorySegment segment) {
+        final long size = segment.byteSize();
+        if (size < HEADER_SIZE || segment.get(INT, 0) != MAGIC) {
+            throw new IllegalStateException("Not an asset pack: " + path);
+        }
+        final int version = segment.get(INT, 4);
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported asset pack version " + version + ": " + path);
+        }
+        final int count = segment.get(INT, 8);
+        long pos = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            final int nameLength = Short.toUnsignedInt(segment.get(SHORT, pos));
+            pos += 2;
+            final String name = new String(segment.asSlice(pos, nameLength).toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
+            pos += nameLength;
+            final long offset = segment.get(LONG, pos);
+            final long length = segment.get(LONG, pos + 8);
+            pos += 16;
+            if (offset < 0 || length < 0 || offset + length > size) {
+                throw new IllegalStateException("The entry " + name + " is out of bounds: " + path);
+            }
+            entries.put(name, segment.asSlice(offset, length));
+        }
+    }
+
+    /**
+     * {@return {@link #FILE_NAME} in the directory of the jar, or of the class directory when not run from a jar}
+     * Falls back to the working directory if the location of the code is unknown.
+     */
+    private static String besideCode() {
+        try {
+            final CodeSource source = AssetPack.class.getProtectionDomain().getCodeSource();
+            if (source != null) {
+                final Path location = Path.of(source.getLocation().toURI());
+                final Path dir = Files.isDirectory(location) ? location : location.getParent();
+                if (dir != null) return dir.resolve(FILE_NAME).toString();
+            }
+        } catch (URISyntaxException | IllegalArgumentException | FileSystemNotFoundException | SecurityException ignored) {
+        }
+        return FILE_NAME;
+    }
+
+    /**
+     * Maps an asset pack.
+     *
+     * @param path  the pack file.
+     * @param scope the segment scope. must be alive until the assets are no longer used.
+     * @return the asset pack.
+     * @throws IOException if an IO error occurs.
+     */
+    public static AssetPack open(Path path, SegmentScope scope) throws IOException {
+        try (var fc = FileChannel.open(path)) {
+            return new AssetPack(path, fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size(), scope));
+        }
+    }
+
+    /**
+     * {@return the pack at {@link #DEFAULT_PATH}, or {@code null} if there is no such file}
+     * The pack is mapped on the first call and stays mapped.
+     */
+    public static @Nullable AssetPack defaultPack() {
+        return DefaultHolder.PACK;
+    }
+
+    /**
+     * {@return the data of an asset, or {@code null} if the pack does not contain it}
+     *
+     * @param name the resource name of the asset.
+     */
+    public @Nullable MemorySegment get(String name) {
+        return entries.get(name);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static final class DefaultHolder {
+        private static final @Nullable AssetPack PACK = openDefault();
+
+        private static @Nullable AssetPack openDefault() {
+            final Path path = Path.of(DEFAULT_PATH);
+            if (!Files.isReadable(path)) return null;
+            try {
+                return open(path, SegmentScope.global());
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to open the asset pack " + path, e);
+            }
+        }
+    }
+}
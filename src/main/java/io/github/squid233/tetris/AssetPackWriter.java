@@ -0,0 +1,132 @@
+package io.github.squid233.tetris;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Builds an {@link AssetPack} from a directory and resources on the classpath, such as the font of a dependency.
+ * The names of the entries are the paths relative to the directory, separated by {@code /}, and the resource names,
+ * so they match the names {@link IOUtil} looks up.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class AssetPackWriter {
+    private AssetPackWriter() {
+    }
+
+    /**
+     * An entry to write: a file, or the data of a classpath resource.
+     */
+    private record Entry(String name, @Nullable Path file, byte @Nullable [] data) {
+        long length() throws IOException {
+            return file != null ? Files.size(file) : data.length;
+        }
+    }
+
+    private static long align(long offset) {
+        return (offset + AssetPack.ALIGNMENT - 1) / AssetPack.ALIGNMENT * AssetPack.ALIGNMENT;
+    }
+
+    /**
+     * Writes a pack of all files in a directory and the given classpath resources.
+     *
+     * @param dir       the directory.
+     * @param resources the names of the classpath resources.
+     * @param output    the pack file.
+     * @throws IOException if an IO error occurs.
+     */
+    public static void write(Path dir, List<String> resources, Path output) throws IOException {
+        final List<Entry> entries = new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(dir)) {
+            stream.filter(Files::isRegularFile)
+                .map(file -> new Entry(dir.relativize(file).toString().replace('\\', '/'), file, null))
+                .forEach(entries::add);
+        }
+        for (String resource : resources) {
+            try (var is = AssetPackWriter.class.getClassLoader().getResourceAsStream(resource)) {
+                Objects.requireNonNull(is, "Failed to load resource '" + resource + "'!");
+                entries.add(new Entry(resource, null, is.readAllBytes()));
+            }
+        }
+        entries.sort(Comparator.comparing(Entry::name));
+
+        final byte[][] names = new byte[entries.size()][];
+        long indexSize = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            final String name = entries.get(i).name();
+            if (i > 0 && name.equals(entries.get(i - 1).name())) {
+                throw new IllegalStateException("Duplicate entry: " + name);
+            }
+            names[i] = name.getBytes(StandardCharsets.UTF_8);
+            if (names[i].length > 0xffff) {
+                throw new IllegalStateException("The name is too long: " + name);
+            }
+            indexSize += 2 + names[i].length + 16;
+        }
+        final long[] offsets = new long[entries.size()];
+        long size = align(AssetPack.HEADER_SIZE + indexSize);
+        for (int i = 0; i < entries.size(); i++) {
+            offsets[i] = size;
+            size = align(size + entries.get(i).length());
+        }
+
+        if (output.getParent() != null) Files.createDirectories(output.getParent());
+        try (var fc = FileChannel.open(output,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+             Arena arena = Arena.openConfined()) {
+            final MemorySegment segment = fc.map(FileChannel.MapMode.READ_WRITE, 0, size, arena.scope());
+            segment.set(AssetPack.INT, 0, AssetPack.MAGIC);
+            segment.set(AssetPack.INT, 4, AssetPack.VERSION);
+            segment.set(AssetPack.INT, 8, entries.size());
+            long pos = AssetPack.HEADER_SIZE;
+            for (int i = 0; i < entries.size(); i++) {
+                final Entry entry = entries.get(i);
+                final long length = entry.length();
+                segment.set(AssetPack.SHORT, pos, (short) names[i].length);
+                pos += 2;
+                MemorySegment.copy(names[i], 0, segment, ValueLayout.JAVA_BYTE, pos, names[i].length);
+                pos += names[i].length;
+                segment.set(AssetPack.LONG, pos, offsets[i]);
+                segment.set(AssetPack.LONG, pos + 8, length);
+                pos += 16;
+                if (entry.file() != null) {
+                    try (var in = FileChannel.open(entry.file())) {
+                        MemorySegment.copy(in.map(FileChannel.MapMode.READ_ONLY, 0, length, arena.scope()), 0,
+                            segment, offsets[i], length);
+                    }
+                } else {
+                    MemorySegment.copy(entry.data(), 0, segment, ValueLayout.JAVA_BYTE, offsets[i], (int) length);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a pack.
+     *
+     * @param args the directory, the pack file and the names of the classpath resources to add.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: AssetPackWriter <dir> <output> [classpath resource...]");
+            System.exit(1);
+        }
+        write(Path.of(args[0]), List.of(args).subList(2, args.length), Path.of(args[1]));
+    }
+}
@@ -0,0 +1,100 @@
+package io.github.squid233.tetris;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentScope;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT_UNALIGNED;
+
+/**
+ * The per-instance stream of the instanced cell renderer: cell x and y (unsigned shorts) and the
+ * {@link CellType} ordinal (unsigned byte) of each occupied cell.
+ * <p>
+ * Only the cells in a {@link WallView} are written. The settled cells are written first and are only rebuilt
+ * when the wall or the view changes; the falling piece is appended after them. The positions are in wall
+ * coordinates. This class does not call GL.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class CellInstances {
+    public static final int STRIDE = 6;
+    private MemorySegment segment = MemorySegment.NULL;
+    private Wall builtWall;
+    private long builtModCount;
+    private int left, bottom, right, top;
+    private int wallCount;
+    private int count;
+    private boolean wallChanged;
+
+    private void put(int index, int x, int y, CellType type) {
+        final long offset = (long) index * STRIDE;
+        segment.set(JAVA_SHORT_UNALIGNED, offset, (short) x);
+        segment.set(JAVA_SHORT_UNALIGNED, offset + 2, (short) y);
+        segment.set(JAVA_BYTE, offset + 4, (byte) type.ordinal());
+    }
+
+    /**
+     * Rebuilds the instances.
+     *
+     * @param wall  the wall.
+     * @param view  the cells to write.
+     * @param state the falling piece.
+     */
+    public void update(Wall wall, WallView view, CellState state) {
+        wallChanged = wall != builtWall || wall.modCount() != builtModCount ||
+                      view.left() != left || view.bottom() != bottom || view.right() != right || view.top() != top;
+        if (wallChanged) {
+            final long capacity = ((long) view.columns() * view.rows() + CellState.STATE_SIZE) * STRIDE;
+            if (segment.byteSize() < capacity) {
+                segment = MemorySegment.allocateNative(capacity, SegmentScope.auto());
+            }
+            left = view.left();
+            bottom = view.bottom();
+            right = view.right();
+            top = view.top();
+            wallCount = 0;
+            for (int y = bottom, yEnd = Math.min(top, wall.top()); y < yEnd; y++) {
+                for (int w = left >>> 6, wEnd = (right + 63) >>> 6; w < wEnd; w++) {
+                    long row = wall.rowWord(y, w);
+                    while (row != 0) {
+                        final int x = (w << 6) + Long.numberOfTrailingZeros(row);
+                        row &= row - 1;
+                        if (x < left || x >= right) continue;
+                        put(wallCount++, x, y, wall.getCell(x, y));
+                    }
+                }
+            }
+            builtWall = wall;
+            builtModCount = wall.modCount();
+        }
+        count = wallCount;
+        final CellType color = state.color();
+        for (int dy = 0; dy < CellState.STATE_HEIGHT; dy++) {
+            for (int dx = 0; dx < CellState.STATE_WIDTH; dx++) {
+                if (state.isCell(dx, dy) && view.contains(state.x() + dx, state.y() + dy)) {
+                    put(count++, state.x() + dx, state.y() + dy, color);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@return whether the settled cells were rebuilt by the last update}
+     */
+    public boolean wallChanged() {
+        return wallChanged;
+    }
+
+    public int wallCount() {
+        return wallCount;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public MemorySegment segment() {
+        return segment;
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.squid233.tetris;
+
+/**
+ * Tessellates the cells. This class only writes into the {@link Tessellator} buffers and does not call GL.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class CellRenderer {
+    private CellRenderer() {
+    }
+
+    public static void renderCell(Tessellator t, Sprite sprite, int x, int y, CellType type) {
+        if (type == CellType.NONE) return;
+        final float x0 = x * Wall.CELL_SIZE;
+        final float y0 = y * Wall.CELL_SIZE;
+        final float x1 = (x + 1) * Wall.CELL_SIZE;
+        final float y1 = (y + 1) * Wall.CELL_SIZE;
+        t.quad(x0, y0, x1, y1, sprite.u0(), sprite.v0(), sprite.u1(), sprite.v1(), type.colorRGB());
+    }
+
+    public static void renderWall(Tessellator t, Sprite sprite, Wall wall, WallView view) {
+        for (int y = view.bottom(), top = Math.min(view.top(), wall.top()); y < top; y++) {
+            for (int x = view.left(), right = view.right(); x < right; x++) {
+                renderCell(t, sprite, x, y, wall.getCell(x, y));
+            }
+        }
+    }
+
+    public static void renderState(Tessellator t, Sprite sprite, CellState state) {
+        final CellType color = state.color();
+        for (int dy = 0; dy < CellState.STATE_HEIGHT; dy++) {
+            for (int dx = 0; dx < CellState.STATE_WIDTH; dx++) {
+                if (state.isCell(dx, dy)) {
+                    renderCell(t, sprite, state.x() + dx, state.y() + dy, color);
+                }
+            }
+        }
+    }
+}
@@ -1,133 +1,218 @@
 package io.github.squid233.tetris;
 
-import org.joml.Vector2i;
-
-import java.util.Arrays;
+import org.jetbrains.annotations.Nullable;
 
 /**
+ * The falling tetromino.
+ * <p>
+ * A state is an origin plus one of the precomputed shape masks of {@link CellStateType};
+ * moving only changes the origin and rotating looks up another mask.
+ *
  * @author squid233
  * @since 0.1.0
  */
 public final class CellState {
-    public static final int DEFAULT_X = Wall.WALL_WIDTH / 2 - 2;
-    public static final int DEFAULT_Y = Wall.WALL_HEIGHT - 4;
     public static final int STATE_WIDTH = 4;
     public static final int STATE_HEIGHT = 4;
     public static final int STATE_SIZE = STATE_WIDTH * STATE_HEIGHT;
-    public Direction direction = Direction.UP;
-    public final CellType[] cellMatrix = new CellType[STATE_SIZE];
-    public final Vector2i[] posMatrix = new Vector2i[STATE_SIZE];
+    private @Nullable CellStateType type;
+    private Direction direction = Direction.UP;
+    private int shape;
+    private int x;
+    private int y;
 
     public CellState() {
-        for (int i = 0; i < posMatrix.length; i++) {
-            posMatrix[i] = new Vector2i();
-        }
         resetToNone();
     }
 
     private void resetToNone() {
+        type = null;
         direction = Direction.UP;
-        Arrays.fill(cellMatrix, CellType.NONE);
-        for (int y = 0; y < STATE_HEIGHT; y++) {
-            for (int x = 0; x < STATE_WIDTH; x++) {
-                posMatrix[y * STATE_HEIGHT + x].set(x + DEFAULT_X, y + DEFAULT_Y);
-            }
-        }
+        shape = 0;
+        x = 0;
+        y = 0;
     }
 
-    public void reset(CellStateType type) {
-        resetToNone();
-        final CellType color = type.color();
-        switch (type) {
-            case I -> set(1, 0, color)
-                .set(1, 1, color)
-                .set(1, 2, color)
-                .set(1, 3, color);
-            case O -> set(1, 1, color)
-                .set(1, 2, color)
-                .set(2, 1, color)
-                .set(2, 2, color);
-            case L -> set(1, 1, color)
-                .set(1, 2, color)
-                .set(1, 3, color)
-                .set(2, 1, color);
-            case J -> set(1, 1, color)
-                .set(2, 1, color)
-                .set(2, 2, color)
-                .set(2, 3, color);
-            case T -> set(1, 1, color)
-                .set(2, 1, color)
-                .set(3, 1, color)
-                .set(2, 2, color);
-            case S -> set(1, 1, color)
-                .set(2, 1, color)
-                .set(2, 2, color)
-                .set(3, 2, color);
-            case Z -> set(1, 2, color)
-                .set(2, 2, color)
-                .set(2, 1, color)
-                .set(3, 1, color);
-        }
+    /**
+     * {@return the x position where the pieces spawn in the given wall}
+     *
+     * @param wall the wall.
+     */
+    public static int spawnX(Wall wall) {
+        return wall.width() / 2 - 2;
     }
 
-    private CellState set(int x, int y, CellType type) {
-        cellMatrix[y * STATE_WIDTH + x] = type;
-        return this;
+    /**
+     * {@return the y position where the pieces spawn in the given wall}
+     *
+     * @param wall the wall.
+     */
+    public static int spawnY(Wall wall) {
+        return wall.height() - STATE_HEIGHT;
     }
 
-    public void moveLeft(Wall wall) {
-        for (int i = 0; i < STATE_SIZE; i++) {
-            if (cellMatrix[i] == CellType.NONE) continue;
-            final Vector2i pos = posMatrix[i];
-            if (pos.x() <= 0 ||
-                wall.getCell(pos.x() - 1, pos.y()) != CellType.NONE) return;
-        }
-        for (Vector2i vec : posMatrix) {
-            vec.x--;
-        }
+    /**
+     * Sets this state to a new piece at the spawn position of the wall.
+     *
+     * @param type the type of the piece.
+     * @param wall the wall.
+     */
+    public void reset(CellStateType type, Wall wall) {
+        this.type = type;
+        direction = Direction.UP;
+        shape = type.shape(direction);
+        x = spawnX(wall);
+        y = spawnY(wall);
     }
 
-    public void moveRight(Wall wall) {
-        for (int i = 0; i < STATE_SIZE; i++) {
-            if (cellMatrix[i] == CellType.NONE) continue;
-            final Vector2i pos = posMatrix[i];
-            if (pos.x() >= Wall.WALL_WIDTH - 1 ||
-                wall.getCell(pos.x() + 1, pos.y()) != CellType.NONE) return;
-        }
-        for (Vector2i vec : posMatrix) {
-            vec.x++;
-        }
+    /**
+     * Sets this state to the given type, direction and origin without checking collisions.
+     *
+     * @param type      the type.
+     * @param direction the direction.
+     * @param x         the x position of the origin.
+     * @param y         the y position of the origin.
+     */
+    public void set(CellStateType type, Direction direction, int x, int y) {
+        this.type = type;
+        this.direction = direction;
+        shape = type.shape(direction);
+        this.x = x;
+        this.y = y;
     }
 
-    public void moveDown(Wall wall) {
-        if (isOnGround(wall)) return;
-        for (Vector2i vec : posMatrix) {
-            vec.y--;
+    public void set(CellState other) {
+        type = other.type;
+        direction = other.direction;
+        shape = other.shape;
+        x = other.x;
+        y = other.y;
+    }
+
+    private boolean collides(Wall wall, int offsetX, int offsetY) {
+        return wall.collides(shape, x + offsetX, y + offsetY);
+    }
+
+    public boolean moveLeft(Wall wall) {
+        if (collides(wall, -1, 0)) return false;
+        x--;
+        return true;
+    }
+
+    public boolean moveRight(Wall wall) {
+        if (collides(wall, 1, 0)) return false;
+        x++;
+        return true;
+    }
+
+    public boolean moveDown(Wall wall) {
+        if (isOnGround(wall)) return false;
+        y--;
+        return true;
+    }
+
+    /**
+     * Moves this state down until it is on the ground.
+     * The rows above the {@link Wall#top() top} of the wall are empty, so the state skips them at once and
+     * only steps through the occupied rows, however tall the wall is.
+     *
+     * @param wall the wall.
+     * @return the count of the rows moved.
+     */
+    public int dropDown(Wall wall) {
+        int rows = Math.max(y - wall.top(), 0);
+        y -= rows;
+        while (!isOnGround(wall)) {
+            y--;
+            rows++;
         }
+        return rows;
     }
 
-    public void dropDown(Wall wall) {
-        while (!isOnGround(wall)) moveDown(wall);
+    public boolean rotateClockwise(Wall wall) {
+        return rotate(wall, true);
     }
 
-    public boolean isOnGround(Wall wall) {
-        for (int i = 0; i < STATE_SIZE; i++) {
-            if (cellMatrix[i] == CellType.NONE) continue;
-            final Vector2i pos = posMatrix[i];
-            if (pos.y() < 1 ||
-                wall.getCell(pos.x(), pos.y() - 1) != CellType.NONE) {
+    public boolean rotateCounterClockwise(Wall wall) {
+        return rotate(wall, false);
+    }
+
+    private boolean rotate(Wall wall, boolean clockwise) {
+        if (type == null) return false;
+        final Direction to = clockwise ? direction.clockwise() : direction.counterClockwise();
+        final int rotated = type.shape(to);
+        for (int i = 0; i < CellStateType.KICK_TESTS; i++) {
+            final int kx = x + type.kickX(direction, clockwise, i);
+            final int ky = y + type.kickY(direction, clockwise, i);
+            if (!wall.collides(rotated, kx, ky)) {
+                x = kx;
+                y = ky;
+                direction = to;
+                shape = rotated;
                 return true;
             }
         }
         return false;
     }
 
-    public void fixToWall(Wall wall) {
-        for (int i = 0; i < STATE_SIZE; i++) {
-            final CellType cell = cellMatrix[i];
-            if (cell == CellType.NONE) continue;
-            final Vector2i pos = posMatrix[i];
-            wall.setCell(cell, pos.x(), pos.y());
-        }
+    public boolean isOnGround(Wall wall) {
+        return collides(wall, 0, -1);
+    }
+
+    /**
+     * Tests whether this state overlaps the settled cells at its current position,
+     * e.g. when it was just spawned.
+     *
+     * @param wall the wall.
+     * @return {@code true} if this state is blocked.
+     */
+    public boolean isBlocked(Wall wall) {
+        return collides(wall, 0, 0);
+    }
+
+    /**
+     * Writes this state into the wall and clears the completed rows.
+     *
+     * @param wall the wall.
+     * @return the cleared rows.
+     */
+    public LineClearResult fixToWall(Wall wall) {
+        wall.place(shape, x, y, color());
+        return wall.clearLines(y, y + STATE_HEIGHT - 1);
+    }
+
+    /**
+     * Tests whether the cell at the given position relative to the origin is occupied.
+     *
+     * @param dx the x position in the state, less than {@link #STATE_WIDTH}.
+     * @param dy the y position in the state, less than {@link #STATE_HEIGHT}.
+     * @return {@code true} if the cell is occupied.
+     */
+    public boolean isCell(int dx, int dy) {
+        return (shape >>> (dy * STATE_WIDTH + dx) & 1) != 0;
+    }
+
+    public CellType color() {
+        return type != null ? type.color() : CellType.NONE;
+    }
+
+    public @Nullable CellStateType type() {
+        return type;
+    }
+
+    public Direction direction() {
+        return direction;
+    }
+
+    public int shape() {
+        return shape;
+    }
+
+    public int x() {
+        return x;
+    }
+
+    public int y() {
+        return y;
     }
 }
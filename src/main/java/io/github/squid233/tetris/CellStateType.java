@@ -1,25 +1,57 @@
 package io.github.squid233.tetris;
 
 /**
+ * The tetrominoes.
+ * <p>
+ * The shapes follow the Super Rotation System. Each shape is a 4x4 mask where bit {@code dy * 4 + dx} is set
+ * if the cell at {@code (dx, dy)} is occupied, with the y-axis pointing up. The masks of all directions are
+ * computed once when this class is initialized.
+ *
  * @author squid233
  * @since 0.1.0
  */
 public enum CellStateType {
-    I(CellType.CYAN),
-    O(CellType.YELLOW),
-    L(CellType.ORANGE),
-    J(CellType.BLUE),
-    T(CellType.MAGENTA),
-    S(CellType.GREEN),
-    Z(CellType.RED);
+    I(CellType.CYAN, 4, 0, 2, 1, 2, 2, 2, 3, 2),
+    O(CellType.YELLOW, 4, 1, 1, 2, 1, 1, 2, 2, 2),
+    L(CellType.ORANGE, 3, 2, 2, 0, 1, 1, 1, 2, 1),
+    J(CellType.BLUE, 3, 0, 2, 0, 1, 1, 1, 2, 1),
+    T(CellType.MAGENTA, 3, 1, 2, 0, 1, 1, 1, 2, 1),
+    S(CellType.GREEN, 3, 1, 2, 2, 2, 0, 1, 1, 1),
+    Z(CellType.RED, 3, 0, 2, 1, 2, 1, 1, 2, 1);
 
     private static final CellStateType[] VALUES = values();
     public static final int VALUE_COUNT = VALUES.length;
+    /**
+     * The count of the wall kick tests for each rotation.
+     */
+    public static final int KICK_TESTS = 5;
 
     private final CellType color;
+    private final int[] shapes = new int[Direction.VALUE_COUNT];
 
-    CellStateType(CellType color) {
+    /**
+     * Creates the tetromino.
+     *
+     * @param color   the color.
+     * @param boxSize the size of the rotation box.
+     * @param cells   the x and y positions of the cells in {@link Direction#UP}.
+     */
+    CellStateType(CellType color, int boxSize, int... cells) {
         this.color = color;
+        final int[] rotated = cells.clone();
+        for (int dir = 0; dir < Direction.VALUE_COUNT; dir++) {
+            int shape = 0;
+            for (int i = 0; i < rotated.length; i += 2) {
+                shape |= 1 << (rotated[i + 1] * CellState.STATE_WIDTH + rotated[i]);
+            }
+            shapes[dir] = shape;
+            // rotates clockwise around the center of the box
+            for (int i = 0; i < rotated.length; i += 2) {
+                final int x = rotated[i];
+                rotated[i] = rotated[i + 1];
+                rotated[i + 1] = boxSize - 1 - x;
+            }
+        }
     }
 
     public static CellStateType byId(int id) {
@@ -29,4 +61,71 @@ public enum CellStateType {
     public CellType color() {
         return color;
     }
+
+    /**
+     * {@return the shape mask in the given direction}
+     *
+     * @param direction the direction.
+     */
+    public int shape(Direction direction) {
+        return shapes[direction.ordinal()];
+    }
+
+    private int[] kicks(Direction from, boolean clockwise) {
+        final int[][] table = switch (this) {
+            case I -> Kicks.I;
+            case O -> Kicks.O;
+            default -> Kicks.JLSTZ;
+        };
+        return table[from.ordinal() * 2 + (clockwise ? 0 : 1)];
+    }
+
+    /**
+     * {@return the x offset of a wall kick test}
+     *
+     * @param from      the direction before rotating.
+     * @param clockwise the rotation.
+     * @param test      the index of the test, less than {@link #KICK_TESTS}.
+     */
+    public int kickX(Direction from, boolean clockwise, int test) {
+        return kicks(from, clockwise)[test * 2];
+    }
+
+    /**
+     * {@return the y offset of a wall kick test}
+     *
+     * @param from      the direction before rotating.
+     * @param clockwise the rotation.
+     * @param test      the index of the test, less than {@link #KICK_TESTS}.
+     */
+    public int kickY(Direction from, boolean clockwise, int test) {
+        return kicks(from, clockwise)[test * 2 + 1];
+    }
+
+    /**
+     * The SRS wall kick offsets, indexed by the direction before rotating and then clockwise and counterclockwise.
+     */
+    private static final class Kicks {
+        static final int[][] JLSTZ = {
+            {0, 0, -1, 0, -1, 1, 0, -2, -1, -2},
+            {0, 0, 1, 0, 1, 1, 0, -2, 1, -2},
+            {0, 0, 1, 0, 1, -1, 0, 2, 1, 2},
+            {0, 0, 1, 0, 1, -1, 0, 2, 1, 2},
+            {0, 0, 1, 0, 1, 1, 0, -2, 1, -2},
+            {0, 0, -1, 0, -1, 1, 0, -2, -1, -2},
+            {0, 0, -1, 0, -1, -1, 0, 2, -1, 2},
+            {0, 0, -1, 0, -1, -1, 0, 2, -1, 2}
+        };
+        static final int[][] I = {
+            {0, 0, -2, 0, 1, 0, -2, -1, 1, 2},
+            {0, 0, -1, 0, 2, 0, -1, 2, 2, -1},
+            {0, 0, -1, 0, 2, 0, -1, 2, 2, -1},
+            {0, 0, 2, 0, -1, 0, 2, 1, -1, -2},
+            {0, 0, 2, 0, -1, 0, 2, 1, -1, -2},
+            {0, 0, 1, 0, -2, 0, 1, -2, -2, 1},
+            {0, 0, 1, 0, -2, 0, 1, -2, -2, 1},
+            {0, 0, -2, 0, 1, 0, -2, -1, 1, 2}
+        };
+        static final int[][] O = new int[8][KICK_TESTS * 2];
+    }
 }
@@ -12,7 +12,11 @@ public enum CellType {
     CYAN(0x00ffff),
     MAGENTA(0xff00dc),
     YELLOW(0xffff00),
-    ORANGE(0xff6a00);
+    ORANGE(0xff6a00),
+    GARBAGE(0x808080);
+
+    private static final CellType[] VALUES = values();
+    public static final int VALUE_COUNT = VALUES.length;
 
     private final int colorRGB;
 
@@ -20,6 +24,10 @@ public enum CellType {
         this.colorRGB = colorRGB;
     }
 
+    public static CellType byId(int id) {
+        return VALUES[id];
+    }
+
     public int colorRGB() {
         return colorRGB;
     }
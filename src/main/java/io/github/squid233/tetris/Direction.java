@@ -8,5 +8,20 @@ public enum Direction {
     UP,
     RIGHT,
     DOWN,
-    LEFT
+    LEFT;
+
+    private static final Direction[] VALUES = values();
+    public static final int VALUE_COUNT = VALUES.length;
+
+    public static Direction byId(int id) {
+        return VALUES[id];
+    }
+
+    public Direction clockwise() {
+        return VALUES[(ordinal() + 1) & 3];
+    }
+
+    public Direction counterClockwise() {
+        return VALUES[(ordinal() + 3) & 3];
+    }
 }
@@ -1,29 +1,25 @@
 package io.github.squid233.tetris;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.util.Objects;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
 
 /**
  * @author squid233
  * @since 0.1.0
  */
 public final class FileUtil {
+    /**
+     * Loads a UTF-8 text resource, from the asset pack if there is one. See {@link IOUtil}.
+     *
+     * @param filename the resource name.
+     * @return the text.
+     */
     public static String loadString(String filename) {
-        try (var reader = new BufferedReader(
-            new InputStreamReader(
-                Objects.requireNonNull(FileUtil.class.getClassLoader().getResourceAsStream(filename))
-            )
-        )) {
-            final StringBuilder sb = new StringBuilder(512);
-            String read = reader.readLine();
-            if (read != null) {
-                sb.append(read);
-            }
-            while ((read = reader.readLine()) != null) {
-                sb.append('\n').append(read);
-            }
-            return sb.toString();
+        try (Arena arena = Arena.openConfined()) {
+            final MemorySegment segment = IOUtil.ioResourceToSegment(arena.scope(), filename);
+            return new String(segment.toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
         } catch (Exception e) {
             throw new IllegalStateException("Failed to load " + filename, e);
         }
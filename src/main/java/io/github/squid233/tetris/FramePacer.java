@@ -0,0 +1,120 @@
+package io.github.squid233.tetris;
+
+import org.overrun.glib.glfw.GLFW;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides when to draw a frame.
+ * <p>
+ * A frame is only drawn when a new snapshot was published or the window needs a redraw; otherwise the main
+ * thread waits for events. Drawn frames are capped to a frame rate by sleeping until shortly before the deadline
+ * and spinning for the rest, and can also be synchronized to the display.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class FramePacer {
+    /**
+     * The time before a frame deadline that is spun instead of slept, since sleeps may overshoot by about this much.
+     */
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(1500);
+    private static final long REPORT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private final long frameNanos;
+    private final boolean vsync;
+    private long nextFrame = System.nanoTime();
+    private long renderedSequence = -1;
+    private boolean windowDirty = true;
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    private long reportTime = System.nanoTime();
+    private long reportCpuTime = processCpuTime();
+    private double cpuUsage;
+
+    /**
+     * Creates a frame pacer.
+     *
+     * @param fpsCap the maximum frames per second, or {@code 0} for no cap.
+     * @param vsync  {@code true} to synchronize the buffer swaps to the display.
+     */
+    public FramePacer(int fpsCap, boolean vsync) {
+        this.frameNanos = fpsCap > 0 ? TimeUnit.SECONDS.toNanos(1) / fpsCap : 0;
+        this.vsync = vsync;
+    }
+
+    /**
+     * Applies the swap interval to the current context.
+     */
+    public void init() {
+        GLFW.swapInterval(vsync ? 1 : 0);
+    }
+
+    /**
+     * Requests a redraw, e.g. after the window was resized or exposed.
+     */
+    public void markWindowDirty() {
+        windowDirty = true;
+    }
+
+    /**
+     * {@return whether a frame should be drawn for the given snapshot}
+     *
+     * @param sequence the {@link GameSnapshot#sequence() sequence} of the latest snapshot.
+     */
+    public boolean shouldRender(long sequence) {
+        return windowDirty || sequence != renderedSequence;
+    }
+
+    /**
+     * Marks the given snapshot as drawn and waits until the next frame may start.
+     *
+     * @param sequence the sequence of the drawn snapshot.
+     */
+    public void frameRendered(long sequence) {
+        renderedSequence = sequence;
+        windowDirty = false;
+        if (frameNanos <= 0) return;
+        nextFrame += frameNanos;
+        final long now = System.nanoTime();
+        if (nextFrame - now <= 0) {
+            // fell behind; don't try to catch up with shorter frames
+            nextFrame = now;
+            return;
+        }
+        long remaining;
+        while ((remaining = nextFrame - System.nanoTime()) > SPIN_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+        }
+        while (nextFrame - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private long processCpuTime() {
+        return os instanceof com.sun.management.OperatingSystemMXBean bean ? bean.getProcessCpuTime() : -1;
+    }
+
+    /**
+     * Updates the CPU usage once a second.
+     *
+     * @return {@code true} if {@link #cpuUsage()} was updated.
+     */
+    public boolean updateCpuUsage() {
+        final long now = System.nanoTime();
+        if (now - reportTime < REPORT_NANOS) return false;
+        final long cpuTime = processCpuTime();
+        cpuUsage = cpuTime >= 0 ? (double) (cpuTime - reportCpuTime) / (now - reportTime) : Double.NaN;
+        reportTime = now;
+        reportCpuTime = cpuTime;
+        return true;
+    }
+
+    /**
+     * {@return the CPU time used by the process in the last second, relative to one core; {@code NaN} if unknown}
+     */
+    public double cpuUsage() {
+        return cpuUsage;
+    }
+}
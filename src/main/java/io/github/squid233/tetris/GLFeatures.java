@@ -0,0 +1,58 @@
+package io.github.squid233.tetris;
+
+import org.overrun.glib.gl.GL;
+
+/**
+ * The optional GL features used by the renderer, detected once after the context is created.
+ *
+ * @param majorVersion   the major version of the context.
+ * @param minorVersion   the minor version of the context.
+ * @param streaming      whether {@code glMapBufferRange}, sync objects and {@code glDrawElementsBaseVertex}
+ *                       are available (GL 3.2).
+ * @param bufferStorage  whether immutable, persistently mapped buffers are available
+ *                       (GL 4.4 or {@code ARB_buffer_storage}).
+ * @param programBinary  whether program binaries can be saved and loaded (GL 4.1 or {@code ARB_get_program_binary})
+ *                       with at least one binary format.
+ * @author squid233
+ * @since 0.1.0
+ */
+public record GLFeatures(int majorVersion, int minorVersion, boolean streaming, boolean bufferStorage,
+                         boolean programBinary) {
+    /**
+     * The features of a context without any of the optional features.
+     */
+    public static final GLFeatures NONE = new GLFeatures(0, 0, false, false, false);
+
+    /**
+     * Detects the features of the current context.
+     * <p>
+     * Streaming can be disabled with {@code -Dtetris.streaming=false} and persistent mapping with
+     * {@code -Dtetris.bufferStorage=false}, and program binaries with {@code -Dtetris.programBinary=false},
+     * to test the fallback paths.
+     *
+     * @return the features.
+     */
+    public static GLFeatures detect() {
+        final int major = GL.getInteger(GL.MAJOR_VERSION);
+        final int minor = GL.getInteger(GL.MINOR_VERSION);
+        final boolean gl32 = major > 3 || (major == 3 && minor >= 2);
+        final boolean gl41 = major > 4 || (major == 4 && minor >= 1);
+        final boolean gl44 = major > 4 || (major == 4 && minor >= 4);
+        boolean arbBufferStorage = false;
+        boolean arbProgramBinary = false;
+        if (!gl44 && gl32) {
+            for (int i = 0, count = GL.getInteger(GL.NUM_EXTENSIONS); i < count; i++) {
+                final String extension = GL.getStringi(GL.EXTENSIONS, i);
+                if ("GL_ARB_buffer_storage".equals(extension)) arbBufferStorage = true;
+                else if ("GL_ARB_get_program_binary".equals(extension)) arbProgramBinary = true;
+            }
+        }
+        final boolean streaming = gl32 && !"false".equals(System.getProperty("tetris.streaming"));
+        final boolean bufferStorage = streaming && (gl44 || arbBufferStorage) &&
+            !"false".equals(System.getProperty("tetris.bufferStorage"));
+        final boolean programBinary = (gl41 || arbProgramBinary) &&
+            GL.getInteger(GL.NUM_PROGRAM_BINARY_FORMATS) > 0 &&
+            !"false".equals(System.getProperty("tetris.programBinary"));
+        return new GLFeatures(major, minor, streaming, bufferStorage, programBinary);
+    }
+}
@@ -0,0 +1,24 @@
+package io.github.squid233.tetris;
+
+/**
+ * The bits of the per-tick input mask of {@link GameSimulation#tick(int)}.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class GameInput {
+    public static final int NONE = 0;
+    public static final int LEFT = 1;
+    public static final int RIGHT = 1 << 1;
+    public static final int DOWN = 1 << 2;
+    public static final int DROP = 1 << 3;
+    public static final int ROTATE_CW = 1 << 4;
+    public static final int ROTATE_CCW = 1 << 5;
+    /**
+     * All valid input bits.
+     */
+    public static final int MASK = (1 << 6) - 1;
+
+    private GameInput() {
+    }
+}
@@ -2,35 +2,144 @@ package io.github.squid233.tetris;
 
 import org.jetbrains.annotations.Nullable;
 import org.joml.Matrix4fStack;
-import org.overrun.glib.gl.GL;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * @author squid233
  * @since 0.1.0
  */
 public final class GameRenderer implements Disposable {
+    /**
+     * Draws the cells with instancing instead of the cached wall mesh. Set with {@code -Dtetris.instanced=true}.
+     */
+    public static final boolean INSTANCED_CELLS = Boolean.getBoolean("tetris.instanced");
+    /**
+     * The maximum number of quads drawn in one batch.
+     */
+    public static final int MAX_BATCH_QUADS = 4096;
+    public static final String CELL_SPRITE = "tetris/textures/cell.png";
     private Shader positionColor;
     private Shader positionColorTex;
+    private Shader positionColorTexInstanced;
     private Shader currentShader;
+    private final MatrixBuffer matrixBuffer = new MatrixBuffer();
+    private final QuadIndexBuffer quadIndexBuffer = new QuadIndexBuffer(MAX_BATCH_QUADS);
+    private GLFeatures features = GLFeatures.NONE;
     private Tessellator tessellator;
+    private WallMeshBuffer wallMeshBuffer;
+    private final CellInstances cellInstances = new CellInstances();
+    private InstancedCellRenderer instancedCellRenderer;
+    private GlyphAtlas glyphAtlas;
+    private final AssetManager assets = new AssetManager();
+    private Sprite cellSprite;
+    private Hud hud;
     public final Matrix4fStack projection = new Matrix4fStack(2);
     public final Matrix4fStack modelView = new Matrix4fStack(8);
 
-    private static Shader load(String name) {
-        return new Shader(FileUtil.loadString("tetris/shaders/" + name + ".vert"),
-            FileUtil.loadString("tetris/shaders/" + name + ".frag"));
+    private @Nullable ShaderCache shaderCache;
+    private final Map<String, CompletableFuture<ShaderSource>> shaderSources = new HashMap<>();
+    private @Nullable CompletableFuture<Unifont> font;
+
+    private record ShaderSource(String vertex, String fragment) {
+        /**
+         * The constants the shaders share with the code, defined after the {@code #version} line.
+         */
+        private static final String DEFINES = "#define PALETTE_SIZE " + CellType.VALUE_COUNT + "\n";
+
+        static ShaderSource read(String name) {
+            return new ShaderSource(define(FileUtil.loadString("tetris/shaders/" + name + ".vert")),
+                define(FileUtil.loadString("tetris/shaders/" + name + ".frag")));
+        }
+
+        private static String define(String source) {
+            // the #version directive must come first
+            final int line = source.indexOf('\n') + 1;
+            if (line == 0 || !source.startsWith("#version")) {
+                throw new IllegalStateException("The shader does not start with a #version line");
+            }
+            return source.substring(0, line) + DEFINES + source.substring(line);
+        }
     }
 
+    private Shader load(String name) {
+        final CompletableFuture<ShaderSource> future = shaderSources.remove(name);
+        final ShaderSource source = future != null ? Startup.join(future) : ShaderSource.read(name);
+        return new Shader(source.vertex(), source.fragment(), shaderCache);
+    }
+
+    /**
+     * Starts the work of {@link #init()} that does not need the GL context: reading the shader sources,
+     * decoding the sprites and loading the font. Called before the context is created.
+     *
+     * @param executor the executor to read the files on.
+     */
+    public void preload(Executor executor) {
+        assets.requestSprite(CELL_SPRITE);
+        final String[] names = INSTANCED_CELLS
+            ? new String[]{"pos_color", "pos_color_tex", "pos_color_tex_instanced"}
+            : new String[]{"pos_color", "pos_color_tex"};
+        for (String name : names) {
+            shaderSources.put(name, CompletableFuture.supplyAsync(
+                Startup.timed("shader " + name, () -> ShaderSource.read(name)), executor));
+        }
+        font = CompletableFuture.supplyAsync(Startup.timed("font", Unifont::load), executor);
+    }
+
+    /**
+     * Creates the GL objects. Joins the work started by {@link #preload(Executor)}, or does it now if it was
+     * not started.
+     */
     public void init() {
+        // decoded in the background while the shaders compile, if not preloaded
+        assets.requestSprite(CELL_SPRITE);
+        features = GLFeatures.detect();
+        if (features.programBinary()) {
+            shaderCache = new ShaderCache(ShaderCache.DEFAULT_DIR);
+        }
         positionColor = load("pos_color");
         positionColorTex = load("pos_color_tex");
-        tessellator = new Tessellator();
+        tessellator = new Tessellator(quadIndexBuffer, features);
+        assets.stitch();
+        cellSprite = assets.sprite(CELL_SPRITE);
+        wallMeshBuffer = new WallMeshBuffer(quadIndexBuffer, cellSprite);
+        glyphAtlas = new GlyphAtlas(font != null ? Startup.join(font) : Unifont.load());
+        font = null;
+        hud = new Hud(glyphAtlas);
+        if (INSTANCED_CELLS) {
+            positionColorTexInstanced = load("pos_color_tex_instanced");
+            final ShaderUniform cellSize = positionColorTexInstanced.getUniform("CellSize");
+            if (cellSize != null) cellSize.set((float) Wall.CELL_SIZE);
+            final ShaderUniform palette = positionColorTexInstanced.getUniform("Palette");
+            if (palette != null) {
+                for (int i = 0; i < CellType.VALUE_COUNT; i++) {
+                    final int rgb = CellType.byId(i).colorRGB();
+                    palette.set(i, (rgb >>> 16 & 0xff) / 255f, (rgb >>> 8 & 0xff) / 255f, (rgb & 0xff) / 255f);
+                }
+            }
+            instancedCellRenderer = new InstancedCellRenderer(cellSprite);
+        }
+        if (Profiler.ENABLED && shaderCache != null) {
+            System.out.println(shaderCache.report());
+        }
     }
 
+    /**
+     * Uses a shader and uploads its changed uniforms.
+     *
+     * @param shader the shader, or {@code null} to use no program.
+     */
     public void useShader(@Nullable Shader shader) {
         currentShader = shader;
-        if (shader == null) GL.useProgram(0);
-        else shader.use();
+        if (shader == null) {
+            RenderState.useProgram(0);
+        } else {
+            shader.use();
+            shader.uploadUniforms();
+        }
     }
 
     public Shader positionColor() {
@@ -41,23 +150,71 @@ public final class GameRenderer implements Disposable {
         return positionColorTex;
     }
 
+    public Shader positionColorTexInstanced() {
+        return positionColorTexInstanced;
+    }
+
     public Shader currentShader() {
         return currentShader;
     }
 
+    /**
+     * Uploads {@link #projection} and {@link #modelView} to the uniform buffer shared by all shaders,
+     * if they changed.
+     */
     public void setupMatrices() {
-        currentShader.getUniform("Projection").ifPresent(u -> u.set(projection));
-        currentShader.getUniform("ModelView").ifPresent(u -> u.set(modelView));
+        matrixBuffer.set(projection, modelView);
+    }
+
+    public GLFeatures features() {
+        return features;
     }
 
     public Tessellator tessellator() {
         return tessellator;
     }
 
+    public WallMeshBuffer wallMeshBuffer() {
+        return wallMeshBuffer;
+    }
+
+    public CellInstances cellInstances() {
+        return cellInstances;
+    }
+
+    public InstancedCellRenderer instancedCellRenderer() {
+        return instancedCellRenderer;
+    }
+
+    public AssetManager assets() {
+        return assets;
+    }
+
+    public Sprite cellSprite() {
+        return cellSprite;
+    }
+
+    public GlyphAtlas glyphAtlas() {
+        return glyphAtlas;
+    }
+
+    public Hud hud() {
+        return hud;
+    }
+
     @Override
     public void dispose() {
         positionColor.dispose();
         positionColorTex.dispose();
         tessellator.dispose();
+        wallMeshBuffer.dispose();
+        quadIndexBuffer.dispose();
+        matrixBuffer.dispose();
+        glyphAtlas.dispose();
+        assets.dispose();
+        if (INSTANCED_CELLS) {
+            positionColorTexInstanced.dispose();
+            instancedCellRenderer.dispose();
+        }
     }
 }
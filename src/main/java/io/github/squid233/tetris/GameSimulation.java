@@ -0,0 +1,218 @@
+package io.github.squid233.tetris;
+
+import java.util.SplittableRandom;
+
+/**
+ * The headless game logic.
+ * <p>
+ * A simulation only depends on its piece generator and the input mask of each tick,
+ * so the same generator mode, seed and inputs always give the same game.
+ * <p>
+ * In a versus match, clearing 2 or more lines at once sends garbage lines to the opponents; see
+ * {@link #takeOutgoingGarbage()} and {@link #receiveGarbage(int)}.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class GameSimulation {
+    /**
+     * The ticks between two gravity steps.
+     */
+    public static final int FALL_DOWN_TICKS = 8;
+    public static final int DEFAULT_PREVIEW_LENGTH = 5;
+    private static final int[] LINE_SCORES = {0, 100, 300, 500, 800};
+    private static final int[] GARBAGE_LINES = {0, 0, 1, 2, 4};
+    private final Wall wall;
+    private final CellState holdState = new CellState();
+    private final PieceGenerator generator;
+    private final SplittableRandom garbageRandom;
+    private int fallDownTicker = 0;
+    private int incomingGarbage;
+    private int outgoingGarbage;
+    private long ticks;
+    private long pieces;
+    private long lines;
+    private long score;
+    private boolean gameOver;
+
+    /**
+     * Creates a game on a wall of the given size.
+     *
+     * @param generator     the piece generator.
+     * @param width         the width of the wall.
+     * @param visibleHeight the visible height of the wall.
+     */
+    public GameSimulation(PieceGenerator generator, int width, int visibleHeight) {
+        this.generator = generator;
+        // a sequence of its own, so the holes do not change the pieces
+        this.garbageRandom = new SplittableRandom(~generator.seed());
+        this.wall = new Wall(width, visibleHeight);
+        spawn();
+    }
+
+    public GameSimulation(PieceGenerator generator) {
+        this(generator, Wall.DEFAULT_WIDTH, Wall.DEFAULT_VISIBLE_HEIGHT);
+    }
+
+    public GameSimulation(long seed, PieceGenerator.Mode mode, int width, int visibleHeight) {
+        this(PieceGenerator.of(mode, seed, DEFAULT_PREVIEW_LENGTH), width, visibleHeight);
+    }
+
+    public GameSimulation(long seed, PieceGenerator.Mode mode) {
+        this(PieceGenerator.of(mode, seed, DEFAULT_PREVIEW_LENGTH));
+    }
+
+    public GameSimulation(long seed) {
+        this(seed, PieceGenerator.Mode.BAG_7);
+    }
+
+    private void spawn() {
+        holdState.reset(generator.next(), wall);
+        if (holdState.isBlocked(wall)) {
+            gameOver = true;
+        }
+    }
+
+    private void lock() {
+        final LineClearResult result = holdState.fixToWall(wall);
+        pieces++;
+        final int count = result.count();
+        lines += count;
+        score += LINE_SCORES[count];
+        if (count > 0) {
+            // the garbage sent cancels the incoming garbage first
+            final int attack = GARBAGE_LINES[count];
+            final int cancelled = Math.min(attack, incomingGarbage);
+            incomingGarbage -= cancelled;
+            outgoingGarbage += attack - cancelled;
+        } else if (incomingGarbage > 0) {
+            final boolean toppedOut = wall.addGarbage(incomingGarbage, garbageRandom.nextInt(wall.width()));
+            incomingGarbage = 0;
+            if (toppedOut) {
+                gameOver = true;
+                return;
+            }
+        }
+        spawn();
+    }
+
+    /**
+     * Queues garbage lines sent by an opponent. They rise from the bottom when the next piece locks without
+     * clearing lines, or are cancelled by the garbage the next clears send.
+     * <p>
+     * The garbage is not part of the inputs, so a replay of a game that received garbage does not reproduce it.
+     *
+     * @param rows the count of the lines.
+     */
+    public void receiveGarbage(int rows) {
+        if (rows < 0) {
+            throw new IllegalArgumentException("Negative garbage: " + rows);
+        }
+        if (!gameOver) incomingGarbage += rows;
+    }
+
+    /**
+     * {@return the garbage lines to send to the opponents since the last call}
+     */
+    public int takeOutgoingGarbage() {
+        final int rows = outgoingGarbage;
+        outgoingGarbage = 0;
+        return rows;
+    }
+
+    /**
+     * {@return the queued garbage lines that were not added to the wall yet}
+     */
+    public int incomingGarbage() {
+        return incomingGarbage;
+    }
+
+    /**
+     * Steps the game by one tick.
+     *
+     * @param input the {@link GameInput} bits held or pressed in this tick.
+     */
+    public void tick(int input) {
+        if (gameOver) return;
+        ticks++;
+        if ((input & GameInput.ROTATE_CW) != 0) {
+            holdState.rotateClockwise(wall);
+        }
+        if ((input & GameInput.ROTATE_CCW) != 0) {
+            holdState.rotateCounterClockwise(wall);
+        }
+        if ((input & GameInput.DROP) != 0) {
+            score += 2L * holdState.dropDown(wall);
+            fallDownTicker = 0;
+            lock();
+            return;
+        }
+        fallDownTicker++;
+        if (fallDownTicker > FALL_DOWN_TICKS) {
+            holdState.moveDown(wall);
+            fallDownTicker = 0;
+            return;
+        }
+        if ((input & GameInput.LEFT) != 0) {
+            holdState.moveLeft(wall);
+        }
+        if ((input & GameInput.RIGHT) != 0) {
+            holdState.moveRight(wall);
+        }
+        if ((input & GameInput.DOWN) != 0) {
+            holdState.moveDown(wall);
+        }
+        if (holdState.isOnGround(wall)) {
+            lock();
+        }
+    }
+
+    public Wall wall() {
+        return wall;
+    }
+
+    public CellState holdState() {
+        return holdState;
+    }
+
+    public PieceGenerator generator() {
+        return generator;
+    }
+
+    public long seed() {
+        return generator.seed();
+    }
+
+    public int previewLength() {
+        return generator.previewLength();
+    }
+
+    /**
+     * {@return the type of the upcoming piece}
+     *
+     * @param i the index in the preview queue, from 0 to {@link #previewLength()} - 1. 0 is the next piece.
+     */
+    public CellStateType preview(int i) {
+        return generator.peek(i);
+    }
+
+    public long ticks() {
+        return ticks;
+    }
+
+    public long pieces() {
+        return pieces;
+    }
+
+    public long lines() {
+        return lines;
+    }
+
+    public long score() {
+        return score;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+}
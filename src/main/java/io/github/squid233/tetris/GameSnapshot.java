@@ -0,0 +1,90 @@
+package io.github.squid233.tetris;
+
+/**
+ * A copy of the state of a {@link GameSimulation} for the renderer, published through a {@link SnapshotExchange}.
+ * <p>
+ * A snapshot is only written by the simulation thread before it is published,
+ * and only read by the render thread after it is acquired.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class GameSnapshot {
+    private Wall wall = new Wall();
+    private final CellState holdState = new CellState();
+    private GameSimulation source;
+    private int generation;
+    private long sequence;
+    private long ticks;
+    private long pieces;
+    private long lines;
+    private long score;
+    private boolean gameOver;
+
+    void copyFrom(GameSimulation simulation, int generation, long sequence) {
+        // only the rows changed since this snapshot was last written are copied
+        boolean full = simulation != source;
+        if (!wall.isSameSize(simulation.wall())) {
+            wall = new Wall(simulation.wall().width(), simulation.wall().visibleHeight());
+            full = true;
+        }
+        wall.mirror(simulation.wall(), full);
+        source = simulation;
+        holdState.set(simulation.holdState());
+        this.generation = generation;
+        this.sequence = sequence;
+        ticks = simulation.ticks();
+        pieces = simulation.pieces();
+        lines = simulation.lines();
+        score = simulation.score();
+        gameOver = simulation.isGameOver();
+    }
+
+    /**
+     * {@return the settled cells}
+     * The modification counts of the wall are the ones of the simulation, see {@link Wall#mirror(Wall, boolean)}.
+     */
+    public Wall wall() {
+        return wall;
+    }
+
+    public CellState holdState() {
+        return holdState;
+    }
+
+    /**
+     * {@return the number of the game this snapshot is of}
+     * It changes when a new game starts.
+     */
+    public int generation() {
+        return generation;
+    }
+
+    /**
+     * {@return the number of this snapshot}
+     * Later snapshots have greater numbers.
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    public long ticks() {
+        return ticks;
+    }
+
+    public long pieces() {
+        return pieces;
+    }
+
+    public long lines() {
+        return lines;
+    }
+
+    public long score() {
+        return score;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+}
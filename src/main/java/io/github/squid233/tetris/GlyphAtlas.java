@@ -0,0 +1,153 @@
+package io.github.squid233.tetris;
+
+import org.overrun.glib.gl.GL;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentScope;
+import java.util.Arrays;
+
+/**
+ * A texture of the {@link Unifont} glyphs in use.
+ * <p>
+ * The texture is split into {@value #PAGE_COUNT} pages. A page holds the 256 glyphs of one block of codepoints
+ * ({@code codepoint >>> 8}), in 16 by 16 slots of 16 by 16 pixels. A block is rasterized and uploaded the first
+ * time one of its glyphs is used; when all pages are taken, the page used least recently is replaced.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class GlyphAtlas implements Disposable {
+    public static final int SLOT_SIZE = 16;
+    public static final int PAGE_SIZE = SLOT_SIZE * 16;
+    public static final int PAGES_PER_ROW = 4;
+    public static final int PAGE_COUNT = PAGES_PER_ROW * PAGES_PER_ROW;
+    public static final int TEXTURE_SIZE = PAGE_SIZE * PAGES_PER_ROW;
+    private static final int BLOCK_COUNT = Unifont.CODEPOINT_COUNT >>> 8;
+    private final Unifont font;
+    private final int[] pageOfBlock = new int[BLOCK_COUNT];
+    private final int[] blockOfPage = new int[PAGE_COUNT];
+    private final long[] pageLastUsed = new long[PAGE_COUNT];
+    private final MemorySegment pageData = MemorySegment.allocateNative((long) PAGE_SIZE * PAGE_SIZE * 4, SegmentScope.auto());
+    private long frame = 1;
+    private int id;
+
+    public GlyphAtlas(Unifont font) {
+        this.font = font;
+        Arrays.fill(pageOfBlock, -1);
+        Arrays.fill(blockOfPage, -1);
+    }
+
+    private void init() {
+        id = GL.genTexture();
+        RenderState.bindTexture(id);
+        GL.texParameteri(GL.TEXTURE_2D, GL.TEXTURE_MAG_FILTER, GL.NEAREST);
+        GL.texParameteri(GL.TEXTURE_2D, GL.TEXTURE_MIN_FILTER, GL.NEAREST);
+        GL.texParameteri(GL.TEXTURE_2D, GL.TEXTURE_BASE_LEVEL, 0);
+        GL.texParameteri(GL.TEXTURE_2D, GL.TEXTURE_MAX_LEVEL, 0);
+        GL.texImage2D(GL.TEXTURE_2D, 0, GL.RGBA, TEXTURE_SIZE, TEXTURE_SIZE, 0, GL.RGBA, GL.UNSIGNED_BYTE, MemorySegment.NULL);
+    }
+
+    public Unifont font() {
+        return font;
+    }
+
+    /**
+     * Starts a new frame for the least recently used bookkeeping.
+     */
+    public void nextFrame() {
+        frame++;
+    }
+
+    /**
+     * {@return whether the glyph of the given codepoint is in the texture}
+     *
+     * @param codepoint the codepoint.
+     */
+    public boolean isResident(int codepoint) {
+        return pageOfBlock[codepoint >>> 8] >= 0;
+    }
+
+    /**
+     * {@return whether making another block resident would replace a page used in the current frame}
+     * The quads using that page must be drawn before.
+     */
+    public boolean isFull() {
+        for (int page = 0; page < PAGE_COUNT; page++) {
+            if (pageLastUsed[page] != frame) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Makes the glyph of the given codepoint resident and marks its page as used.
+     *
+     * @param codepoint the codepoint. must have a glyph.
+     * @return the page of the glyph.
+     */
+    public int use(int codepoint) {
+        final int block = codepoint >>> 8;
+        int page = pageOfBlock[block];
+        if (page < 0) {
+            page = 0;
+            for (int i = 1; i < PAGE_COUNT; i++) {
+                if (pageLastUsed[i] < pageLastUsed[page]) page = i;
+            }
+            if (blockOfPage[page] >= 0) {
+                pageOfBlock[blockOfPage[page]] = -1;
+            }
+            upload(page, block);
+            blockOfPage[page] = block;
+            pageOfBlock[block] = page;
+        }
+        pageLastUsed[page] = frame;
+        return page;
+    }
+
+    private void upload(int page, int block) {
+        if (id == 0) init();
+        pageData.fill((byte) 0);
+        final int stride = PAGE_SIZE * 4;
+        for (int i = 0; i < 256; i++) {
+            final int codepoint = block << 8 | i;
+            if (font.width(codepoint) == 0) continue;
+            final long offset = (long) (i >>> 4) * SLOT_SIZE * stride + (long) (i & 15) * SLOT_SIZE * 4;
+            font.rasterize(codepoint, pageData, offset, stride);
+        }
+        RenderState.bindTexture(id);
+        GL.texSubImage2D(GL.TEXTURE_2D, 0,
+            (page % PAGES_PER_ROW) * PAGE_SIZE,
+            (page / PAGES_PER_ROW) * PAGE_SIZE,
+            PAGE_SIZE, PAGE_SIZE,
+            GL.RGBA, GL.UNSIGNED_BYTE, pageData);
+    }
+
+    /**
+     * {@return the left texture coordinate of the glyph in the given page}
+     *
+     * @param page      the page from {@link #use(int)}.
+     * @param codepoint the codepoint.
+     */
+    public static float u0(int page, int codepoint) {
+        return ((page % PAGES_PER_ROW) * PAGE_SIZE + (codepoint & 15) * SLOT_SIZE) / (float) TEXTURE_SIZE;
+    }
+
+    /**
+     * {@return the top texture coordinate of the glyph in the given page}
+     *
+     * @param page      the page from {@link #use(int)}.
+     * @param codepoint the codepoint.
+     */
+    public static float v0(int page, int codepoint) {
+        return ((page / PAGES_PER_ROW) * PAGE_SIZE + (codepoint >>> 4 & 15) * SLOT_SIZE) / (float) TEXTURE_SIZE;
+    }
+
+    public void bind() {
+        if (id == 0) init();
+        RenderState.bindTexture(id);
+    }
+
+    @Override
+    public void dispose() {
+        if (id != 0) RenderState.deleteTexture(id);
+    }
+}
@@ -0,0 +1,86 @@
+package io.github.squid233.tetris;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in fixed logarithmic buckets: each power of two is split into 4 buckets,
+ * so a reported percentile is at most 25% above the recorded value. Recording never allocates.
+ * <p>
+ * A histogram must only be recorded into from one thread at a time, but can be read from any thread.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class Histogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = SUB_BUCKETS * (Long.SIZE - SUB_BUCKET_BITS + 1);
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private volatile long count;
+    private volatile long max;
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) Math.max(value, 0);
+        final int msb = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int shift = msb - SUB_BUCKET_BITS;
+        return SUB_BUCKETS * (shift + 1) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value the value.
+     */
+    public void record(long value) {
+        final int bucket = bucketOf(value);
+        buckets.lazySet(bucket, buckets.get(bucket) + 1);
+        count++;
+        if (value > max) max = value;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    /**
+     * {@return the upper bound of the bucket containing the given percentile, or {@code 0} if nothing was recorded}
+     *
+     * @param percentile the percentile, from {@code 0} to {@code 100}.
+     */
+    public long percentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0) return 0;
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) return Math.min(upperBoundOf(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * Clears this histogram. Values recorded concurrently may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count = 0;
+        max = 0;
+    }
+}
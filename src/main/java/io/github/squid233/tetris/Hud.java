@@ -0,0 +1,93 @@
+package io.github.squid233.tetris;
+
+/**
+ * The text around the wall: the statistics of the game, and the profiler overlay if enabled.
+ * <p>
+ * The text is only formatted and laid out again when a value changes, so drawing the HUD every frame
+ * only adds a few quads to the batch.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class Hud {
+    private static final int LINE_HEIGHT = Unifont.GLYPH_HEIGHT + 2;
+    private static final int MARGIN = 8;
+    private final TextRenderer textRenderer;
+    private final TextLayout score;
+    private final TextLayout lines;
+    private final TextLayout pieces;
+    private final TextLayout gameOver;
+    private final TextLayout[] profiler = new TextLayout[Profiler.Phase.VALUE_COUNT];
+    private long shownScore = -1;
+    private long shownLines = -1;
+    private long shownPieces = -1;
+
+    public Hud(GlyphAtlas atlas) {
+        textRenderer = new TextRenderer(atlas);
+        final Unifont font = atlas.font();
+        score = new TextLayout(font);
+        lines = new TextLayout(font);
+        pieces = new TextLayout(font);
+        gameOver = new TextLayout(font);
+        gameOver.set("GAME OVER - press R to restart");
+        for (int i = 0; i < profiler.length; i++) {
+            profiler[i] = new TextLayout(font);
+        }
+    }
+
+    /**
+     * Updates the statistics from a snapshot.
+     *
+     * @param snapshot the snapshot.
+     */
+    public void update(GameSnapshot snapshot) {
+        if (snapshot.score() != shownScore) {
+            shownScore = snapshot.score();
+            score.set("Score: " + shownScore);
+        }
+        if (snapshot.lines() != shownLines) {
+            shownLines = snapshot.lines();
+            lines.set("Lines: " + shownLines);
+        }
+        if (snapshot.pieces() != shownPieces) {
+            shownPieces = snapshot.pieces();
+            pieces.set("Pieces: " + shownPieces);
+        }
+    }
+
+    /**
+     * Updates the profiler overlay. Called about once a second.
+     */
+    public void updateProfiler() {
+        for (int i = 0; i < profiler.length; i++) {
+            profiler[i].set(Profiler.summary(Profiler.Phase.byId(i)));
+        }
+    }
+
+    /**
+     * Adds the quads of the HUD.
+     *
+     * @param t        the tessellator. must be in a quad batch.
+     * @param snapshot the drawn snapshot.
+     * @param height   the height of the window.
+     */
+    public void render(Tessellator t, GameSnapshot snapshot, int height) {
+        float y = height - MARGIN;
+        textRenderer.draw(t, score, MARGIN, y, 0xffffff);
+        y -= LINE_HEIGHT;
+        textRenderer.draw(t, lines, MARGIN, y, 0xffffff);
+        y -= LINE_HEIGHT;
+        textRenderer.draw(t, pieces, MARGIN, y, 0xffffff);
+        y -= LINE_HEIGHT;
+        if (snapshot.isGameOver()) {
+            textRenderer.draw(t, gameOver, MARGIN, y, 0xff4040);
+        }
+        if (Profiler.ENABLED) {
+            y = MARGIN + LINE_HEIGHT * profiler.length;
+            for (TextLayout layout : profiler) {
+                textRenderer.draw(t, layout, MARGIN, y, 0xffff80);
+                y -= LINE_HEIGHT;
+            }
+        }
+    }
+}
@@ -23,6 +23,8 @@ import java.lang.foreign.ValueLayout;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -35,8 +37,21 @@ public final class IOUtil {
     private IOUtil() {
     }
 
-    private static MemorySegment resizeSegment(SegmentScope scope, MemorySegment segment, long newCapacity) {
-        return MemorySegment.allocateNative(newCapacity, scope).copyFrom(segment);
+    /**
+     * Reads the specified resource and returns the raw data as a {@link MemorySegment}.
+     * <p>
+     * The resource is looked up in the {@link AssetPack#defaultPack() default asset pack} first, then as a local
+     * file, both of which are memory-mapped; otherwise it is read from the classpath into a segment of the exact
+     * size, copying each byte once.
+     *
+     * @param scope    the segment scope. must be {@link SegmentScope#isAlive() alive} until the data is no longer used.
+     *                 the slices of the asset pack stay alive regardless.
+     * @param resource the resource to read.
+     * @return the resource data.
+     * @throws IOException if an IO error occurs.
+     */
+    public static MemorySegment ioResourceToSegment(SegmentScope scope, String resource) throws IOException {
+        return readResource(scope, resource, 8192);
     }
 
     /**
@@ -44,12 +59,39 @@ public final class IOUtil {
      *
      * @param scope       the segment scope. must be {@link SegmentScope#isAlive() alive} until the data is no longer used.
      * @param resource    the resource to read.
-     * @param segmentSize the initial segment size.
-     * @param bufferSize  the buffer size for reading file.
+     * @param segmentSize unused; the data is no longer read into a growing segment.
+     * @param bufferSize  the size of the chunks to read from the classpath.
      * @return the resource data.
      * @throws IOException if an IO error occurs.
+     * @deprecated use {@link #ioResourceToSegment(SegmentScope, String)}.
      */
+    @Deprecated
     public static MemorySegment ioResourceToSegment(SegmentScope scope, String resource, long segmentSize, int bufferSize) throws IOException {
+        return readResource(scope, resource, bufferSize);
+    }
+
+    /**
+     * Reads the specified resource and returns the raw data as a {@link MemorySegment}.
+     *
+     * @param scope       the segment scope. must be {@link SegmentScope#isAlive() alive} until the data is no longer used.
+     * @param resource    the resource to read.
+     * @param segmentSize unused; the data is no longer read into a growing segment.
+     * @return the resource data.
+     * @throws IOException if an IO error occurs.
+     * @deprecated use {@link #ioResourceToSegment(SegmentScope, String)}.
+     */
+    @Deprecated
+    public static MemorySegment ioResourceToSegment(SegmentScope scope, String resource, long segmentSize) throws IOException {
+        return ioResourceToSegment(scope, resource);
+    }
+
+    private static MemorySegment readResource(SegmentScope scope, String resource, int bufferSize) throws IOException {
+        final AssetPack pack = AssetPack.defaultPack();
+        if (pack != null) {
+            final MemorySegment segment = pack.get(resource);
+            if (segment != null) return segment;
+        }
+
         final Path path = Path.of(resource);
 
         // Check whether on local
@@ -62,33 +104,22 @@ public final class IOUtil {
         // On classpath
         try (var is = IOUtil.class.getClassLoader().getResourceAsStream(resource)) {
             Objects.requireNonNull(is, "Failed to load resource '" + resource + "'!");
-            MemorySegment segment = MemorySegment.allocateNative(segmentSize, scope);
-
-            // Creates a byte array to avoid creating it per loop
-            final byte[] bytes = new byte[bufferSize];
+            // the chunks are only copied into the segment once the size is known
+            final List<byte[]> chunks = new ArrayList<>();
+            long size = 0;
+            while (true) {
+                final byte[] chunk = is.readNBytes(bufferSize);
+                if (chunk.length == 0) break;
+                chunks.add(chunk);
+                size += chunk.length;
+            }
+            final MemorySegment segment = MemorySegment.allocateNative(size, scope);
             long pos = 0;
-            int count;
-            while ((count = is.read(bytes)) > 0) {
-                if (pos >= segment.byteSize()) {
-                    segment = resizeSegment(scope, segment, Math.ceilDiv(segment.byteSize() * 3, 2)); // 50%
-                }
-                MemorySegment.copy(bytes, 0, segment, ValueLayout.JAVA_BYTE, pos, count);
-                pos += count;
+            for (byte[] chunk : chunks) {
+                MemorySegment.copy(chunk, 0, segment, ValueLayout.JAVA_BYTE, pos, chunk.length);
+                pos += chunk.length;
             }
             return segment;
         }
     }
-
-    /**
-     * Reads the specified resource and returns the raw data as a {@link MemorySegment}.
-     *
-     * @param scope       the segment scope. must be {@link SegmentScope#isAlive() alive} until the data is no longer used.
-     * @param resource    the resource to read.
-     * @param segmentSize the initial segment size.
-     * @return the resource data.
-     * @throws IOException if an IO error occurs.
-     */
-    public static MemorySegment ioResourceToSegment(SegmentScope scope, String resource, long segmentSize) throws IOException {
-        return ioResourceToSegment(scope, resource, segmentSize, 8192);
-    }
 }
@@ -0,0 +1,112 @@
+package io.github.squid233.tetris;
+
+import org.overrun.glib.gl.GL;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * Draws {@link CellInstances} as instances of one static unit quad.
+ * Requires the {@code pos_color_tex_instanced} shader.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class InstancedCellRenderer implements Disposable {
+    private static final int QUAD_STRIDE = (int) (JAVA_FLOAT.byteSize() * 4);
+    private final Sprite sprite;
+    private int vao, quadVbo, quadEbo, instanceVbo;
+    private long instanceCapacity;
+    // the slice of the last upload, reused while the range and the segment stay the same
+    private MemorySegment uploadSlice = MemorySegment.NULL;
+    private MemorySegment uploadSource = MemorySegment.NULL;
+    private long uploadFrom;
+
+    /**
+     * Creates an instanced cell renderer.
+     *
+     * @param sprite the sprite of the cells.
+     */
+    public InstancedCellRenderer(Sprite sprite) {
+        this.sprite = sprite;
+    }
+
+    private void init() {
+        vao = GL.genVertexArray();
+        quadVbo = GL.genBuffer();
+        quadEbo = GL.genBuffer();
+        instanceVbo = GL.genBuffer();
+        RenderState.bindVertexArray(vao);
+        try (Arena arena = Arena.openConfined()) {
+            // x, y, u, v, in the same order as CellRenderer.renderCell
+            final MemorySegment quad = arena.allocateArray(JAVA_FLOAT,
+                0f, 1f, sprite.u0(), sprite.v0(),
+                0f, 0f, sprite.u0(), sprite.v1(),
+                1f, 0f, sprite.u1(), sprite.v1(),
+                1f, 1f, sprite.u1(), sprite.v0());
+            GL.bindBuffer(GL.ARRAY_BUFFER, quadVbo);
+            GL.bufferData(GL.ARRAY_BUFFER, quad.byteSize(), quad, GL.STATIC_DRAW);
+            GL.enableVertexAttribArray(0);
+            GL.enableVertexAttribArray(2);
+            GL.vertexAttribPointer(0, 2, GL.FLOAT, false, QUAD_STRIDE, MemorySegment.NULL);
+            GL.vertexAttribPointer(2, 2, GL.FLOAT, false, QUAD_STRIDE, MemorySegment.ofAddress(JAVA_FLOAT.byteSize() * 2));
+
+            final MemorySegment indices = arena.allocateArray(JAVA_INT, 0, 1, 2, 2, 3, 0);
+            GL.bindBuffer(GL.ELEMENT_ARRAY_BUFFER, quadEbo);
+            GL.bufferData(GL.ELEMENT_ARRAY_BUFFER, indices.byteSize(), indices, GL.STATIC_DRAW);
+        }
+        GL.bindBuffer(GL.ARRAY_BUFFER, instanceVbo);
+        GL.enableVertexAttribArray(3);
+        GL.enableVertexAttribArray(4);
+        GL.vertexAttribPointer(3, 2, GL.UNSIGNED_SHORT, false, CellInstances.STRIDE, MemorySegment.NULL);
+        GL.vertexAttribPointer(4, 1, GL.UNSIGNED_BYTE, false, CellInstances.STRIDE, MemorySegment.ofAddress(4));
+        GL.vertexAttribDivisor(3, 1);
+        GL.vertexAttribDivisor(4, 1);
+        GL.bindBuffer(GL.ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Uploads the changed instances and draws them.
+     *
+     * @param instances the instances.
+     */
+    public void draw(CellInstances instances) {
+        if (vao == 0) init();
+        if (instances.count() <= 0) return;
+        // the settled cells are only re-sent when they changed
+        final MemorySegment segment = instances.segment();
+        final boolean grown = instanceCapacity < segment.byteSize();
+        final long from = instances.wallChanged() || grown ? 0 : (long) instances.wallCount() * CellInstances.STRIDE;
+        final long to = (long) instances.count() * CellInstances.STRIDE;
+        if (to > from) {
+            final long uploadStart = Profiler.start();
+            GL.bindBuffer(GL.ARRAY_BUFFER, instanceVbo);
+            if (grown) {
+                instanceCapacity = segment.byteSize();
+                GL.bufferData(GL.ARRAY_BUFFER, instanceCapacity, MemorySegment.NULL, GL.DYNAMIC_DRAW);
+            }
+            if (uploadSource != segment || uploadFrom != from || uploadSlice.byteSize() != to - from) {
+                uploadSource = segment;
+                uploadFrom = from;
+                uploadSlice = segment.asSlice(from, to - from);
+            }
+            GL.bufferSubData(GL.ARRAY_BUFFER, from, to - from, uploadSlice);
+            GL.bindBuffer(GL.ARRAY_BUFFER, 0);
+            Profiler.end(Profiler.Phase.UPLOAD, uploadStart);
+        }
+        final long drawStart = Profiler.start();
+        RenderState.bindVertexArray(vao);
+        GL.drawElementsInstanced(GL.TRIANGLES, 6, GL.UNSIGNED_INT, MemorySegment.NULL, instances.count());
+        Profiler.end(Profiler.Phase.DRAW, drawStart);
+    }
+
+    @Override
+    public void dispose() {
+        if (vao != 0) RenderState.deleteVertexArray(vao);
+        if (quadVbo != 0) GL.deleteBuffer(quadVbo);
+        if (quadEbo != 0) GL.deleteBuffer(quadEbo);
+        if (instanceVbo != 0) GL.deleteBuffer(instanceVbo);
+    }
+}
@@ -0,0 +1,43 @@
+package io.github.squid233.tetris;
+
+import java.util.Arrays;
+
+/**
+ * The rows removed by {@link Wall#clearLines(int, int)}.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class LineClearResult {
+    private int[] rows;
+    private int count;
+
+    LineClearResult(int capacity) {
+        rows = new int[capacity];
+    }
+
+    void clear() {
+        count = 0;
+    }
+
+    void add(int y) {
+        if (count == rows.length) rows = Arrays.copyOf(rows, count * 2);
+        rows[count++] = y;
+    }
+
+    /**
+     * {@return the count of the cleared rows}
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * {@return the y position of the cleared row before clearing}
+     *
+     * @param i the index of the cleared row, in ascending order.
+     */
+    public int row(int i) {
+        return rows[i];
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.squid233.tetris;
+
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.overrun.glib.gl.GL;
+import org.overrun.glib.joml.Matrixn;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentScope;
+
+/**
+ * The uniform buffer of the {@code Matrices} block shared by all shaders:
+ * <pre>{@code
+ * layout(std140) uniform Matrices {
+ *     mat4 Projection;
+ *     mat4 ModelView;
+ * };
+ * }</pre>
+ * The buffer stays bound to {@link #BINDING}, and is only uploaded when the matrices changed.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class MatrixBuffer implements Disposable {
+    /**
+     * The name of the uniform block.
+     */
+    public static final String BLOCK_NAME = "Matrices";
+    /**
+     * The uniform buffer binding point of the block.
+     */
+    public static final int BINDING = 0;
+    private static final long MAT4_SIZE = Matrixn.MAT4F.byteSize();
+    // std140 aligns a mat4 to 16 bytes, so the two matrices are tightly packed
+    private static final long SIZE = MAT4_SIZE * 2;
+    private final MemorySegment data = MemorySegment.allocateNative(SIZE, SegmentScope.auto());
+    private final MemorySegment projectionData = data.asSlice(0, MAT4_SIZE);
+    private final MemorySegment modelViewData = data.asSlice(MAT4_SIZE, MAT4_SIZE);
+    private final Matrix4f projection = new Matrix4f();
+    private final Matrix4f modelView = new Matrix4f();
+    private int id;
+
+    private void init() {
+        id = GL.genBuffer();
+        GL.bindBuffer(GL.UNIFORM_BUFFER, id);
+        GL.bufferData(GL.UNIFORM_BUFFER, SIZE, MemorySegment.NULL, GL.DYNAMIC_DRAW);
+        GL.bindBuffer(GL.UNIFORM_BUFFER, 0);
+        GL.bindBufferBase(GL.UNIFORM_BUFFER, BINDING, id);
+    }
+
+    /**
+     * Uploads the matrices if they differ from the last uploaded ones.
+     *
+     * @param projection the projection matrix.
+     * @param modelView  the model-view matrix.
+     */
+    public void set(Matrix4fc projection, Matrix4fc modelView) {
+        final boolean first = id == 0;
+        if (first) init();
+        final boolean projectionChanged = first || !this.projection.equals(projection, 0f);
+        final boolean modelViewChanged = first || !this.modelView.equals(modelView, 0f);
+        if (RenderState.countUniformBufferUpload(!projectionChanged && !modelViewChanged)) return;
+        if (projectionChanged) {
+            this.projection.set(projection);
+            Matrixn.put(projection, projectionData);
+        }
+        if (modelViewChanged) {
+            this.modelView.set(modelView);
+            Matrixn.put(modelView, modelViewData);
+        }
+        final MemorySegment upload = !projectionChanged ? modelViewData : modelViewChanged ? data : projectionData;
+        GL.bindBuffer(GL.UNIFORM_BUFFER, id);
+        GL.bufferSubData(GL.UNIFORM_BUFFER, projectionChanged ? 0 : MAT4_SIZE, upload.byteSize(), upload);
+        GL.bindBuffer(GL.UNIFORM_BUFFER, 0);
+    }
+
+    @Override
+    public void dispose() {
+        if (id != 0) GL.deleteBuffer(id);
+    }
+}
@@ -0,0 +1,189 @@
+package io.github.squid233.tetris;
+
+import java.util.SplittableRandom;
+
+/**
+ * The source of the pieces with a preview queue.
+ * <p>
+ * A generator is confined to the thread that uses it. Generators created with the same mode and seed
+ * give the same sequence on any thread, and {@link #split()} creates an independent generator for another game
+ * without changing the sequence of this one.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public abstract class PieceGenerator {
+    private final long seed;
+    private final CellStateType[] preview;
+    private int previewHead = 0;
+    private boolean previewFilled = false;
+    protected final SplittableRandom random;
+    /**
+     * The seeds of the split generators; a separate stream, so splitting never draws from {@link #random}.
+     */
+    private SplittableRandom splits;
+
+    /**
+     * The built-in generators.
+     */
+    public enum Mode {
+        /**
+         * Each piece is drawn independently.
+         */
+        RANDOM,
+        /**
+         * Each 7 pieces contain every type once.
+         */
+        BAG_7,
+        /**
+         * Each 14 pieces contain every type twice.
+         */
+        BAG_14;
+
+        private static final Mode[] VALUES = values();
+
+        public static Mode byId(int id) {
+            return VALUES[id];
+        }
+    }
+
+    protected PieceGenerator(long seed, int previewLength) {
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+        this.preview = new CellStateType[previewLength];
+    }
+
+    /**
+     * Creates a built-in generator.
+     *
+     * @param mode          the mode.
+     * @param seed          the seed.
+     * @param previewLength the count of the upcoming pieces that can be peeked, at least 0.
+     * @return the generator.
+     */
+    public static PieceGenerator of(Mode mode, long seed, int previewLength) {
+        if (previewLength < 0) {
+            throw new IllegalArgumentException("The preview length must be at least 0: " + previewLength);
+        }
+        return switch (mode) {
+            case RANDOM -> new PureRandom(seed, previewLength);
+            case BAG_7 -> new Bag(mode, seed, previewLength, 1);
+            case BAG_14 -> new Bag(mode, seed, previewLength, 2);
+        };
+    }
+
+    private void fillPreview() {
+        // deferred until the subclass is initialized
+        if (previewFilled) return;
+        previewFilled = true;
+        for (int i = 0; i < preview.length; i++) {
+            preview[i] = generate();
+        }
+    }
+
+    /**
+     * {@return a new piece type from the underlying sequence}
+     */
+    protected abstract CellStateType generate();
+
+    public abstract Mode mode();
+
+    /**
+     * Creates an independent generator of the same mode and preview length for another game.
+     * <p>
+     * The seed of the new generator only depends on the seed of this generator and the count of the previous
+     * splits, so this generator gives the same pieces whether it is split or not.
+     *
+     * @return the new generator.
+     */
+    public PieceGenerator split() {
+        if (splits == null) splits = new SplittableRandom(seed).split();
+        return of(mode(), splits.nextLong(), preview.length);
+    }
+
+    /**
+     * {@return the next piece, taken from the front of the preview queue}
+     */
+    public CellStateType next() {
+        fillPreview();
+        if (preview.length == 0) return generate();
+        final CellStateType type = preview[previewHead];
+        preview[previewHead] = generate();
+        previewHead = (previewHead + 1) % preview.length;
+        return type;
+    }
+
+    /**
+     * {@return the type of an upcoming piece}
+     *
+     * @param i the index in the preview queue, from 0 to {@link #previewLength()} - 1. 0 is the next piece.
+     * @throws IllegalArgumentException if the index is out of the preview queue.
+     */
+    public CellStateType peek(int i) {
+        if (i < 0 || i >= preview.length) {
+            throw new IllegalArgumentException("The preview index " + i + " is out of the preview length " + preview.length);
+        }
+        fillPreview();
+        return preview[(previewHead + i) % preview.length];
+    }
+
+    public int previewLength() {
+        return preview.length;
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    private static final class PureRandom extends PieceGenerator {
+        PureRandom(long seed, int previewLength) {
+            super(seed, previewLength);
+        }
+
+        @Override
+        protected CellStateType generate() {
+            return CellStateType.byId(random.nextInt(CellStateType.VALUE_COUNT));
+        }
+
+        @Override
+        public Mode mode() {
+            return Mode.RANDOM;
+        }
+    }
+
+    private static final class Bag extends PieceGenerator {
+        private final Mode mode;
+        private final CellStateType[] bag;
+        private int index;
+
+        Bag(Mode mode, long seed, int previewLength, int copies) {
+            super(seed, previewLength);
+            this.mode = mode;
+            bag = new CellStateType[CellStateType.VALUE_COUNT * copies];
+            for (int i = 0; i < bag.length; i++) {
+                bag[i] = CellStateType.byId(i % CellStateType.VALUE_COUNT);
+            }
+            index = bag.length;
+        }
+
+        @Override
+        protected CellStateType generate() {
+            if (index == bag.length) {
+                // Fisher-Yates shuffle
+                for (int i = bag.length - 1; i > 0; i--) {
+                    final int j = random.nextInt(i + 1);
+                    final CellStateType t = bag[i];
+                    bag[i] = bag[j];
+                    bag[j] = t;
+                }
+                index = 0;
+            }
+            return bag[index++];
+        }
+
+        @Override
+        public Mode mode() {
+            return mode;
+        }
+    }
+}
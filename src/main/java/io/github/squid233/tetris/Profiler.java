@@ -0,0 +1,230 @@
+package io.github.squid233.tetris;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time spent in the phases of the ticks and frames.
+ * <p>
+ * Enable with {@code -Dtetris.profile=true}. When disabled, {@link #start()}, {@link #end(Phase, long)} and
+ * {@link #endFrame()} are constant-folded away by the JIT. The statistics are exposed through JMX as
+ * {@value #OBJECT_NAME}.
+ * <p>
+ * A tick is one sample. The frame phases are measured around each draw call or upload, so their times are summed
+ * up within a frame and recorded as one sample per phase when the frame ends.
+ * <p>
+ * Each phase must only be measured on one thread.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class Profiler {
+    public static final boolean ENABLED = Boolean.getBoolean("tetris.profile");
+    public static final String OBJECT_NAME = "io.github.squid233.tetris:type=Profiler";
+    private static final Histogram[] HISTOGRAMS = new Histogram[Phase.VALUE_COUNT];
+    /**
+     * The time spent in each frame phase in the current frame. Only used by the render thread.
+     */
+    private static final long[] FRAME_TIMES = new long[Phase.VALUE_COUNT];
+
+    static {
+        for (int i = 0; i < Phase.VALUE_COUNT; i++) {
+            HISTOGRAMS[i] = new Histogram();
+        }
+    }
+
+    /**
+     * The measured phases.
+     *
+     * @author squid233
+     * @since 0.1.0
+     */
+    public enum Phase {
+        /**
+         * A simulation tick, on the simulation thread.
+         */
+        TICK(false),
+        /**
+         * Building the vertices of the cells.
+         */
+        TESSELLATE(true),
+        /**
+         * Copying vertices to the GPU.
+         */
+        UPLOAD(true),
+        /**
+         * Issuing draw calls.
+         */
+        DRAW(true),
+        /**
+         * Swapping the buffers.
+         */
+        SWAP(true);
+
+        public static final Phase[] VALUES = values();
+        public static final int VALUE_COUNT = VALUES.length;
+        private final boolean perFrame;
+
+        Phase(boolean perFrame) {
+            this.perFrame = perFrame;
+        }
+
+        /**
+         * {@return whether the samples of this phase are the time per frame, summed up until {@link #endFrame()}}
+         */
+        public boolean isPerFrame() {
+            return perFrame;
+        }
+
+        public static Phase byId(int id) {
+            return VALUES[id];
+        }
+    }
+
+    private Profiler() {
+    }
+
+    /**
+     * {@return the start time to pass to {@link #end(Phase, long)}}
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Records the time since the given start time, or adds it to the current frame for a
+     * {@link Phase#isPerFrame() frame phase}.
+     *
+     * @param phase the phase.
+     * @param start the start time from {@link #start()}.
+     */
+    public static void end(Phase phase, long start) {
+        if (ENABLED) {
+            if (phase.perFrame) {
+                FRAME_TIMES[phase.ordinal()] += System.nanoTime() - start;
+            } else {
+                HISTOGRAMS[phase.ordinal()].record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Records the time of each frame phase in the frame that just ended, including the phases it did not enter.
+     * Only called by the render thread.
+     */
+    public static void endFrame() {
+        if (!ENABLED) return;
+        for (Phase phase : Phase.VALUES) {
+            if (!phase.perFrame) continue;
+            HISTOGRAMS[phase.ordinal()].record(FRAME_TIMES[phase.ordinal()]);
+            FRAME_TIMES[phase.ordinal()] = 0;
+        }
+    }
+
+    public static Histogram histogram(Phase phase) {
+        return HISTOGRAMS[phase.ordinal()];
+    }
+
+    /**
+     * Registers the profiler MBean if the profiler is enabled.
+     */
+    public static void register() {
+        if (!ENABLED) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBeanImpl(), new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register the profiler MBean", e);
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * {@return a summary of the p50/p99/max milliseconds of the given phase}
+     *
+     * @param phase the phase.
+     */
+    public static String summary(Phase phase) {
+        final Histogram h = histogram(phase);
+        return String.format("%s %.2f/%.2f/%.2f ms", phase.name().toLowerCase(),
+            toMillis(h.percentile(50)), toMillis(h.percentile(99)), toMillis(h.max()));
+    }
+
+    /**
+     * The JMX interface of the profiler. The arrays are indexed by {@link Phase#ordinal()}.
+     *
+     * @author squid233
+     * @since 0.1.0
+     */
+    public interface ProfilerMXBean {
+        String[] getPhases();
+
+        long[] getCounts();
+
+        double[] getP50Millis();
+
+        double[] getP99Millis();
+
+        double[] getMaxMillis();
+
+        void reset();
+    }
+
+    private static final class MXBeanImpl implements ProfilerMXBean {
+        private static double[] percentiles(double percentile) {
+            final double[] values = new double[Phase.VALUE_COUNT];
+            for (int i = 0; i < Phase.VALUE_COUNT; i++) {
+                values[i] = toMillis(HISTOGRAMS[i].percentile(percentile));
+            }
+            return values;
+        }
+
+        @Override
+        public String[] getPhases() {
+            final String[] names = new String[Phase.VALUE_COUNT];
+            for (int i = 0; i < Phase.VALUE_COUNT; i++) {
+                names[i] = Phase.byId(i).name();
+            }
+            return names;
+        }
+
+        @Override
+        public long[] getCounts() {
+            final long[] counts = new long[Phase.VALUE_COUNT];
+            for (int i = 0; i < Phase.VALUE_COUNT; i++) {
+                counts[i] = HISTOGRAMS[i].count();
+            }
+            return counts;
+        }
+
+        @Override
+        public double[] getP50Millis() {
+            return percentiles(50);
+        }
+
+        @Override
+        public double[] getP99Millis() {
+            return percentiles(99);
+        }
+
+        @Override
+        public double[] getMaxMillis() {
+            final double[] values = new double[Phase.VALUE_COUNT];
+            for (int i = 0; i < Phase.VALUE_COUNT; i++) {
+                values[i] = toMillis(HISTOGRAMS[i].max());
+            }
+            return values;
+        }
+
+        @Override
+        public void reset() {
+            for (Histogram histogram : HISTOGRAMS) {
+                histogram.reset();
+            }
+        }
+    }
+}
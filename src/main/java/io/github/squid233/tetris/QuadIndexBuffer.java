@@ -0,0 +1,59 @@
+package io.github.squid233.tetris;
+
+import org.overrun.glib.gl.GL;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+/**
+ * A static element buffer with the indices {@code 0, 1, 2, 2, 3, 0} of every quad, shared by all quad batches.
+ * The buffer is created on the first {@link #bind()}.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class QuadIndexBuffer implements Disposable {
+    private final int maxQuads;
+    private int id;
+
+    public QuadIndexBuffer(int maxQuads) {
+        this.maxQuads = maxQuads;
+    }
+
+    /**
+     * Binds this buffer to {@link GL#ELEMENT_ARRAY_BUFFER} of the current vertex array.
+     */
+    public void bind() {
+        if (id == 0) {
+            id = GL.genBuffer();
+            GL.bindBuffer(GL.ELEMENT_ARRAY_BUFFER, id);
+            try (Arena arena = Arena.openConfined()) {
+                final MemorySegment indices = arena.allocateArray(JAVA_INT, maxQuads * 6L);
+                for (int i = 0; i < maxQuads; i++) {
+                    final int base = i * 4;
+                    final long offset = i * 6L;
+                    indices.setAtIndex(JAVA_INT, offset, base);
+                    indices.setAtIndex(JAVA_INT, offset + 1, base + 1);
+                    indices.setAtIndex(JAVA_INT, offset + 2, base + 2);
+                    indices.setAtIndex(JAVA_INT, offset + 3, base + 2);
+                    indices.setAtIndex(JAVA_INT, offset + 4, base + 3);
+                    indices.setAtIndex(JAVA_INT, offset + 5, base);
+                }
+                GL.bufferData(GL.ELEMENT_ARRAY_BUFFER, indices.byteSize(), indices, GL.STATIC_DRAW);
+            }
+        } else {
+            GL.bindBuffer(GL.ELEMENT_ARRAY_BUFFER, id);
+        }
+    }
+
+    public int maxQuads() {
+        return maxQuads;
+    }
+
+    @Override
+    public void dispose() {
+        if (id != 0) GL.deleteBuffer(id);
+    }
+}
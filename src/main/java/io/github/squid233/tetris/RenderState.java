@@ -0,0 +1,103 @@
+package io.github.squid233.tetris;
+
+import org.overrun.glib.gl.GL;
+
+/**
+ * Tracks the bound program, 2D texture and vertex array of the context and skips the binds that would not change
+ * them. All binds of these objects must go through this class, and it must only be used on the render thread.
+ * <p>
+ * The renderers leave their objects bound after drawing; the next one binds its own only if it differs.
+ * Element buffers are part of the vertex array state, so they must only be bound while the vertex array
+ * that owns them is bound.
+ * <p>
+ * Run with {@code -Dtetris.debug=true} to count the skipped binds; see {@link #report()}.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class RenderState {
+    public static final boolean DEBUG = Boolean.getBoolean("tetris.debug");
+    private static final int PROGRAM = 0;
+    private static final int TEXTURE = 1;
+    private static final int VERTEX_ARRAY = 2;
+    private static final int UNIFORM_BUFFER = 3;
+    private static final String[] NAMES = {"program binds", "texture binds", "vertex array binds", "uniform buffer uploads"};
+    private static final long[] CALLS = new long[NAMES.length];
+    private static final long[] SKIPPED = new long[NAMES.length];
+    private static int program;
+    private static int texture;
+    private static int vertexArray;
+
+    private RenderState() {
+    }
+
+    /**
+     * Counts a call, if {@link #DEBUG}.
+     *
+     * @param kind    the kind of the call.
+     * @param skipped whether the call was skipped.
+     * @return {@code skipped}.
+     */
+    private static boolean count(int kind, boolean skipped) {
+        if (DEBUG) {
+            CALLS[kind]++;
+            if (skipped) SKIPPED[kind]++;
+        }
+        return skipped;
+    }
+
+    public static void useProgram(int id) {
+        if (count(PROGRAM, program == id)) return;
+        program = id;
+        GL.useProgram(id);
+    }
+
+    public static void bindTexture(int id) {
+        if (count(TEXTURE, texture == id)) return;
+        texture = id;
+        GL.bindTexture(GL.TEXTURE_2D, id);
+    }
+
+    public static void bindVertexArray(int id) {
+        if (count(VERTEX_ARRAY, vertexArray == id)) return;
+        vertexArray = id;
+        GL.bindVertexArray(id);
+    }
+
+    /**
+     * Counts an upload of the {@link MatrixBuffer}, which is skipped when the matrices did not change.
+     *
+     * @param skipped whether the upload is skipped.
+     * @return {@code skipped}.
+     */
+    static boolean countUniformBufferUpload(boolean skipped) {
+        return count(UNIFORM_BUFFER, skipped);
+    }
+
+    public static void deleteProgram(int id) {
+        if (program == id) program = 0;
+        GL.deleteProgram(id);
+    }
+
+    public static void deleteTexture(int id) {
+        if (texture == id) texture = 0;
+        GL.deleteTexture(id);
+    }
+
+    public static void deleteVertexArray(int id) {
+        if (vertexArray == id) vertexArray = 0;
+        GL.deleteVertexArray(id);
+    }
+
+    /**
+     * {@return the counts of the skipped binds, or an empty string without {@link #DEBUG}}
+     */
+    public static String report() {
+        if (!DEBUG) return "";
+        final StringBuilder sb = new StringBuilder("Redundant GL calls skipped:");
+        for (int i = 0; i < NAMES.length; i++) {
+            sb.append("\n  ").append(NAMES[i]).append(": ").append(SKIPPED[i]).append(" of ").append(CALLS[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -1,44 +1,86 @@
 package io.github.squid233.tetris;
 
+import org.jetbrains.annotations.Nullable;
 import org.overrun.glib.gl.GL;
 
 import java.lang.foreign.Arena;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
 /**
+ * A shader program.
+ * <p>
+ * The matrices come from the {@link MatrixBuffer#BLOCK_NAME Matrices} uniform block, which is bound to
+ * {@link MatrixBuffer#BINDING}. The other uniforms are looked up once by name with {@link #getUniform(String)}
+ * when the program is created, and the returned handles are kept by the callers.
+ *
  * @author squid233
  * @since 0.1.0
  */
 public final class Shader implements Disposable {
     private final int id;
     private final Map<String, ShaderUniform> uniformMap = new HashMap<>();
+    private final ShaderUniform[] uniforms;
 
     public Shader(String vertexShader, String fragmentShader) {
+        this(vertexShader, fragmentShader, null);
+    }
+
+    /**
+     * Creates a program, loading it from a cache if possible.
+     *
+     * @param vertexShader   the vertex shader source.
+     * @param fragmentShader the fragment shader source.
+     * @param cache          the program binary cache, or {@code null} to always compile.
+     */
+    public Shader(String vertexShader, String fragmentShader, @Nullable ShaderCache cache) {
         id = GL.createProgram();
         try (Arena arena = Arena.openConfined()) {
-            final int vsh = compileShader(arena, "vertex", GL.VERTEX_SHADER, vertexShader);
-            final int fsh = compileShader(arena, "fragment", GL.FRAGMENT_SHADER, fragmentShader);
-            GL.attachShader(id, vsh);
-            GL.attachShader(id, fsh);
-            GL.bindAttribLocation(arena, id, 0, "Position");
-            GL.bindAttribLocation(arena, id, 1, "Color");
-            GL.bindAttribLocation(arena, id, 2, "UV");
-            GL.linkProgram(id);
-            if (GL.getProgrami(id, GL.LINK_STATUS) == GL.FALSE)
-                throw new IllegalStateException("Failed to link the program: " + GL.getProgramInfoLog(arena, id));
-            GL.detachShader(id, vsh);
-            GL.detachShader(id, fsh);
-            GL.deleteShader(vsh);
-            GL.deleteShader(fsh);
+            if (cache == null || !cache.load(id, vertexShader, fragmentShader)) {
+                final long start = System.nanoTime();
+                link(arena, vertexShader, fragmentShader, cache != null);
+                if (cache != null) {
+                    cache.store(id, vertexShader, fragmentShader, System.nanoTime() - start);
+                }
+            }
 
-            addUniform(arena, "Projection", ShaderUniform.TYPE_MAT4);
-            addUniform(arena, "ModelView", ShaderUniform.TYPE_MAT4);
-            addUniform(arena, "Sampler", ShaderUniform.TYPE_INT).ifPresent(u -> u.set(0));
+            final int matrices = GL.getUniformBlockIndex(arena, id, MatrixBuffer.BLOCK_NAME);
+            if (matrices != GL.INVALID_INDEX) {
+                GL.uniformBlockBinding(id, matrices, MatrixBuffer.BINDING);
+            }
+            final List<ShaderUniform> list = new ArrayList<>();
+            final ShaderUniform sampler = addUniform(arena, list, "Sampler", ShaderUniform.TYPE_INT, 1);
+            if (sampler != null) sampler.set(0);
+            addUniform(arena, list, "CellSize", ShaderUniform.TYPE_FLOAT, 1);
+            addUniform(arena, list, "Palette", ShaderUniform.TYPE_FLOAT3, CellType.VALUE_COUNT);
+            uniforms = list.toArray(new ShaderUniform[0]);
         }
     }
 
+    private void link(Arena arena, String vertexShader, String fragmentShader, boolean retrievable) {
+        final int vsh = compileShader(arena, "vertex", GL.VERTEX_SHADER, vertexShader);
+        final int fsh = compileShader(arena, "fragment", GL.FRAGMENT_SHADER, fragmentShader);
+        GL.attachShader(id, vsh);
+        GL.attachShader(id, fsh);
+        GL.bindAttribLocation(arena, id, 0, "Position");
+        GL.bindAttribLocation(arena, id, 1, "Color");
+        GL.bindAttribLocation(arena, id, 2, "UV");
+        GL.bindAttribLocation(arena, id, 3, "InstancePos");
+        GL.bindAttribLocation(arena, id, 4, "InstanceColor");
+        if (retrievable) {
+            GL.programParameteri(id, GL.PROGRAM_BINARY_RETRIEVABLE_HINT, GL.TRUE);
+        }
+        GL.linkProgram(id);
+        if (GL.getProgrami(id, GL.LINK_STATUS) == GL.FALSE)
+            throw new IllegalStateException("Failed to link the program: " + GL.getProgramInfoLog(arena, id));
+        GL.detachShader(id, vsh);
+        GL.detachShader(id, fsh);
+        GL.deleteShader(vsh);
+        GL.deleteShader(fsh);
+    }
+
     private static int compileShader(Arena arena, String name, int type, String src) {
         int shader = GL.createShader(type);
         GL.shaderSource(arena, shader, src);
@@ -48,26 +90,36 @@ public final class Shader implements Disposable {
         return shader;
     }
 
-    private Optional<ShaderUniform> addUniform(Arena arena, String name, int type) {
+    private @Nullable ShaderUniform addUniform(Arena arena, List<ShaderUniform> list, String name, int type, int count) {
         final int loc = GL.getUniformLocation(arena, id, name);
-        if (loc != -1) {
-            final ShaderUniform uniform = new ShaderUniform(loc, type);
-            uniformMap.put(name, uniform);
-            return Optional.of(uniform);
-        }
-        return Optional.empty();
+        if (loc == -1) return null;
+        final ShaderUniform uniform = new ShaderUniform(loc, type, count);
+        uniformMap.put(name, uniform);
+        list.add(uniform);
+        return uniform;
     }
 
-    public Optional<ShaderUniform> getUniform(String name) {
-        return Optional.ofNullable(uniformMap.get(name));
+    /**
+     * Gets a uniform by name. Keep the returned handle instead of calling this every frame.
+     *
+     * @param name the name of the uniform.
+     * @return the uniform, or {@code null} if the program has no such active uniform.
+     */
+    public @Nullable ShaderUniform getUniform(String name) {
+        return uniformMap.get(name);
     }
 
     public void use() {
-        GL.useProgram(id);
+        RenderState.useProgram(id);
     }
 
+    /**
+     * Uploads the uniforms changed since the last upload. The program must be in use.
+     */
     public void uploadUniforms() {
-        uniformMap.values().forEach(ShaderUniform::upload);
+        for (ShaderUniform uniform : uniforms) {
+            uniform.upload();
+        }
     }
 
     public int id() {
@@ -76,6 +128,6 @@ public final class Shader implements Disposable {
 
     @Override
     public void dispose() {
-        GL.deleteProgram(id);
+        RenderState.deleteProgram(id);
     }
 }
@@ -0,0 +1,152 @@
+package io.github.squid233.tetris;
+
+import org.overrun.glib.gl.GL;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves linked programs as binaries on disk and loads them instead of compiling the sources again.
+ * <p>
+ * A binary is keyed by the SHA-256 of the sources, the attribute bindings and the vendor, renderer and version
+ * strings of the driver, so a driver update gives new keys instead of stale binaries. A binary rejected by the
+ * driver is deleted, and the program is compiled from the sources.
+ * <p>
+ * The directory is {@code .cache/shaders}, or the one given by {@code -Dtetris.shaderCache=<dir>}.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ShaderCache {
+    public static final Path DEFAULT_DIR = Path.of(System.getProperty("tetris.shaderCache", ".cache/shaders"));
+    /**
+     * Changes when the attribute bindings of {@link Shader} change, since they are part of the binaries.
+     */
+    private static final String LAYOUT_VERSION = "Position Color UV InstancePos InstanceColor";
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED;
+    private final Path dir;
+    private final String driver;
+    private int hits;
+    private int misses;
+    private long hitNanos;
+    private long missNanos;
+
+    /**
+     * Creates a shader cache for the current context.
+     *
+     * @param dir the directory of the binaries.
+     */
+    public ShaderCache(Path dir) {
+        this.dir = dir;
+        this.driver = GL.getString(GL.VENDOR) + '\0' + GL.getString(GL.RENDERER) + '\0' + GL.getString(GL.VERSION);
+    }
+
+    private Path pathOf(String vertexShader, String fragmentShader) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        for (String s : new String[]{vertexShader, fragmentShader, LAYOUT_VERSION, driver}) {
+            digest.update(s.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return dir.resolve(HexFormat.of().formatHex(digest.digest()) + ".bin");
+    }
+
+    /**
+     * Loads the binary of the given sources into a program.
+     *
+     * @param program        the program. must not be linked.
+     * @param vertexShader   the vertex shader source.
+     * @param fragmentShader the fragment shader source.
+     * @return {@code true} if the program was linked from the binary; {@code false} if it must be compiled.
+     */
+    boolean load(int program, String vertexShader, String fragmentShader) {
+        final long start = System.nanoTime();
+        final Path path = pathOf(vertexShader, fragmentShader);
+        if (!Files.isReadable(path)) return false;
+        try (var fc = FileChannel.open(path);
+             Arena arena = Arena.openConfined()) {
+            final MemorySegment segment = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size(), arena.scope());
+            if (segment.byteSize() < 4) {
+                throw new IOException("Truncated program binary");
+            }
+            final int format = segment.get(INT, 0);
+            GL.programBinary(program, format, segment.asSlice(4), (int) (segment.byteSize() - 4));
+        } catch (IOException e) {
+            deleteQuietly(path);
+            return false;
+        }
+        if (GL.getProgrami(program, GL.LINK_STATUS) == GL.FALSE) {
+            // e.g. the driver changed without changing its strings
+            deleteQuietly(path);
+            return false;
+        }
+        hits++;
+        hitNanos += System.nanoTime() - start;
+        return true;
+    }
+
+    /**
+     * Saves the binary of a linked program.
+     *
+     * @param program        the program, linked with {@link GL#PROGRAM_BINARY_RETRIEVABLE_HINT}.
+     * @param vertexShader   the vertex shader source.
+     * @param fragmentShader the fragment shader source.
+     * @param compileNanos   the time spent compiling and linking the program.
+     */
+    void store(int program, String vertexShader, String fragmentShader, long compileNanos) {
+        misses++;
+        missNanos += compileNanos;
+        final int length = GL.getProgrami(program, GL.PROGRAM_BINARY_LENGTH);
+        if (length <= 0) return;
+        final Path path = pathOf(vertexShader, fragmentShader);
+        try (Arena arena = Arena.openConfined()) {
+            final MemorySegment pLength = arena.allocate(ValueLayout.JAVA_INT);
+            final MemorySegment pFormat = arena.allocate(ValueLayout.JAVA_INT);
+            final MemorySegment data = arena.allocate(4L + length);
+            GL.getProgramBinary(program, length, pLength, pFormat, data.asSlice(4));
+            data.set(INT, 0, pFormat.get(ValueLayout.JAVA_INT, 0));
+            final int written = pLength.get(ValueLayout.JAVA_INT, 0);
+            Files.createDirectories(dir);
+            // write to a temporary file first, so a crash never leaves a truncated binary under the key
+            final Path temp = Files.createTempFile(dir, "program", ".tmp");
+            try (var fc = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                fc.write(data.asSlice(0, 4L + written).asByteBuffer());
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the cache is only an optimization
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * {@return a summary of the programs loaded from the cache and compiled, and the time spent on each}
+     */
+    public String report() {
+        final double ms = TimeUnit.MILLISECONDS.toNanos(1);
+        return String.format("shader programs: %d from cache in %.2f ms, %d compiled in %.2f ms",
+            hits, hitNanos / ms, misses, missNanos / ms);
+    }
+}
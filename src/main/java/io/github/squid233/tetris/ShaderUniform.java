@@ -15,23 +15,38 @@ import java.lang.foreign.ValueLayout;
 public final class ShaderUniform {
     public static final int TYPE_INT = 0;
     public static final int TYPE_FLOAT = 4;
+    public static final int TYPE_FLOAT3 = 6;
     public static final int TYPE_MAT4 = 10;
 
     private final int location;
     private final int type;
+    private final int count;
     private final MemorySegment buffer;
     private boolean dirty;
 
-    public ShaderUniform(int location, int type) {
+    /**
+     * Creates an array uniform.
+     *
+     * @param location the location of the first element.
+     * @param type     the element type.
+     * @param count    the count of the elements.
+     */
+    public ShaderUniform(int location, int type, int count) {
         this.location = location;
         this.type = type;
-        this.buffer = MemorySegment.allocateNative(getSize(type), SegmentScope.auto());
+        this.count = count;
+        this.buffer = MemorySegment.allocateNative(getSize(type) * count, SegmentScope.auto());
+    }
+
+    public ShaderUniform(int location, int type) {
+        this(location, type, 1);
     }
 
     private static long getSize(int type) {
         return switch (type) {
             case TYPE_INT -> ValueLayout.JAVA_INT.byteSize();
             case TYPE_FLOAT -> ValueLayout.JAVA_FLOAT.byteSize();
+            case TYPE_FLOAT3 -> ValueLayout.JAVA_FLOAT.byteSize() * 3;
             case TYPE_MAT4 -> Matrixn.MAT4F.byteSize();
             default -> throw new IllegalStateException("Unexpected value: " + type);
         };
@@ -51,17 +66,38 @@ public final class ShaderUniform {
         markDirty();
     }
 
+    /**
+     * Sets an element of a {@link #TYPE_FLOAT3} uniform.
+     *
+     * @param index the index of the element.
+     * @param x     the x component.
+     * @param y     the y component.
+     * @param z     the z component.
+     */
+    public void set(int index, float x, float y, float z) {
+        final long i = index * 3L;
+        buffer.setAtIndex(ValueLayout.JAVA_FLOAT, i, x);
+        buffer.setAtIndex(ValueLayout.JAVA_FLOAT, i + 1, y);
+        buffer.setAtIndex(ValueLayout.JAVA_FLOAT, i + 2, z);
+        markDirty();
+    }
+
     public void set(Matrix4fc value) {
         Matrixn.put(value, buffer);
         markDirty();
     }
 
+    /**
+     * Uploads the value if it changed since the last upload. The program of this uniform must be in use.
+     */
     public void upload() {
         if (!dirty) return;
         switch (type) {
-            case TYPE_INT -> GL.uniform1iv(location, 1, buffer);
-            case TYPE_FLOAT -> GL.uniform1fv(location, 1, buffer);
-            case TYPE_MAT4 -> GL.uniformMatrix4fv(location, 1, false, buffer);
+            case TYPE_INT -> GL.uniform1iv(location, count, buffer);
+            case TYPE_FLOAT -> GL.uniform1fv(location, count, buffer);
+            case TYPE_FLOAT3 -> GL.uniform3fv(location, count, buffer);
+            case TYPE_MAT4 -> GL.uniformMatrix4fv(location, count, false, buffer);
         }
+        dirty = false;
     }
 }
@@ -0,0 +1,92 @@
+package io.github.squid233.tetris;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands {@link GameSnapshot snapshots} from one writer thread to one reader thread without locks.
+ * <p>
+ * There are three snapshots: the writer fills its back snapshot and swaps it with the ready one, and the reader
+ * swaps its front snapshot with the ready one when that is newer. Neither thread ever waits for the other,
+ * and the reader always gets the latest complete snapshot.
+ * <p>
+ * A snapshot is only published when something drawn changed, so most ticks, where the piece neither falls nor
+ * moves, publish nothing and the renderer can stay idle.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class SnapshotExchange {
+    private final AtomicReference<GameSnapshot> ready = new AtomicReference<>(new GameSnapshot());
+    private GameSnapshot back = new GameSnapshot();
+    private GameSnapshot front = new GameSnapshot();
+    private GameSimulation lastSimulation;
+    private int generation;
+    private long sequence;
+    // the visible state of the last published snapshot
+    private long lastModCount;
+    private CellStateType lastType;
+    private Direction lastDirection;
+    private int lastX;
+    private int lastY;
+    private long lastScore;
+    private long lastLines;
+    private long lastPieces;
+    private boolean lastGameOver;
+
+    /**
+     * Publishes the current state of a simulation if anything visible changed since the last published snapshot.
+     * Only called by the writer thread.
+     *
+     * @param simulation the simulation.
+     * @return {@code true} if a new snapshot was published.
+     */
+    public boolean publish(GameSimulation simulation) {
+        final boolean newGame = simulation != lastSimulation;
+        if (newGame) {
+            lastSimulation = simulation;
+            generation++;
+        } else if (!hasChanged(simulation)) {
+            return false;
+        }
+        final CellState piece = simulation.holdState();
+        lastModCount = simulation.wall().modCount();
+        lastType = piece.type();
+        lastDirection = piece.direction();
+        lastX = piece.x();
+        lastY = piece.y();
+        lastScore = simulation.score();
+        lastLines = simulation.lines();
+        lastPieces = simulation.pieces();
+        lastGameOver = simulation.isGameOver();
+        back.copyFrom(simulation, generation, ++sequence);
+        back = ready.getAndSet(back);
+        return true;
+    }
+
+    private boolean hasChanged(GameSimulation simulation) {
+        final CellState piece = simulation.holdState();
+        return simulation.wall().modCount() != lastModCount ||
+            piece.type() != lastType ||
+            piece.direction() != lastDirection ||
+            piece.x() != lastX ||
+            piece.y() != lastY ||
+            simulation.score() != lastScore ||
+            simulation.lines() != lastLines ||
+            simulation.pieces() != lastPieces ||
+            simulation.isGameOver() != lastGameOver;
+    }
+
+    /**
+     * Gets the latest published snapshot. Only called by the reader thread.
+     * <p>
+     * The returned snapshot stays valid until the next call.
+     *
+     * @return the latest snapshot; a snapshot with the sequence {@code 0} if nothing was published yet.
+     */
+    public GameSnapshot acquire() {
+        if (ready.get().sequence() > front.sequence()) {
+            front = ready.getAndSet(front);
+        }
+        return front;
+    }
+}
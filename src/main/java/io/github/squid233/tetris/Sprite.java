@@ -0,0 +1,20 @@
+package io.github.squid233.tetris;
+
+/**
+ * A region of a texture.
+ *
+ * @param u0     the left texture coordinate.
+ * @param v0     the top texture coordinate.
+ * @param u1     the right texture coordinate.
+ * @param v1     the bottom texture coordinate.
+ * @param width  the width in pixels.
+ * @param height the height in pixels.
+ * @author squid233
+ * @since 0.1.0
+ */
+public record Sprite(float u0, float v0, float u1, float v1, int width, int height) {
+    /**
+     * The whole texture, for code that does not use an atlas.
+     */
+    public static final Sprite WHOLE = new Sprite(0f, 0f, 1f, 1f, 0, 0);
+}
@@ -0,0 +1,188 @@
+package io.github.squid233.tetris;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures the startup stages and the time to the first frame, from the start of the process.
+ * <p>
+ * The stages are printed after the first frame. With {@code -Dtetris.startupLog=<file>}, one tab-separated line
+ * with the time and the milliseconds to the first frame and to the end of each stage is appended to the file,
+ * to track the launch latency across releases. {@code -Dtetris.exitAfterFirstFrame=true} closes the game after
+ * the first frame, for measuring it in scripts.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class Startup {
+    public static final @Nullable String LOG = System.getProperty("tetris.startupLog");
+    public static final boolean EXIT_AFTER_FIRST_FRAME = Boolean.getBoolean("tetris.exitAfterFirstFrame");
+    /**
+     * The {@link System#nanoTime()} at the start of the process, or at the initialization of this class if the
+     * start time of the process is unknown.
+     */
+    private static final long ORIGIN;
+    private static final List<Stage> STAGES = new ArrayList<>();
+    private static long firstFrame = -1;
+
+    static {
+        final long now = System.nanoTime();
+        final long sinceStart = ProcessHandle.current().info().startInstant()
+            .map(instant -> TimeUnit.MILLISECONDS.toNanos(Instant.now().toEpochMilli() - instant.toEpochMilli()))
+            .orElse(0L);
+        ORIGIN = now - Math.max(sinceStart, 0L);
+    }
+
+    /**
+     * A measured stage.
+     *
+     * @param name   the name of the stage.
+     * @param thread the thread the stage ran on, {@code "virtual"} for virtual threads.
+     * @param start  the nanoseconds from the start of the process to the start of the stage.
+     * @param end    the nanoseconds from the start of the process to the end of the stage.
+     * @author squid233
+     * @since 0.1.0
+     */
+    public record Stage(String name, String thread, long start, long end) {
+    }
+
+    private Startup() {
+    }
+
+    /**
+     * {@return the start time to pass to {@link #end(String, long)}}
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a stage that started at the given time and ends now. Can be called on any thread.
+     *
+     * @param name  the name of the stage.
+     * @param start the start time from {@link #start()}.
+     */
+    public static void end(String name, long start) {
+        final Thread thread = Thread.currentThread();
+        final Stage stage = new Stage(name, thread.isVirtual() ? "virtual" : thread.getName(),
+            start - ORIGIN, System.nanoTime() - ORIGIN);
+        synchronized (STAGES) {
+            STAGES.add(stage);
+        }
+    }
+
+    /**
+     * Wraps a task to record it as a stage.
+     *
+     * @param name the name of the stage.
+     * @param task the task.
+     * @param <T>  the type of the result.
+     * @return the wrapped task.
+     */
+    public static <T> Supplier<T> timed(String name, Supplier<T> task) {
+        return () -> {
+            final long start = start();
+            final T result = task.get();
+            end(name, start);
+            return result;
+        };
+    }
+
+    /**
+     * Wraps a task to record it as a stage.
+     *
+     * @param name the name of the stage.
+     * @param task the task.
+     * @return the wrapped task.
+     */
+    public static Runnable timed(String name, Runnable task) {
+        return () -> {
+            final long start = start();
+            task.run();
+            end(name, start);
+        };
+    }
+
+    /**
+     * Waits for a startup task, rethrowing its exception if it failed.
+     *
+     * @param future the task.
+     * @param <T>    the type of the result.
+     * @return the result.
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
+
+    /**
+     * Records the end of a frame. The first call prints the stages and appends them to {@link #LOG}.
+     * Only called by the render thread.
+     *
+     * @return {@code true} if this was the first frame.
+     */
+    public static boolean frameRendered() {
+        if (firstFrame >= 0) return false;
+        firstFrame = System.nanoTime() - ORIGIN;
+        System.out.println(report());
+        if (LOG != null) {
+            try {
+                Files.writeString(Path.of(LOG), logLine() + System.lineSeparator(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Failed to write the startup log " + LOG + ": " + e);
+            }
+        }
+        return true;
+    }
+
+    private static List<Stage> sortedStages() {
+        synchronized (STAGES) {
+            final List<Stage> stages = new ArrayList<>(STAGES);
+            stages.sort(Comparator.comparingLong(Stage::start));
+            return stages;
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * {@return the stages and the time to the first frame}
+     */
+    public static String report() {
+        final StringBuilder sb = new StringBuilder(String.format("First frame after %.1f ms", toMillis(firstFrame)));
+        for (Stage stage : sortedStages()) {
+            sb.append(String.format("%n  %-20s %8.1f ..%8.1f ms  %8.1f ms  [%s]", stage.name(),
+                toMillis(stage.start()), toMillis(stage.end()), toMillis(stage.end() - stage.start()), stage.thread()));
+        }
+        return sb.toString();
+    }
+
+    private static String logLine() {
+        final StringBuilder sb = new StringBuilder(Instant.now().toString())
+            .append('\t').append(String.format(Locale.ROOT, "%.1f", toMillis(firstFrame)));
+        for (Stage stage : sortedStages()) {
+            sb.append('\t').append(stage.name()).append('=').append(String.format(Locale.ROOT, "%.1f", toMillis(stage.end())));
+        }
+        return sb.toString();
+    }
+}
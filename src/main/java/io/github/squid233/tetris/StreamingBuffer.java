@@ -0,0 +1,140 @@
+package io.github.squid233.tetris;
+
+import org.overrun.glib.gl.GL;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentScope;
+
+/**
+ * A ring buffer for data rewritten every frame, split into {@value #SECTIONS} sections so the CPU can write
+ * one section while the GPU still reads the others.
+ * <p>
+ * With {@link GLFeatures#bufferStorage() buffer storage} the whole buffer is mapped once and stays mapped;
+ * before a section is reused, the fence placed when it was left is waited on, which normally has already
+ * signaled. Without it, each write maps its range unsynchronized, and the buffer is orphaned when the ring
+ * wraps around, so the driver hands out new storage instead of waiting.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class StreamingBuffer implements Disposable {
+    public static final int SECTIONS = 3;
+    private static final long FENCE_TIMEOUT = 1_000_000_000L;
+    private final int target;
+    private final long sectionSize;
+    private final long size;
+    private final boolean persistent;
+    private final MemorySegment[] fences = new MemorySegment[SECTIONS];
+    private int id;
+    private MemorySegment mapped = MemorySegment.NULL;
+    private int section;
+    private long offset;
+
+    /**
+     * Creates a streaming buffer.
+     *
+     * @param target      the target to bind the buffer to, {@link GL#ARRAY_BUFFER} or {@link GL#ELEMENT_ARRAY_BUFFER}.
+     * @param sectionSize the size of a section in bytes, the maximum size of one write.
+     * @param features    the features of the context. {@link GLFeatures#streaming()} must be {@code true}.
+     */
+    public StreamingBuffer(int target, long sectionSize, GLFeatures features) {
+        if (!features.streaming()) {
+            throw new IllegalStateException("Streaming buffers require OpenGL 3.2");
+        }
+        this.target = target;
+        this.sectionSize = sectionSize;
+        this.size = sectionSize * SECTIONS;
+        this.persistent = features.bufferStorage();
+    }
+
+    private void init() {
+        id = GL.genBuffer();
+        GL.bindBuffer(target, id);
+        if (persistent) {
+            final int flags = GL.MAP_WRITE_BIT | GL.MAP_PERSISTENT_BIT | GL.MAP_COHERENT_BIT;
+            GL.bufferStorage(target, size, MemorySegment.NULL, flags);
+            mapped = MemorySegment.ofAddress(GL.mapBufferRange(target, 0, size, flags).address(), size, SegmentScope.global());
+        } else {
+            GL.bufferData(target, size, MemorySegment.NULL, GL.STREAM_DRAW);
+        }
+    }
+
+    /**
+     * Binds this buffer to its target.
+     */
+    public void bind() {
+        if (id == 0) init();
+        else GL.bindBuffer(target, id);
+    }
+
+    /**
+     * Copies data into the next free range of this buffer. The buffer must be bound.
+     *
+     * @param data      the data.
+     * @param byteSize  the number of bytes to copy from the start of {@code data}.
+     * @param alignment the alignment of the returned offset, in bytes.
+     * @return the offset of the data in this buffer, or {@code -1} if the aligned data does not fit in a section.
+     */
+    public long write(MemorySegment data, long byteSize, int alignment) {
+        if (byteSize + alignment - 1 > sectionSize) return -1;
+        long start = align(section * sectionSize + offset, alignment);
+        if (start + byteSize > (section + 1) * sectionSize) {
+            nextSection();
+            start = align(section * sectionSize, alignment);
+        }
+        if (persistent) {
+            MemorySegment.copy(data, 0, mapped, start, byteSize);
+        } else {
+            final MemorySegment range = GL.mapBufferRange(target, start, byteSize,
+                GL.MAP_WRITE_BIT | GL.MAP_INVALIDATE_RANGE_BIT | GL.MAP_UNSYNCHRONIZED_BIT);
+            MemorySegment.copy(data, 0, MemorySegment.ofAddress(range.address(), byteSize, SegmentScope.global()), 0, byteSize);
+            GL.unmapBuffer(target);
+        }
+        offset = start + byteSize - section * sectionSize;
+        return start;
+    }
+
+    private static long align(long offset, int alignment) {
+        return (offset + alignment - 1) / alignment * alignment;
+    }
+
+    private void nextSection() {
+        if (persistent) {
+            // the draws reading the section we leave have all been issued
+            fences[section] = GL.fenceSync(GL.SYNC_GPU_COMMANDS_COMPLETE, 0);
+            section = (section + 1) % SECTIONS;
+            final MemorySegment fence = fences[section];
+            if (fence != null) {
+                final int result = GL.clientWaitSync(fence, GL.SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT);
+                GL.deleteSync(fence);
+                fences[section] = null;
+                if (result == GL.WAIT_FAILED) {
+                    throw new IllegalStateException("Failed to wait for the streaming buffer fence");
+                }
+            }
+        } else {
+            section = (section + 1) % SECTIONS;
+            if (section == 0) {
+                GL.bufferData(target, size, MemorySegment.NULL, GL.STREAM_DRAW);
+            }
+        }
+        offset = 0;
+    }
+
+    @Override
+    public void dispose() {
+        for (int i = 0; i < SECTIONS; i++) {
+            if (fences[i] != null) {
+                GL.deleteSync(fences[i]);
+                fences[i] = null;
+            }
+        }
+        if (id != 0) {
+            if (persistent) {
+                GL.bindBuffer(target, id);
+                GL.unmapBuffer(target);
+            }
+            GL.deleteBuffer(id);
+        }
+    }
+}
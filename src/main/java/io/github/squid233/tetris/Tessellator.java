@@ -1,34 +1,90 @@
 package io.github.squid233.tetris;
 
+import org.jetbrains.annotations.Nullable;
 import org.overrun.glib.gl.GL;
-import org.overrun.glib.util.GrowableBuffer;
 
 import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentScope;
 
 import static java.lang.foreign.ValueLayout.*;
 
 /**
+ * Batches vertices and draws them.
+ * <p>
+ * There are two ways to build a batch, which cannot be mixed in one batch:
+ * <ul>
+ *     <li>{@link #position(float, float) position}, {@link #color(int) color}, {@link #texCoord(float, float) texCoord},
+ *     {@link #emit() emit} and {@link #indices(int...) indices} for arbitrary primitives;</li>
+ *     <li>{@link #quad(float, float, float, float, float, float, float, float, int) quad} for quads,
+ *     which writes the 4 vertices at once and draws with the shared {@link QuadIndexBuffer}.
+ *     A quad batch is flushed automatically when it reaches the size of the index buffer.</li>
+ * </ul>
+ * The vertex and index data are written directly into native memory that only grows, so building and flushing
+ * a batch of a size seen before does not allocate.
+ * <p>
+ * When the context supports it, the batches are copied into {@link StreamingBuffer ring buffers} and drawn
+ * with a base vertex, so a flush does not normally wait for the GPU to finish reading the previous batch.
+ *
  * @author squid233
  * @since 0.1.0
  */
 public final class Tessellator implements Disposable {
-    private static final int STRIDE = (int) (JAVA_FLOAT.byteSize() * (2 + 2) + JAVA_BYTE.byteSize() * 3);
-    private final GrowableBuffer buffer;
-    private final GrowableBuffer indexBuffer;
+    /**
+     * The size of a vertex: position (2 floats), UV (2 floats) and color (3 unsigned bytes).
+     */
+    public static final int STRIDE = (int) (JAVA_FLOAT.byteSize() * (2 + 2) + JAVA_BYTE.byteSize() * 3);
+    public static final int UV_OFFSET = (int) (JAVA_FLOAT.byteSize() * 2);
+    public static final int COLOR_OFFSET = (int) (JAVA_FLOAT.byteSize() * 4);
+    private static final long QUAD_BYTES = 4L * STRIDE;
+    private final QuadIndexBuffer quadIndexBuffer;
+    private MemorySegment vertexData;
+    private MemorySegment indexData;
+    private long vertexBytes;
+    private int vertexCount;
+    private int indexCount;
+    private int quadCount;
     private int colorRGB = 0xffffff;
     private float x, y, u, v;
-    private int vertexCount;
     private int vao, vbo, ebo;
+    private long vboCapacity, eboCapacity;
+    private final @Nullable StreamingBuffer vertexStream;
+    private final @Nullable StreamingBuffer indexStream;
+    private int streamVao;
+
+    /**
+     * Creates a tessellator.
+     *
+     * @param quadIndexBuffer the index buffer of the quads.
+     * @param features        the features of the context. If {@link GLFeatures#streaming() streaming} is supported,
+     *                        the batches are streamed through {@link StreamingBuffer ring buffers}; otherwise
+     *                        each batch is uploaded to a buffer that is re-specified when it grows.
+     */
+    public Tessellator(QuadIndexBuffer quadIndexBuffer, GLFeatures features) {
+        this.quadIndexBuffer = quadIndexBuffer;
+        if (features.streaming()) {
+            // a full quad batch always fits, larger indexed batches take the other path
+            final long vertexSection = (quadIndexBuffer.maxQuads() + 1L) * QUAD_BYTES;
+            vertexStream = new StreamingBuffer(GL.ARRAY_BUFFER, vertexSection, features);
+            indexStream = new StreamingBuffer(GL.ELEMENT_ARRAY_BUFFER, quadIndexBuffer.maxQuads() * 6L * JAVA_INT.byteSize(), features);
+        } else {
+            vertexStream = null;
+            indexStream = null;
+        }
+        vertexData = MemorySegment.allocateNative(256 * 1024, SegmentScope.auto());
+        indexData = MemorySegment.allocateNative(64 * 1024, SegmentScope.auto());
+    }
 
-    public Tessellator() {
-        buffer = new GrowableBuffer(256 * 1024);
-        indexBuffer = new GrowableBuffer(256 * 1024);
+    private static MemorySegment grow(MemorySegment segment, long required) {
+        long capacity = segment.byteSize();
+        while (capacity < required) capacity *= 2;
+        return MemorySegment.allocateNative(capacity, SegmentScope.auto()).copyFrom(segment);
     }
 
     private void clear() {
-        buffer.begin();
-        indexBuffer.begin();
+        vertexBytes = 0;
         vertexCount = 0;
+        indexCount = 0;
+        quadCount = 0;
     }
 
     public void begin() {
@@ -49,45 +105,98 @@ public final class Tessellator implements Disposable {
 
     public void flush(int mode) {
         if (vertexCount <= 0) return;
+        if (vertexStream == null || indexStream == null || !flushStreaming(mode)) {
+            flushBuffered(mode);
+        }
+        clear();
+    }
 
-        final boolean bufferGrew = buffer.end();
-        final boolean indexBufferGrew = indexBuffer.end();
-        final boolean noVbo = vbo == 0;
-        final boolean noEbo = ebo == 0;
+    private boolean flushStreaming(int mode) {
+        final StreamingBuffer vertexStream = this.vertexStream;
+        final StreamingBuffer indexStream = this.indexStream;
+        final boolean noVao = streamVao == 0;
+        if (noVao) streamVao = GL.genVertexArray();
+        RenderState.bindVertexArray(streamVao);
+        vertexStream.bind();
+        if (noVao) {
+            setupVertexAttributes();
+        }
+        final long uploadStart = Profiler.start();
+        final long vertexOffset = vertexStream.write(vertexData, vertexBytes, STRIDE);
+        GL.bindBuffer(GL.ARRAY_BUFFER, 0);
+        if (vertexOffset < 0) return false;
+        final int baseVertex = (int) (vertexOffset / STRIDE);
+        if (quadCount > 0) {
+            Profiler.end(Profiler.Phase.UPLOAD, uploadStart);
+            final long drawStart = Profiler.start();
+            quadIndexBuffer.bind();
+            GL.drawElementsBaseVertex(GL.TRIANGLES, quadCount * 6, GL.UNSIGNED_INT, MemorySegment.NULL, baseVertex);
+            Profiler.end(Profiler.Phase.DRAW, drawStart);
+        } else {
+            indexStream.bind();
+            final long indexOffset = indexStream.write(indexData, indexCount * JAVA_INT.byteSize(), (int) JAVA_INT.byteSize());
+            if (indexOffset < 0) return false;
+            Profiler.end(Profiler.Phase.UPLOAD, uploadStart);
+            final long drawStart = Profiler.start();
+            GL.drawElementsBaseVertex(mode, indexCount, GL.UNSIGNED_INT, MemorySegment.ofAddress(indexOffset), baseVertex);
+            Profiler.end(Profiler.Phase.DRAW, drawStart);
+        }
+        return true;
+    }
 
+    private void flushBuffered(int mode) {
+        final boolean noVbo = vbo == 0;
         if (vao == 0) vao = GL.genVertexArray();
         if (noVbo) vbo = GL.genBuffer();
-        if (noEbo) ebo = GL.genBuffer();
 
-        GL.bindVertexArray(vao);
+        RenderState.bindVertexArray(vao);
 
+        final long uploadStart = Profiler.start();
         GL.bindBuffer(GL.ARRAY_BUFFER, vbo);
-        if (noVbo || bufferGrew) {
-            GL.bufferData(GL.ARRAY_BUFFER, buffer.capacity(), buffer.address(), GL.STREAM_DRAW);
+        if (vboCapacity < vertexBytes) {
+            vboCapacity = vertexData.byteSize();
+            GL.bufferData(GL.ARRAY_BUFFER, vboCapacity, vertexData, GL.STREAM_DRAW);
         } else {
-            GL.bufferSubData(GL.ARRAY_BUFFER, 0, buffer);
+            GL.bufferSubData(GL.ARRAY_BUFFER, 0, vertexBytes, vertexData);
         }
         if (noVbo) {
-            GL.enableVertexAttribArray(0);
-            GL.enableVertexAttribArray(1);
-            GL.enableVertexAttribArray(2);
-            GL.vertexAttribPointer(0, 2, GL.FLOAT, false, STRIDE, MemorySegment.NULL);
-            GL.vertexAttribPointer(1, 3, GL.UNSIGNED_BYTE, true, STRIDE, MemorySegment.ofAddress(JAVA_FLOAT.byteSize() * 4));
-            GL.vertexAttribPointer(2, 2, GL.FLOAT, false, STRIDE, MemorySegment.ofAddress(JAVA_FLOAT.byteSize() * 2));
+            setupVertexAttributes();
         }
         GL.bindBuffer(GL.ARRAY_BUFFER, 0);
 
-        if (noEbo) GL.bindBuffer(GL.ELEMENT_ARRAY_BUFFER, ebo);
-        if (noEbo || indexBufferGrew) {
-            GL.bufferData(GL.ELEMENT_ARRAY_BUFFER, indexBuffer.capacity(), indexBuffer.address(), GL.STREAM_DRAW);
+        if (quadCount > 0) {
+            Profiler.end(Profiler.Phase.UPLOAD, uploadStart);
+            final long drawStart = Profiler.start();
+            quadIndexBuffer.bind();
+            GL.drawElements(GL.TRIANGLES, quadCount * 6, GL.UNSIGNED_INT, MemorySegment.NULL);
+            Profiler.end(Profiler.Phase.DRAW, drawStart);
         } else {
-            GL.bufferSubData(GL.ELEMENT_ARRAY_BUFFER, 0, indexBuffer);
+            if (ebo == 0) ebo = GL.genBuffer();
+            GL.bindBuffer(GL.ELEMENT_ARRAY_BUFFER, ebo);
+            final long indexBytes = indexCount * JAVA_INT.byteSize();
+            if (eboCapacity < indexBytes) {
+                eboCapacity = indexData.byteSize();
+                GL.bufferData(GL.ELEMENT_ARRAY_BUFFER, eboCapacity, indexData, GL.STREAM_DRAW);
+            } else {
+                GL.bufferSubData(GL.ELEMENT_ARRAY_BUFFER, 0, indexBytes, indexData);
+            }
+            Profiler.end(Profiler.Phase.UPLOAD, uploadStart);
+            final long drawStart = Profiler.start();
+            GL.drawElements(mode, indexCount, GL.UNSIGNED_INT, MemorySegment.NULL);
+            Profiler.end(Profiler.Phase.DRAW, drawStart);
         }
+    }
 
-        GL.drawElements(mode, (int) indexBuffer.count(), GL.UNSIGNED_INT, MemorySegment.NULL);
-        GL.bindVertexArray(0);
-
-        clear();
+    /**
+     * Sets up the vertex attributes of the currently bound vertex array for the vertex format of this class.
+     */
+    static void setupVertexAttributes() {
+        GL.enableVertexAttribArray(0);
+        GL.enableVertexAttribArray(1);
+        GL.enableVertexAttribArray(2);
+        GL.vertexAttribPointer(0, 2, GL.FLOAT, false, STRIDE, MemorySegment.NULL);
+        GL.vertexAttribPointer(1, 3, GL.UNSIGNED_BYTE, true, STRIDE, MemorySegment.ofAddress(COLOR_OFFSET));
+        GL.vertexAttribPointer(2, 2, GL.FLOAT, false, STRIDE, MemorySegment.ofAddress(UV_OFFSET));
     }
 
     public Tessellator position(float x, float y) {
@@ -107,24 +216,90 @@ public final class Tessellator implements Disposable {
         return this;
     }
 
+    /**
+     * Adds an index relative to the first vertex emitted after it.
+     *
+     * @param index the index.
+     */
+    public void index(int index) {
+        if (quadCount > 0) {
+            throw new IllegalStateException("Cannot mix indices with quads in a batch");
+        }
+        final long offset = indexCount * JAVA_INT.byteSize();
+        if (offset + JAVA_INT.byteSize() > indexData.byteSize()) {
+            indexData = grow(indexData, offset + JAVA_INT.byteSize());
+        }
+        indexData.set(JAVA_INT, offset, index + vertexCount);
+        indexCount++;
+    }
+
     public void indices(int... indices) {
         for (int index : indices) {
-            indexBuffer.put(JAVA_INT, index + vertexCount);
+            index(index);
         }
     }
 
+    private void putVertex(long offset, float x, float y, float u, float v, int colorRGB) {
+        final MemorySegment data = vertexData;
+        data.set(JAVA_FLOAT_UNALIGNED, offset, x);
+        data.set(JAVA_FLOAT_UNALIGNED, offset + 4, y);
+        data.set(JAVA_FLOAT_UNALIGNED, offset + UV_OFFSET, u);
+        data.set(JAVA_FLOAT_UNALIGNED, offset + UV_OFFSET + 4, v);
+        data.set(JAVA_BYTE, offset + COLOR_OFFSET, (byte) (colorRGB >>> 16));
+        data.set(JAVA_BYTE, offset + COLOR_OFFSET + 1, (byte) (colorRGB >>> 8));
+        data.set(JAVA_BYTE, offset + COLOR_OFFSET + 2, (byte) colorRGB);
+    }
+
     public void emit() {
-        buffer.putAll(JAVA_FLOAT_UNALIGNED, x, y, u, v)
-            .putAll(JAVA_BYTE, (byte) (colorRGB >>> 16), (byte) (colorRGB >>> 8), (byte) colorRGB);
+        if (vertexBytes + STRIDE > vertexData.byteSize()) {
+            vertexData = grow(vertexData, vertexBytes + STRIDE);
+        }
+        putVertex(vertexBytes, x, y, u, v, colorRGB);
+        vertexBytes += STRIDE;
         vertexCount++;
     }
 
+    /**
+     * Adds an axis-aligned quad. The vertices are emitted counterclockwise from the top left corner.
+     *
+     * @param x0       the left position.
+     * @param y0       the bottom position.
+     * @param x1       the right position.
+     * @param y1       the top position.
+     * @param u0       the left texture coordinate.
+     * @param v0       the top texture coordinate.
+     * @param u1       the right texture coordinate.
+     * @param v1       the bottom texture coordinate.
+     * @param colorRGB the color.
+     */
+    public void quad(float x0, float y0, float x1, float y1, float u0, float v0, float u1, float v1, int colorRGB) {
+        if (indexCount > 0) {
+            throw new IllegalStateException("Cannot mix quads with indices in a batch");
+        }
+        if (quadCount == quadIndexBuffer.maxQuads()) {
+            flush();
+        }
+        final long offset = vertexBytes;
+        if (offset + QUAD_BYTES > vertexData.byteSize()) {
+            vertexData = grow(vertexData, offset + QUAD_BYTES);
+        }
+        putVertex(offset, x0, y1, u0, v0, colorRGB);
+        putVertex(offset + STRIDE, x0, y0, u0, v1, colorRGB);
+        putVertex(offset + STRIDE * 2L, x1, y0, u1, v1, colorRGB);
+        putVertex(offset + STRIDE * 3L, x1, y1, u1, v0, colorRGB);
+        vertexBytes += QUAD_BYTES;
+        vertexCount += 4;
+        quadCount++;
+    }
+
     @Override
     public void dispose() {
-        buffer.close();
-        indexBuffer.close();
-        GL.deleteVertexArray(vao);
-        GL.deleteBuffer(vbo);
-        GL.deleteBuffer(ebo);
+        // nothing was uploaded if this tessellator was only used on the CPU side
+        if (vao != 0) RenderState.deleteVertexArray(vao);
+        if (vbo != 0) GL.deleteBuffer(vbo);
+        if (ebo != 0) GL.deleteBuffer(ebo);
+        if (streamVao != 0) RenderState.deleteVertexArray(streamVao);
+        if (vertexStream != null) vertexStream.dispose();
+        if (indexStream != null) indexStream.dispose();
     }
 }
@@ -1,6 +1,12 @@
 package io.github.squid233.tetris;
 
-import org.joml.Vector2i;
+import io.github.squid233.tetris.bot.BeamSearchBot;
+import io.github.squid233.tetris.bot.BotPlayer;
+import io.github.squid233.tetris.bot.Heuristic;
+import io.github.squid233.tetris.replay.Replay;
+import io.github.squid233.tetris.replay.ReplayRecorder;
+import io.github.squid233.tetris.replay.ReplayWriter;
+import org.jetbrains.annotations.Nullable;
 import org.overrun.glib.RuntimeHelper;
 import org.overrun.glib.gl.GL;
 import org.overrun.glib.gl.GLLoader;
@@ -11,30 +17,97 @@ import org.overrun.glib.util.MemoryStack;
 import org.overrun.glib.util.value.Value2;
 import org.overrun.timer.Timer;
 
+import java.io.IOException;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.SegmentScope;
-import java.util.Random;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 /**
+ * The game window.
+ * <p>
+ * The simulation runs on its own thread at a fixed tick rate and publishes a snapshot after every tick that changed
+ * something through a {@link SnapshotExchange}; the main thread handles the window and renders the latest snapshot. Input is handed
+ * to the simulation thread through atomic fields, so neither thread waits for the other.
+ *
  * @author squid233
  * @since 0.1.0
  */
 public final class Tetris {
     private static final Tetris INSTANCE = new Tetris();
+    /**
+     * The maximum time in seconds to wait for events when there is nothing to draw.
+     */
+    private static final double IDLE_TIMEOUT = 0.1;
+    /**
+     * The ticks simulated by {@link #warmUpSimulation()}.
+     */
+    private static final int WARM_UP_TICKS = 20_000;
     private MemorySegment window;
     private Timer timer;
     private int width, height;
-    private final Wall wall = new Wall();
-    private final CellState holdState = new CellState();
+    private GameSimulation simulation;
     private GameRenderer gameRenderer;
-    private Texture cellTexture;
-    private int fallDownTicker = 0;
-    private final Random random = new Random();
+    private final SnapshotExchange snapshots = new SnapshotExchange();
+    /**
+     * The one-shot inputs pressed since the last tick.
+     */
+    private final AtomicInteger pendingInput = new AtomicInteger(GameInput.NONE);
+    /**
+     * The inputs held down.
+     */
+    private final AtomicInteger heldInput = new AtomicInteger(GameInput.NONE);
+    private volatile boolean botEnabled;
+    private volatile boolean restartRequested;
+    private volatile boolean running;
+    private Thread simulationThread;
+    // owned by the simulation thread
+    private @Nullable BotPlayer botPlayer;
+    private @Nullable Path recordDir;
+    private @Nullable ReplayWriter replayWriter;
+    private @Nullable ReplayRecorder replayRecorder;
+    private Replay.@Nullable Inputs replayInputs;
+    private int ticksPerSecond = 20;
+    private int fpsCap = 0;
+    private boolean vsync = false;
+    private int wallWidth = Wall.DEFAULT_WIDTH;
+    private int wallHeight = Wall.DEFAULT_VISIBLE_HEIGHT;
+    private FramePacer framePacer;
+    // owned by the render thread; a copy of the snapshot walls with its own modification counts
+    private Wall renderWall = new Wall();
+    private long renderWallSince = -1;
+    private final WallView wallView = new WallView();
+    private int renderGeneration;
 
+    /**
+     * Creates the window and the renderer.
+     * <p>
+     * The work that needs neither the window nor the context runs on virtual threads while they are created:
+     * reading the shader sources, decoding the sprites and loading the font (see {@link GameRenderer#preload}),
+     * and creating the first game with its piece queue, which loads the simulation classes. The stages are
+     * measured by {@link Startup}. The simulation warm-up only starts after the first frame, see {@link #run()}.
+     */
     private void init() {
+        final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        final CompletableFuture<Void> firstGame = simulation != null
+            ? CompletableFuture.completedFuture(null)
+            : CompletableFuture.runAsync(Startup.timed("first game", () -> newGame(System.nanoTime())), executor);
+        gameRenderer = new GameRenderer();
+        gameRenderer.preload(executor);
+
+        long start = Startup.start();
         if (!GLFW.init()) {
             throw new IllegalStateException("Failed to initialize GLFW");
         }
+        Startup.end("glfw", start);
+        start = Startup.start();
         GLFW.windowHint(GLFW.VISIBLE, false);
         GLFW.windowHint(GLFW.RESIZABLE, false);
         try (MemoryStack stack = MemoryStack.stackPush()) {
@@ -43,6 +116,7 @@ public final class Tetris {
                 throw new IllegalStateException("Failed to create the window");
             }
             GLFW.setFramebufferSizeCallback(window, (window1, width, height) -> resize(width, height));
+            GLFW.setWindowRefreshCallback(window, window1 -> framePacer.markWindowDirty());
             GLFW.setKeyCallback(window, (window1, key, scancode, action, mods) -> onKey(key, action));
             final GLFWVidMode.Value videoMode = GLFW.getVideoMode(SegmentScope.auto(), GLFW.getPrimaryMonitor());
             if (videoMode != null) {
@@ -52,58 +126,103 @@ public final class Tetris {
                     (videoMode.height() - size.y()) / 2);
             }
         }
+        Startup.end("window", start);
         initGL();
+        // the simulation thread needs the first game
+        start = Startup.start();
+        Startup.join(firstGame);
+        Startup.end("wait for simulation", start);
+        executor.shutdown();
         GLFW.showWindow(window);
     }
 
     private void initGL() {
+        long start = Startup.start();
         GLFW.makeContextCurrent(window);
         GLLoader.loadConfined(GLFW::getProcAddress);
+        framePacer.init();
+        Startup.end("gl context", start);
 
+        start = Startup.start();
         GL.clearColor(0, 0, 0, 1);
-        gameRenderer = new GameRenderer();
         gameRenderer.init();
-
-        cellTexture = new Texture("tetris/textures/cell.png");
-
-        holdState.reset(getRandomType());
+        Startup.end("renderer", start);
 
         final Value2.OfInt framebufferSize = GLFW.getFramebufferSize(window);
         resize(framebufferSize.x(), framebufferSize.y());
     }
 
     private void dispose() {
+        stopSimulation();
+        if (replayRecorder != null) {
+            replayRecorder.finish(simulation);
+        }
+        if (replayWriter != null) {
+            replayWriter.close();
+        }
         gameRenderer.dispose();
-        cellTexture.dispose();
+        if (RenderState.DEBUG) {
+            System.out.println(RenderState.report());
+        }
 
         Callbacks.free(window);
         GLFW.destroyWindow(window);
         GLFW.terminate();
     }
 
-    private CellStateType getRandomType() {
-        return CellStateType.byId(random.nextInt(CellStateType.VALUE_COUNT));
+    /**
+     * Plays throwaway games with pseudo-random input, so the hot paths of the simulation are compiled early in the
+     * first game. Runs after the first frame, so it does not delay it.
+     */
+    private static void warmUpSimulation() {
+        final SnapshotExchange exchange = new SnapshotExchange();
+        GameSimulation game = new GameSimulation(0L);
+        long random = 0;
+        for (int i = 0; i < WARM_UP_TICKS; i++) {
+            if (game.isGameOver()) game = new GameSimulation(i);
+            random = random * 6364136223846793005L + 1442695040888963407L;
+            game.tick((int) (random >>> 58) & GameInput.MASK);
+            exchange.publish(game);
+        }
+    }
+
+    private int pollInput() {
+        return pendingInput.getAndSet(GameInput.NONE) | heldInput.get();
+    }
+
+    private void newGame(long seed) {
+        simulation = new GameSimulation(seed, PieceGenerator.Mode.BAG_7, wallWidth, wallHeight);
+        if (recordDir != null) {
+            if (replayWriter == null) replayWriter = new ReplayWriter();
+            replayRecorder = replayWriter.open(recordDir.resolve("tetris-" + seed + ".trpl"), simulation);
+        }
     }
 
     public void tick() {
-        fallDownTicker++;
-        if (fallDownTicker > 8) {
-            holdState.moveDown(wall);
-            fallDownTicker = 0;
-            return;
+        if (restartRequested) {
+            restartRequested = false;
+            if (simulation.isGameOver() && replayInputs == null) {
+                newGame(System.nanoTime());
+            }
         }
-        if (GLFW.getKey(window, GLFW.KEY_LEFT) == GLFW.PRESS) {
-            holdState.moveLeft(wall);
+        if (botEnabled != (botPlayer != null)) {
+            botPlayer = botEnabled
+                ? new BotPlayer(new BeamSearchBot(Heuristic.DEFAULT, 8, GameSimulation.DEFAULT_PREVIEW_LENGTH, 20, ForkJoinPool.commonPool()))
+                : null;
         }
-        if (GLFW.getKey(window, GLFW.KEY_RIGHT) == GLFW.PRESS) {
-            holdState.moveRight(wall);
+        int input = pollInput();
+        if (replayInputs != null) {
+            input = replayInputs.hasNext() ? replayInputs.nextInput() : GameInput.NONE;
+        } else if (botPlayer != null) {
+            input = botPlayer.nextInput(simulation);
         }
-        if (GLFW.getKey(window, GLFW.KEY_DOWN) == GLFW.PRESS) {
-            holdState.moveDown(wall);
+        if (replayRecorder != null) {
+            replayRecorder.record(input);
         }
-        if (holdState.isOnGround(wall)) {
-            holdState.fixToWall(wall);
-            holdState.reset(getRandomType());
+        simulation.tick(input);
+        if (replayRecorder != null && simulation.isGameOver()) {
+            replayRecorder.finish(simulation);
+            replayRecorder = null;
         }
     }
 
@@ -111,59 +230,73 @@ public final class Tetris {
         this.width = width;
         this.height = height;
         gameRenderer.projection.setOrtho2D(0, width, 0, height);
+        framePacer.markWindowDirty();
+    }
+
+    private static int heldInputOf(int key) {
+        return switch (key) {
+            case GLFW.KEY_LEFT -> GameInput.LEFT;
+            case GLFW.KEY_RIGHT -> GameInput.RIGHT;
+            case GLFW.KEY_DOWN -> GameInput.DOWN;
+            default -> GameInput.NONE;
+        };
     }
 
     public void onKey(int key, int action) {
+        final int held = heldInputOf(key);
+        if (held != GameInput.NONE) {
+            if (action == GLFW.PRESS) heldInput.getAndUpdate(input -> input | held);
+            else if (action == GLFW.RELEASE) heldInput.getAndUpdate(input -> input & ~held);
+            return;
+        }
         if (action == GLFW.PRESS) {
-            if (key == GLFW.KEY_SPACE) {
-                holdState.dropDown(wall);
+            switch (key) {
+                case GLFW.KEY_SPACE -> pendingInput.getAndUpdate(input -> input | GameInput.DROP);
+                case GLFW.KEY_UP, GLFW.KEY_X -> pendingInput.getAndUpdate(input -> input | GameInput.ROTATE_CW);
+                case GLFW.KEY_Z -> pendingInput.getAndUpdate(input -> input | GameInput.ROTATE_CCW);
+                case GLFW.KEY_B -> botEnabled = !botEnabled;
+                case GLFW.KEY_R -> restartRequested = true;
             }
         }
     }
 
-    private void renderCell(Tessellator t, int x, int y, CellType type) {
-        if (type == CellType.NONE) return;
-        final float x0 = x * 16;
-        final float y0 = y * 16;
-        final float x1 = (x + 1) * 16;
-        final float y1 = (y + 1) * 16;
-        final int color = type.colorRGB();
-        t.indices(0, 1, 2, 2, 3, 0);
-        t.color(color);
-        t.position(x0, y1).texCoord(0f, 0f).emit();
-        t.position(x0, y0).texCoord(0f, 1f).emit();
-        t.position(x1, y0).texCoord(1f, 1f).emit();
-        t.position(x1, y1).texCoord(1f, 0f).emit();
-    }
-
+    /**
+     * Centers the {@link #wallView} in the window. The scene is drawn in wall coordinates.
+     */
     private void moveSceneCamera() {
-        gameRenderer.modelView.translation((width - Wall.WALL_WIDTH * Wall.CELL_SIZE) * 0.5f,
-            (height - Wall.WALL_VISIBLE_HEIGHT * Wall.CELL_SIZE) * 0.5f,
+        gameRenderer.modelView.translation(
+            (width - wallView.columns() * Wall.CELL_SIZE) * 0.5f - wallView.left() * Wall.CELL_SIZE,
+            (height - wallView.rows() * Wall.CELL_SIZE) * 0.5f - wallView.bottom() * Wall.CELL_SIZE,
             0);
     }
 
-    private void renderWall() {
-        gameRenderer.useShader(gameRenderer.positionColorTex());
+    private void renderWall(GameSnapshot snapshot) {
+        gameRenderer.useShader(GameRenderer.INSTANCED_CELLS
+            ? gameRenderer.positionColorTexInstanced()
+            : gameRenderer.positionColorTex());
         gameRenderer.modelView.pushMatrix();
         moveSceneCamera();
         gameRenderer.setupMatrices();
         gameRenderer.modelView.popMatrix();
-        gameRenderer.currentShader().uploadUniforms();
-        cellTexture.bind();
-        final Tessellator tessellator = gameRenderer.tessellator();
-        tessellator.begin();
-        for (int y = 0; y < Wall.WALL_VISIBLE_HEIGHT; y++) {
-            for (int x = 0; x < Wall.WALL_WIDTH; x++) {
-                renderCell(tessellator, x, y, wall.getCell(x, y));
-            }
-        }
-        for (int i = 0; i < CellState.STATE_SIZE; i++) {
-            final Vector2i pos = holdState.posMatrix[i];
-            renderCell(tessellator, pos.x(), pos.y(), holdState.cellMatrix[i]);
+        gameRenderer.assets().atlas().bind();
+        if (GameRenderer.INSTANCED_CELLS) {
+            final CellInstances instances = gameRenderer.cellInstances();
+            final long tessellateStart = Profiler.start();
+            instances.update(renderWall, wallView, snapshot.holdState());
+            Profiler.end(Profiler.Phase.TESSELLATE, tessellateStart);
+            gameRenderer.instancedCellRenderer().draw(instances);
+        } else {
+            // the settled cells are only re-uploaded when they change; only the falling piece is streamed
+            final WallMeshBuffer wallMeshBuffer = gameRenderer.wallMeshBuffer();
+            wallMeshBuffer.update(renderWall, wallView);
+            wallMeshBuffer.draw();
+            final Tessellator tessellator = gameRenderer.tessellator();
+            final long tessellateStart = Profiler.start();
+            tessellator.begin();
+            CellRenderer.renderState(tessellator, gameRenderer.cellSprite(), snapshot.holdState());
+            Profiler.end(Profiler.Phase.TESSELLATE, tessellateStart);
+            tessellator.end();
         }
-        tessellator.end();
-        GL.bindTexture(GL.TEXTURE_2D, 0);
-        gameRenderer.useShader(null);
     }
 
     private void renderBorder() {
@@ -172,47 +305,161 @@ public final class Tetris {
         moveSceneCamera();
         gameRenderer.setupMatrices();
         gameRenderer.modelView.popMatrix();
-        gameRenderer.currentShader().uploadUniforms();
         final Tessellator tessellator = gameRenderer.tessellator();
         tessellator.begin();
-        final float x0 = -1f;
-        final float y0 = -1f;
-        final float x1 = Wall.WALL_WIDTH * Wall.CELL_SIZE + 1f;
-        final float y1 = Wall.WALL_VISIBLE_HEIGHT * Wall.CELL_SIZE + 1f;
-        tessellator.indices(0, 1, 2, 3);
+        final float x0 = wallView.left() * Wall.CELL_SIZE - 1f;
+        final float y0 = wallView.bottom() * Wall.CELL_SIZE - 1f;
+        final float x1 = wallView.right() * Wall.CELL_SIZE + 1f;
+        final float y1 = wallView.top() * Wall.CELL_SIZE + 1f;
+        tessellator.index(0);
+        tessellator.index(1);
+        tessellator.index(2);
+        tessellator.index(3);
         tessellator.color(0xffffff);
         tessellator.position(x0, y1).emit();
         tessellator.position(x0, y0).emit();
         tessellator.position(x1, y0).emit();
         tessellator.position(x1, y1).emit();
         tessellator.end(GL.LINE_LOOP);
-        gameRenderer.useShader(null);
     }
 
-    public void render(double partialTick) {
+    private void renderHud(GameSnapshot snapshot) {
+        final Hud hud = gameRenderer.hud();
+        hud.update(snapshot);
+        gameRenderer.useShader(gameRenderer.positionColorTex());
+        gameRenderer.modelView.pushMatrix();
+        gameRenderer.modelView.identity();
+        gameRenderer.setupMatrices();
+        gameRenderer.modelView.popMatrix();
+        final GlyphAtlas glyphAtlas = gameRenderer.glyphAtlas();
+        glyphAtlas.nextFrame();
+        glyphAtlas.bind();
+        GL.enable(GL.BLEND);
+        GL.blendFunc(GL.SRC_ALPHA, GL.ONE_MINUS_SRC_ALPHA);
+        final Tessellator tessellator = gameRenderer.tessellator();
+        tessellator.begin();
+        hud.render(tessellator, snapshot, height);
+        tessellator.end();
+        GL.disable(GL.BLEND);
+    }
+
+    public void render(GameSnapshot snapshot) {
         GL.clear(GL.COLOR_BUFFER_BIT | GL.DEPTH_BUFFER_BIT);
 
-        renderWall();
+        if (snapshot.generation() != renderGeneration) {
+            renderGeneration = snapshot.generation();
+            renderWallSince = -1;
+        }
+        if (!renderWall.isSameSize(snapshot.wall())) {
+            renderWall = new Wall(snapshot.wall().width(), snapshot.wall().visibleHeight());
+            renderWallSince = -1;
+        }
+        renderWallSince = renderWall.copyChangedRows(snapshot.wall(), renderWallSince);
+        // leave a cell for the border on each side
+        wallView.update(renderWall, snapshot.holdState(), width - 2, height - 2, GameRenderer.MAX_BATCH_QUADS);
+        renderWall(snapshot);
         renderBorder();
+        renderHud(snapshot);
 
+        final long swapStart = Profiler.start();
         GLFW.swapBuffers(window);
+        Profiler.end(Profiler.Phase.SWAP, swapStart);
+        Profiler.endFrame();
+    }
+
+    /**
+     * Runs the ticks at a fixed rate, independent of the frame rate, until {@link #stopSimulation()}.
+     * If the ticks fall behind by more than a second, the missed ticks are dropped.
+     */
+    private void runSimulation() {
+        final long tickNanos = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+        long nextTick = System.nanoTime();
+        snapshots.publish(simulation);
+        while (running) {
+            final long now = System.nanoTime();
+            final long wait = nextTick - now;
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            if (-wait > TimeUnit.SECONDS.toNanos(1)) {
+                nextTick = now;
+            }
+            final long tickStart = Profiler.start();
+            tick();
+            Profiler.end(Profiler.Phase.TICK, tickStart);
+            // wake up the main thread only if there is something new to draw
+            if (snapshots.publish(simulation)) GLFW.postEmptyEvent();
+            nextTick += tickNanos;
+        }
+    }
+
+    private void startSimulation() {
+        running = true;
+        simulationThread = new Thread(this::runSimulation, "Simulation");
+        simulationThread.start();
+    }
+
+    private void stopSimulation() {
+        running = false;
+        LockSupport.unpark(simulationThread);
+        try {
+            simulationThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     public void run() {
+        Profiler.register();
         init();
-        timer = Timer.ofGetter(20, GLFW::getTime);
+        timer = Timer.ofGetter(ticksPerSecond, GLFW::getTime);
+        startSimulation();
         while (!GLFW.windowShouldClose(window)) {
             timer.advanceTime();
-            timer.performTicks(this::tick);
             GLFW.pollEvents();
-            render(timer.partialTick());
-            timer.calcFPS();
+            final GameSnapshot snapshot = snapshots.acquire();
+            if (framePacer.shouldRender(snapshot.sequence())) {
+                render(snapshot);
+                timer.calcFPS();
+                framePacer.frameRendered(snapshot.sequence());
+                if (Startup.frameRendered()) {
+                    if (Startup.EXIT_AFTER_FIRST_FRAME) {
+                        GLFW.setWindowShouldClose(window, true);
+                    } else {
+                        Thread.ofVirtual().name("Simulation warm-up").start(
+                            Startup.timed("simulation warm-up", Tetris::warmUpSimulation));
+                    }
+                }
+            } else {
+                // nothing changed; sleep until an input or the next snapshot
+                GLFW.waitEventsTimeout(IDLE_TIMEOUT);
+            }
+            if (framePacer.updateCpuUsage()) {
+                GLFW.setWindowTitle(window, String.format("Tetris - %d FPS, %.1f%% CPU", timer.fps(), framePacer.cpuUsage() * 100));
+                if (Profiler.ENABLED) {
+                    gameRenderer.hud().updateProfiler();
+                    framePacer.markWindowDirty();
+                }
+            }
         }
         dispose();
     }
 
-    public Wall wall() {
-        return wall;
+    /**
+     * {@return the simulation}
+     * It is owned by the simulation thread while the game runs; other threads should use {@link #snapshot()}.
+     */
+    public GameSimulation simulation() {
+        return simulation;
+    }
+
+    /**
+     * {@return the latest snapshot of the simulation}
+     * Only called by the render thread.
+     */
+    public GameSnapshot snapshot() {
+        return snapshots.acquire();
     }
 
     public GameRenderer gameRenderer() {
@@ -223,7 +470,40 @@ public final class Tetris {
         return INSTANCE;
     }
 
-    public static void main(String[] args) {
-        getInstance().run();
+    /**
+     * Starts the game.
+     * <p>
+     * {@code --record <dir>} records every game into the directory.
+     * {@code --replay <file>} plays a replay instead, {@code --speed <n>} times faster than real time.
+     * {@code --fps <n>} caps the frame rate, {@code --vsync <true|false>} synchronizes the frames to the display.
+     * {@code --width <n>} and {@code --height <n>} set the count of the columns and the visible rows of the wall.
+     *
+     * @param args the arguments.
+     */
+    public static void main(String[] args) throws IOException {
+        final Tetris tetris = getInstance();
+        Path replay = null;
+        int speed = 1;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--record" -> tetris.recordDir = Files.createDirectories(Path.of(args[i + 1]));
+                case "--replay" -> replay = Path.of(args[i + 1]);
+                case "--speed" -> speed = Integer.parseInt(args[i + 1]);
+                case "--fps" -> tetris.fpsCap = Integer.parseInt(args[i + 1]);
+                case "--vsync" -> tetris.vsync = Boolean.parseBoolean(args[i + 1]);
+                case "--width" -> tetris.wallWidth = Integer.parseInt(args[i + 1]);
+                case "--height" -> tetris.wallHeight = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        tetris.ticksPerSecond *= speed;
+        tetris.framePacer = new FramePacer(tetris.fpsCap, tetris.vsync);
+        if (replay != null) {
+            final Replay r = Replay.open(replay, SegmentScope.auto());
+            tetris.recordDir = null;
+            tetris.simulation = new GameSimulation(r.seed(), r.mode(), r.width(), r.visibleHeight());
+            tetris.replayInputs = r.inputs();
+        }
+        tetris.run();
     }
 }
@@ -0,0 +1,78 @@
+package io.github.squid233.tetris;
+
+import java.util.Arrays;
+
+/**
+ * The positions of the glyphs of a line of text. The layout is only recomputed when the text changes.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class TextLayout {
+    private final Unifont font;
+    private String text = "";
+    private int[] codepoints = new int[16];
+    private int[] xs = new int[16];
+    private int glyphCount;
+    private int width;
+
+    public TextLayout(Unifont font) {
+        this.font = font;
+    }
+
+    /**
+     * Sets the text.
+     *
+     * @param text the text.
+     * @return {@code true} if the text changed and was laid out again.
+     */
+    public boolean set(String text) {
+        if (this.text.equals(text)) return false;
+        this.text = text;
+        glyphCount = 0;
+        int x = 0;
+        for (int i = 0, length = text.length(); i < length; ) {
+            int codepoint = text.codePointAt(i);
+            i += Character.charCount(codepoint);
+            if (font.width(codepoint) == 0) codepoint = '?';
+            if (glyphCount == codepoints.length) {
+                codepoints = Arrays.copyOf(codepoints, glyphCount * 2);
+                xs = Arrays.copyOf(xs, glyphCount * 2);
+            }
+            codepoints[glyphCount] = codepoint;
+            xs[glyphCount] = x;
+            glyphCount++;
+            x += font.width(codepoint);
+        }
+        width = x;
+        return true;
+    }
+
+    public String text() {
+        return text;
+    }
+
+    public int glyphCount() {
+        return glyphCount;
+    }
+
+    public int codepoint(int i) {
+        return codepoints[i];
+    }
+
+    /**
+     * {@return the x offset of the glyph from the start of the line, in pixels}
+     *
+     * @param i the index of the glyph.
+     */
+    public int x(int i) {
+        return xs[i];
+    }
+
+    /**
+     * {@return the width of the text in pixels}
+     */
+    public int width() {
+        return width;
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.squid233.tetris;
+
+/**
+ * Tessellates {@link TextLayout text} as quads of {@link GlyphAtlas} glyphs, for the {@code pos_color_tex} shader
+ * with blending. This class does not bind the atlas; see {@link GlyphAtlas#bind()}.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class TextRenderer {
+    private final GlyphAtlas atlas;
+
+    public TextRenderer(GlyphAtlas atlas) {
+        this.atlas = atlas;
+    }
+
+    /**
+     * Adds the quads of a line of text.
+     *
+     * @param t        the tessellator. must be in a quad batch.
+     * @param layout   the text.
+     * @param x        the left position.
+     * @param y        the top position.
+     * @param colorRGB the color.
+     */
+    public void draw(Tessellator t, TextLayout layout, float x, float y, int colorRGB) {
+        final Unifont font = atlas.font();
+        final float texel = 1f / GlyphAtlas.TEXTURE_SIZE;
+        for (int i = 0, count = layout.glyphCount(); i < count; i++) {
+            final int codepoint = layout.codepoint(i);
+            final int width = font.width(codepoint);
+            if (width == 0 || codepoint == ' ') continue;
+            if (!atlas.isResident(codepoint) && atlas.isFull()) {
+                // the page to replace may still be used by the quads in the batch
+                t.flush();
+            }
+            final int page = atlas.use(codepoint);
+            final float u0 = GlyphAtlas.u0(page, codepoint);
+            final float v0 = GlyphAtlas.v0(page, codepoint);
+            final float x0 = x + layout.x(i);
+            t.quad(x0, y - Unifont.GLYPH_HEIGHT, x0 + width, y,
+                u0, v0, u0 + width * texel, v0 + Unifont.GLYPH_HEIGHT * texel,
+                colorRGB);
+        }
+    }
+}
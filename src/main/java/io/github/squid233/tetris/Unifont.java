@@ -0,0 +1,123 @@
+package io.github.squid233.tetris;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentScope;
+import java.util.Arrays;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+
+/**
+ * The glyphs of GNU Unifont, read from its {@code .hex} format.
+ * <p>
+ * Each line of a {@code .hex} file is {@code CODEPOINT:BITMAP}, where the bitmap has 16 rows of 8 or 16 pixels
+ * in hexadecimal, the top row first. Only the positions of the bitmaps are indexed when loading;
+ * a glyph is decoded when it is {@link #rasterize(int, MemorySegment, long, int) rasterized}.
+ * Only the Basic Multilingual Plane is supported.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class Unifont {
+    /**
+     * The resource of the font in the {@code io.github.over-run:unifont} artifact.
+     * Can be changed with {@code -Dtetris.unifont=<resource>}.
+     */
+    public static final String RESOURCE = System.getProperty("tetris.unifont", "unifont-15.0.01.hex");
+    public static final int GLYPH_HEIGHT = 16;
+    public static final int MAX_GLYPH_WIDTH = 16;
+    public static final int CODEPOINT_COUNT = 0x10000;
+    private final MemorySegment data;
+    private final int[] offsets = new int[CODEPOINT_COUNT];
+    private final byte[] widths = new byte[CODEPOINT_COUNT];
+
+    public Unifont(MemorySegment data) {
+        this.data = data;
+        Arrays.fill(offsets, -1);
+        final long size = data.byteSize();
+        long pos = 0;
+        while (pos < size) {
+            int codepoint = 0;
+            byte b;
+            while (pos < size && (b = data.get(JAVA_BYTE, pos)) != ':') {
+                codepoint = (codepoint << 4) | hexValue(b);
+                pos++;
+            }
+            final long start = ++pos;
+            while (pos < size && !isLineEnd(data.get(JAVA_BYTE, pos))) {
+                pos++;
+            }
+            // 4 bits per digit
+            final int width = (int) ((pos - start) * 4 / GLYPH_HEIGHT);
+            if (codepoint < CODEPOINT_COUNT && (width == 8 || width == 16)) {
+                offsets[codepoint] = (int) start;
+                widths[codepoint] = (byte) width;
+            }
+            while (pos < size && isLineEnd(data.get(JAVA_BYTE, pos))) {
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * Loads the font from {@link #RESOURCE}.
+     *
+     * @return the font.
+     */
+    public static Unifont load() {
+        try {
+            return new Unifont(IOUtil.ioResourceToSegment(SegmentScope.auto(), RESOURCE));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load the font " + RESOURCE, e);
+        }
+    }
+
+    private static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') return b - '0';
+        if (b >= 'A' && b <= 'F') return b - 'A' + 10;
+        if (b >= 'a' && b <= 'f') return b - 'a' + 10;
+        return 0;
+    }
+
+    /**
+     * {@return the width of the glyph in pixels, {@code 8} or {@code 16}; {@code 0} if the font has no such glyph}
+     *
+     * @param codepoint the codepoint.
+     */
+    public int width(int codepoint) {
+        return codepoint >= 0 && codepoint < CODEPOINT_COUNT ? widths[codepoint] : 0;
+    }
+
+    /**
+     * Writes the glyph as white RGBA pixels with the coverage in the alpha channel.
+     *
+     * @param codepoint the codepoint. must have a glyph.
+     * @param dst       the destination.
+     * @param offset    the offset of the top left pixel in {@code dst}.
+     * @param stride    the bytes between two rows in {@code dst}.
+     */
+    public void rasterize(int codepoint, MemorySegment dst, long offset, int stride) {
+        final int width = widths[codepoint];
+        final long start = offsets[codepoint];
+        final int digitsPerRow = width / 4;
+        for (int row = 0; row < GLYPH_HEIGHT; row++) {
+            int bits = 0;
+            for (int i = 0; i < digitsPerRow; i++) {
+                bits = (bits << 4) | hexValue(data.get(JAVA_BYTE, start + (long) row * digitsPerRow + i));
+            }
+            final long rowOffset = offset + (long) row * stride;
+            for (int x = 0; x < width; x++) {
+                final boolean set = (bits >>> (width - 1 - x) & 1) != 0;
+                final long pixel = rowOffset + x * 4L;
+                dst.set(JAVA_BYTE, pixel, (byte) 0xff);
+                dst.set(JAVA_BYTE, pixel + 1, (byte) 0xff);
+                dst.set(JAVA_BYTE, pixel + 2, (byte) 0xff);
+                dst.set(JAVA_BYTE, pixel + 3, set ? (byte) 0xff : 0);
+            }
+        }
+    }
+}
@@ -1,29 +1,587 @@
 package io.github.squid233.tetris;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 /**
+ * The settled cells.
+ * <p>
+ * The size of a wall is chosen when it is created. Each row is stored as an occupancy mask of
+ * {@link #words()} longs where bit {@code x % 64} of word {@code x / 64} is set if the cell at column {@code x}
+ * is occupied, and the colors are kept in a separated packed byte array. Collision and full-row checks only touch
+ * the masks.
+ * <p>
+ * The rows are stored in chunks of {@value #CHUNK_ROWS} rows that are only allocated when a row in them is first
+ * written, so the empty part of a tall wall costs no memory. Rows are accessed through an indirection table,
+ * so clearing rows only moves the row indices above them instead of copying the cells.
+ * <p>
+ * The wall keeps track of its {@link #top() top}, the rows at and above which are all empty. All operations
+ * only visit the rows below the top, so their cost depends on the height of the stack, not of the wall.
+ * <p>
+ * Every change stamps the affected rows with an increasing modification count, so renderers and other
+ * consumers can find the rows changed since they last looked with {@link #rowStamp(int)}.
+ *
  * @author squid233
  * @since 0.1.0
  */
 public final class Wall {
-    public static final int WALL_WIDTH = 15;
-    public static final int WALL_VISIBLE_HEIGHT = 25;
-    public static final int WALL_HEIGHT = WALL_VISIBLE_HEIGHT + 4;
+    public static final int DEFAULT_WIDTH = 15;
+    public static final int DEFAULT_VISIBLE_HEIGHT = 25;
+    /**
+     * The hidden rows above the visible rows, where the pieces spawn.
+     */
+    public static final int SPAWN_ROWS = 4;
     public static final int CELL_SIZE = 16;
-    private final CellType[][] wall = new CellType[WALL_HEIGHT][WALL_WIDTH];
+    /**
+     * The count of the rows in a storage chunk.
+     */
+    static final int CHUNK_ROWS = 32;
+    private final int width;
+    private final int visibleHeight;
+    private final int height;
+    private final int words;
+    /**
+     * The occupancy mask of the last word of a full row.
+     */
+    private final long lastWordMask;
+    // indexed by the physical row / CHUNK_ROWS; null until a row in the chunk is written
+    private final long[][] maskChunks;
+    private final byte[][] colorChunks;
+    // the physical row and the stamp of each logical row below rowIndex.length;
+    // the rows above map to themselves and were never changed
+    private int[] rowIndex;
+    private long[] rowStamps;
+    private int[] freedRows = new int[CellState.STATE_HEIGHT];
+    private final LineClearResult clearResult = new LineClearResult(CellState.STATE_HEIGHT);
+    private long modCount = 0;
+    private int top = 0;
+    /**
+     * The modification count of the last change that emptied rows at or above {@link #top}.
+     */
+    private long vacatedStamp = 0;
+
+    /**
+     * Creates an empty wall.
+     *
+     * @param width         the count of the columns, at least {@link CellState#STATE_WIDTH}.
+     * @param visibleHeight the count of the visible rows, at least 1. {@link #SPAWN_ROWS} rows are added above them.
+     */
+    public Wall(int width, int visibleHeight) {
+        if (width < CellState.STATE_WIDTH) {
+            throw new IllegalArgumentException("The width must be at least " + CellState.STATE_WIDTH + ": " + width);
+        }
+        if (visibleHeight < 1) {
+            throw new IllegalArgumentException("The visible height must be at least 1: " + visibleHeight);
+        }
+        this.width = width;
+        this.visibleHeight = visibleHeight;
+        this.height = visibleHeight + SPAWN_ROWS;
+        this.words = (width + 63) >>> 6;
+        this.lastWordMask = -1L >>> (words * 64 - width);
+        final int chunks = (height + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        this.maskChunks = new long[chunks][];
+        this.colorChunks = new byte[chunks][];
+        final int rows = Math.min(height, CHUNK_ROWS);
+        this.rowIndex = new int[rows];
+        this.rowStamps = new long[rows];
+        for (int y = 0; y < rows; y++) {
+            rowIndex[y] = y;
+        }
+    }
 
     public Wall() {
-        for (int y = 0; y < WALL_HEIGHT; y++) {
-            for (int x = 0; x < WALL_WIDTH; x++) {
-                setCell(CellType.NONE, x, y);
+        this(DEFAULT_WIDTH, DEFAULT_VISIBLE_HEIGHT);
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int visibleHeight() {
+        return visibleHeight;
+    }
+
+    /**
+     * {@return the count of all rows, including the {@link #SPAWN_ROWS spawn rows}}
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * {@return the count of the longs in the occupancy mask of a row}
+     */
+    public int words() {
+        return words;
+    }
+
+    /**
+     * {@return the row above the highest occupied row, or 0 if the wall is empty}
+     * All rows at and above it are empty.
+     */
+    public int top() {
+        return top;
+    }
+
+    /**
+     * {@return whether the other wall has the same size as this wall}
+     *
+     * @param other the other wall.
+     */
+    public boolean isSameSize(Wall other) {
+        return width == other.width && visibleHeight == other.visibleHeight;
+    }
+
+    private void checkSameSize(Wall other) {
+        if (!isSameSize(other)) {
+            throw new IllegalArgumentException("Different wall sizes: " + width + "x" + visibleHeight +
+                                               " and " + other.width + "x" + other.visibleHeight);
+        }
+    }
+
+    /**
+     * Makes the indirection table cover the logical rows below the given row.
+     *
+     * @param rows the count of the rows to cover.
+     */
+    private void ensureRows(int rows) {
+        final int length = rowIndex.length;
+        if (rows <= length) return;
+        final int capacity = Math.min(height, (Math.max(rows, length * 2) + CHUNK_ROWS - 1) / CHUNK_ROWS * CHUNK_ROWS);
+        rowIndex = Arrays.copyOf(rowIndex, capacity);
+        rowStamps = Arrays.copyOf(rowStamps, capacity);
+        for (int y = length; y < capacity; y++) {
+            rowIndex[y] = y;
+        }
+    }
+
+    private int physicalRow(int y) {
+        return y < rowIndex.length ? rowIndex[y] : y;
+    }
+
+    private long word(int physicalRow, int word) {
+        final long[] chunk = maskChunks[physicalRow / CHUNK_ROWS];
+        return chunk != null ? chunk[(physicalRow % CHUNK_ROWS) * words + word] : 0L;
+    }
+
+    private long[] writableMasks(int physicalRow) {
+        final int c = physicalRow / CHUNK_ROWS;
+        long[] chunk = maskChunks[c];
+        if (chunk == null) {
+            chunk = new long[CHUNK_ROWS * words];
+            maskChunks[c] = chunk;
+            colorChunks[c] = new byte[CHUNK_ROWS * width];
+        }
+        return chunk;
+    }
+
+    private boolean isEmptyPhysical(int physicalRow) {
+        final long[] chunk = maskChunks[physicalRow / CHUNK_ROWS];
+        if (chunk == null) return true;
+        final int base = (physicalRow % CHUNK_ROWS) * words;
+        for (int w = 0; w < words; w++) {
+            if (chunk[base + w] != 0) return false;
+        }
+        return true;
+    }
+
+    private void clearPhysical(int physicalRow) {
+        final int c = physicalRow / CHUNK_ROWS;
+        final long[] chunk = maskChunks[c];
+        if (chunk == null) return;
+        final int row = physicalRow % CHUNK_ROWS;
+        Arrays.fill(chunk, row * words, (row + 1) * words, 0L);
+        Arrays.fill(colorChunks[c], row * width, (row + 1) * width, (byte) 0);
+    }
+
+    /**
+     * Lowers the top below the empty rows under it.
+     *
+     * @param stamp the modification count of the change that emptied the rows.
+     */
+    private void lowerTop(long stamp) {
+        final int oldTop = top;
+        while (top > 0 && isEmptyPhysical(physicalRow(top - 1))) {
+            top--;
+        }
+        if (top < oldTop) vacatedStamp = stamp;
+    }
+
+    /**
+     * Copies the cells of another wall of the same size into this wall.
+     *
+     * @param other the wall to copy from.
+     */
+    public void set(Wall other) {
+        checkSameSize(other);
+        final int rows = Math.max(top, other.top);
+        if (rows == 0) return;
+        final long stamp = ++modCount;
+        ensureRows(rows);
+        for (int y = 0; y < rows; y++) {
+            copyRow(other, y);
+            rowStamps[y] = stamp;
+        }
+        if (other.top < top) vacatedStamp = stamp;
+        top = other.top;
+    }
+
+    private void copyRow(Wall other, int y) {
+        final int src = other.physicalRow(y);
+        final int dst = physicalRow(y);
+        final long[] srcChunk = other.maskChunks[src / CHUNK_ROWS];
+        if (srcChunk == null) {
+            clearPhysical(dst);
+            return;
+        }
+        final long[] dstChunk = writableMasks(dst);
+        System.arraycopy(srcChunk, (src % CHUNK_ROWS) * words, dstChunk, (dst % CHUNK_ROWS) * words, words);
+        System.arraycopy(other.colorChunks[src / CHUNK_ROWS], (src % CHUNK_ROWS) * width,
+            colorChunks[dst / CHUNK_ROWS], (dst % CHUNK_ROWS) * width, width);
+    }
+
+    /**
+     * Copies the rows of another wall of the same size changed since the given modification count of that wall,
+     * and stamps them with a new modification count of this wall.
+     *
+     * @param other the wall to copy from.
+     * @param since the modification count of {@code other} this wall was last copied at,
+     *              or {@code -1} to copy all rows.
+     * @return the modification count of {@code other}, to pass as {@code since} next time.
+     */
+    public long copyChangedRows(Wall other, long since) {
+        checkSameSize(other);
+        // the rows at and above both tops are empty in both walls
+        final int rows = Math.max(top, other.top);
+        ensureRows(rows);
+        long stamp = 0;
+        for (int y = 0; y < rows; y++) {
+            if (other.rowStamp(y) > since) {
+                if (stamp == 0) stamp = ++modCount;
+                copyRow(other, y);
+                rowStamps[y] = stamp;
+            }
+        }
+        if (other.top < top) vacatedStamp = stamp != 0 ? stamp : ++modCount;
+        top = other.top;
+        return other.modCount;
+    }
+
+    /**
+     * Makes this wall a copy of another wall of the same size including its modification counts, copying only the
+     * rows changed since this wall was last mirrored from it.
+     * <p>
+     * The modification count of this wall follows the other wall and goes back when {@code full} copying from
+     * a new wall, so a mirror should not be used to track changes across walls; see
+     * {@link #copyChangedRows(Wall, long)} for that.
+     *
+     * @param other the wall to copy from.
+     * @param full  {@code true} to copy all rows, when this wall was not mirrored from {@code other} before.
+     */
+    public void mirror(Wall other, boolean full) {
+        checkSameSize(other);
+        final int rows = Math.max(top, other.top);
+        ensureRows(rows);
+        for (int y = 0; y < rows; y++) {
+            final long stamp = other.rowStamp(y);
+            if (full || stamp > modCount) {
+                copyRow(other, y);
             }
+            rowStamps[y] = stamp;
+        }
+        top = other.top;
+        vacatedStamp = other.vacatedStamp;
+        modCount = other.modCount;
+    }
+
+    private void markRows(int fromY, int toY) {
+        final long stamp = ++modCount;
+        for (int y = fromY; y <= toY; y++) {
+            rowStamps[y] = stamp;
         }
     }
 
+    /**
+     * {@return the modification count of the last change}
+     */
+    public long modCount() {
+        return modCount;
+    }
+
+    /**
+     * {@return the modification count of the last change of the given row, or a later one}
+     * The row has changed since a modification count {@code c} if the returned stamp is greater than {@code c}.
+     * The rows at and above the {@link #top() top} may report the last time any of them was emptied.
+     *
+     * @param y the row.
+     */
+    public long rowStamp(int y) {
+        final long stamp = y < rowStamps.length ? rowStamps[y] : 0L;
+        return y >= top ? Math.max(stamp, vacatedStamp) : stamp;
+    }
+
     public CellType getCell(int x, int y) {
-        return wall[y][x];
+        final int row = physicalRow(y);
+        final byte[] chunk = colorChunks[row / CHUNK_ROWS];
+        return chunk != null ? CellType.byId(chunk[(row % CHUNK_ROWS) * width + x]) : CellType.NONE;
     }
 
     public void setCell(CellType cell, int x, int y) {
-        wall[y][x] = cell;
+        ensureRows(y + 1);
+        final int row = physicalRow(y);
+        final long stamp = ++modCount;
+        rowStamps[y] = stamp;
+        final int index = (row % CHUNK_ROWS) * words + (x >>> 6);
+        if (cell == CellType.NONE) {
+            final long[] chunk = maskChunks[row / CHUNK_ROWS];
+            if (chunk == null) return;
+            chunk[index] &= ~(1L << x);
+            colorChunks[row / CHUNK_ROWS][(row % CHUNK_ROWS) * width + x] = 0;
+            if (y == top - 1) lowerTop(stamp);
+        } else {
+            writableMasks(row)[index] |= 1L << x;
+            colorChunks[row / CHUNK_ROWS][(row % CHUNK_ROWS) * width + x] = (byte) cell.ordinal();
+            top = Math.max(top, y + 1);
+        }
+    }
+
+    /**
+     * Writes the colors of a row into a buffer, as one {@link CellType} ordinal byte per column.
+     *
+     * @param y   the row.
+     * @param dst the buffer to write {@link #width()} bytes into.
+     */
+    public void getRow(int y, ByteBuffer dst) {
+        final int row = physicalRow(y);
+        final byte[] chunk = colorChunks[row / CHUNK_ROWS];
+        if (chunk == null) {
+            for (int x = 0; x < width; x++) {
+                dst.put((byte) 0);
+            }
+            return;
+        }
+        dst.put(chunk, (row % CHUNK_ROWS) * width, width);
+    }
+
+    /**
+     * Replaces the cells of a row with the colors read from a buffer, written by {@link #getRow(int, ByteBuffer)}.
+     *
+     * @param y   the row.
+     * @param src the buffer to read {@link #width()} bytes from.
+     * @throws IllegalArgumentException if a byte is not a {@link CellType} ordinal, leaving the wall and the buffer
+     *                                  unchanged.
+     */
+    public void setRow(int y, ByteBuffer src) {
+        if (src.remaining() < width) throw new BufferUnderflowException();
+        final int position = src.position();
+        for (int x = 0; x < width; x++) {
+            final byte color = src.get(position + x);
+            if (color < 0 || color >= CellType.VALUE_COUNT) {
+                throw new IllegalArgumentException("Invalid cell type " + color + " at " + x + ", " + y);
+            }
+        }
+        ensureRows(y + 1);
+        final int row = physicalRow(y);
+        final long stamp = ++modCount;
+        rowStamps[y] = stamp;
+        final long[] masks = writableMasks(row);
+        final byte[] colors = colorChunks[row / CHUNK_ROWS];
+        final int maskBase = (row % CHUNK_ROWS) * words;
+        final int colorBase = (row % CHUNK_ROWS) * width;
+        src.get(colors, colorBase, width);
+        Arrays.fill(masks, maskBase, maskBase + words, 0L);
+        for (int x = 0; x < width; x++) {
+            final byte color = colors[colorBase + x];
+            if (color != 0) masks[maskBase + (x >>> 6)] |= 1L << x;
+        }
+        if (!isEmptyPhysical(row)) top = Math.max(top, y + 1);
+        else if (y == top - 1) lowerTop(stamp);
+    }
+
+    public boolean isOccupied(int x, int y) {
+        return (word(physicalRow(y), x >>> 6) >>> x & 1) != 0;
+    }
+
+    /**
+     * {@return a word of the occupancy mask of the given row}
+     * Bit {@code i} of word {@code w} is set if the cell at column {@code w * 64 + i} is occupied.
+     *
+     * @param y    the row.
+     * @param word the index of the word, less than {@link #words()}.
+     */
+    public long rowWord(int y, int word) {
+        return word(physicalRow(y), word);
+    }
+
+    public boolean isFullRow(int y) {
+        final int row = physicalRow(y);
+        final long[] chunk = maskChunks[row / CHUNK_ROWS];
+        if (chunk == null) return false;
+        final int base = (row % CHUNK_ROWS) * words;
+        for (int w = 0; w < words - 1; w++) {
+            if (chunk[base + w] != -1L) return false;
+        }
+        return chunk[base + words - 1] == lastWordMask;
+    }
+
+    /**
+     * {@return the 4 bits of the row at the columns {@code x} to {@code x + 3}; the columns out of the wall are 0}
+     */
+    private int columns4(int physicalRow, int x) {
+        final long[] chunk = maskChunks[physicalRow / CHUNK_ROWS];
+        if (chunk == null) return 0;
+        final int base = (physicalRow % CHUNK_ROWS) * words;
+        if (x < 0) return (int) (chunk[base] << -x) & 0xf;
+        final int w = x >>> 6;
+        if (w >= words) return 0;
+        final int bit = x & 63;
+        long bits = chunk[base + w] >>> bit;
+        if (bit > 60 && w + 1 < words) bits |= chunk[base + w + 1] << (64 - bit);
+        return (int) bits & 0xf;
+    }
+
+    /**
+     * Tests whether a shape collides with the settled cells or the borders.
+     *
+     * @param shape the 4x4 shape mask. bit {@code dy * 4 + dx} is set if the cell at {@code (dx, dy)} is occupied.
+     * @param x     the x position of the shape.
+     * @param y     the y position of the shape.
+     * @return {@code true} if any cell of the shape overlaps a settled cell or is out of the wall.
+     */
+    public boolean collides(int shape, int x, int y) {
+        if (x < -4 || x > width) return true;
+        // the columns of the shape out of the wall
+        final int outside = (x < 0 ? (1 << -x) - 1 : 0) | (x + 4 > width ? 0xf << (width - x) & 0xf : 0);
+        for (int dy = 0; dy < 4; dy++) {
+            final int bits = (shape >>> (dy * 4)) & 0xf;
+            if (bits == 0) continue;
+            final int row = y + dy;
+            if (row < 0 || row >= height || (bits & outside) != 0) return true;
+            if (row < top && (bits & columns4(physicalRow(row), x)) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes the cells of a shape into this wall.
+     *
+     * @param shape the 4x4 shape mask. see {@link #collides(int, int, int)}.
+     * @param x     the x position of the shape.
+     * @param y     the y position of the shape.
+     * @param cell  the color of the cells.
+     */
+    public void place(int shape, int x, int y, CellType cell) {
+        final byte color = (byte) cell.ordinal();
+        final long stamp = ++modCount;
+        ensureRows(Math.min(y + 4, height));
+        for (int dy = 0; dy < 4; dy++) {
+            final int bits = (shape >>> (dy * 4)) & 0xf;
+            if (bits == 0) continue;
+            rowStamps[y + dy] = stamp;
+            top = Math.max(top, y + dy + 1);
+            final int row = physicalRow(y + dy);
+            final long[] masks = writableMasks(row);
+            final byte[] colors = colorChunks[row / CHUNK_ROWS];
+            final int maskBase = (row % CHUNK_ROWS) * words;
+            final int colorBase = (row % CHUNK_ROWS) * width;
+            for (int dx = 0; dx < 4; dx++) {
+                if ((bits >>> dx & 1) != 0) {
+                    final int cx = x + dx;
+                    masks[maskBase + (cx >>> 6)] |= 1L << cx;
+                    colors[colorBase + cx] = color;
+                }
+            }
+        }
+    }
+
+    /**
+     * Pushes the rows up and inserts garbage rows at the bottom. Each garbage row is full except the hole.
+     * <p>
+     * Like {@link #clearLines(int, int)}, only the row indices below the top are moved.
+     *
+     * @param rows the count of the garbage rows.
+     * @param hole the column of the hole.
+     * @return {@code true} if occupied rows were pushed out of the wall.
+     */
+    public boolean addGarbage(int rows, int hole) {
+        if (rows <= 0) return false;
+        if (hole < 0 || hole >= width) {
+            throw new IllegalArgumentException("The hole is out of the wall: " + hole);
+        }
+        final int count = Math.min(rows, height);
+        final int oldTop = top;
+        final boolean overflow = oldTop + count > height;
+        final int limit = Math.min(height, oldTop + count);
+        ensureRows(limit);
+        if (freedRows.length < count) freedRows = new int[Math.max(count, freedRows.length * 2)];
+        // the rows pushed to limit and above: empty rows above the top, or the overflowing rows
+        System.arraycopy(rowIndex, limit - count, freedRows, 0, count);
+        System.arraycopy(rowIndex, 0, rowIndex, count, limit - count);
+        final long holeBit = ~(1L << hole);
+        for (int i = 0; i < count; i++) {
+            final int row = freedRows[i];
+            final long[] masks = writableMasks(row);
+            final int maskBase = (row % CHUNK_ROWS) * words;
+            Arrays.fill(masks, maskBase, maskBase + words - 1, -1L);
+            masks[maskBase + words - 1] = lastWordMask;
+            masks[maskBase + (hole >>> 6)] &= holeBit;
+            final byte[] colors = colorChunks[row / CHUNK_ROWS];
+            final int colorBase = (row % CHUNK_ROWS) * width;
+            Arrays.fill(colors, colorBase, colorBase + width, (byte) CellType.GARBAGE.ordinal());
+            colors[colorBase + hole] = 0;
+            rowIndex[i] = row;
+        }
+        markRows(0, limit - 1);
+        top = limit;
+        lowerTop(modCount);
+        return overflow;
+    }
+
+    /**
+     * Removes the full rows in the given range and moves the rows above them down.
+     * <p>
+     * The returned result is owned by this wall and is reused by the next call.
+     *
+     * @param fromY the lowest row to check, inclusive.
+     * @param toY   the highest row to check, inclusive.
+     * @return the cleared rows, in ascending order.
+     */
+    public LineClearResult clearLines(int fromY, int toY) {
+        final LineClearResult result = clearResult;
+        result.clear();
+        final int from = Math.max(fromY, 0);
+        final int to = Math.min(toY, top - 1);
+        for (int y = from; y <= to; y++) {
+            if (isFullRow(y)) {
+                result.add(y);
+            }
+        }
+        final int count = result.count();
+        if (count == 0) return result;
+        if (freedRows.length < count) freedRows = new int[Math.max(count, freedRows.length * 2)];
+
+        // only the rows below the top are moved; the rows above it are empty and stay
+        final int oldTop = top;
+        int dst = result.row(0);
+        int next = 0;
+        for (int src = dst; src < oldTop; src++) {
+            if (next < count && src == result.row(next)) {
+                freedRows[next++] = rowIndex[src];
+            } else {
+                rowIndex[dst++] = rowIndex[src];
+            }
+        }
+        // reuse the cleared storage as the empty rows under the old top
+        for (int i = 0; i < count; i++) {
+            final int row = freedRows[i];
+            clearPhysical(row);
+            rowIndex[dst++] = row;
+        }
+        markRows(result.row(0), oldTop - 1);
+        top = oldTop - count;
+        vacatedStamp = modCount;
+        lowerTop(modCount);
+        return result;
     }
 }
@@ -0,0 +1,154 @@
+package io.github.squid233.tetris;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentScope;
+
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * The CPU side of the settled wall geometry, in the vertex format of {@link Tessellator}.
+ * <p>
+ * Only the cells in a {@link WallView} are built. Each row of the view owns a fixed range of
+ * {@link WallView#columns()} quads, and empty cells are degenerate quads, so a row can be rebuilt and uploaded
+ * without touching the others. {@link #update(Wall, WallView)} only rebuilds the rows whose
+ * {@link Wall#rowStamp(int) stamps} changed since the last update, or all of them when the view moved.
+ * The vertices are in wall coordinates.
+ * <p>
+ * This class does not call GL.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class WallMesh {
+    private static final long QUAD_BYTES = 4L * Tessellator.STRIDE;
+    private MemorySegment vertices = MemorySegment.NULL;
+    private final Sprite sprite;
+    private Wall builtWall;
+    private long builtModCount;
+    private int left;
+    private int bottom;
+    private int columns;
+    private int rows;
+    private long rowBytes;
+    private int dirtyFrom = Integer.MAX_VALUE;
+    private int dirtyTo = -1;
+
+    /**
+     * Creates a wall mesh.
+     *
+     * @param sprite the sprite of the cells.
+     */
+    public WallMesh(Sprite sprite) {
+        this.sprite = sprite;
+    }
+
+    public WallMesh() {
+        this(Sprite.WHOLE);
+    }
+
+    private void vertex(long offset, float x, float y, float u, float v, int colorRGB) {
+        vertices.set(JAVA_FLOAT_UNALIGNED, offset, x);
+        vertices.set(JAVA_FLOAT_UNALIGNED, offset + 4, y);
+        vertices.set(JAVA_FLOAT_UNALIGNED, offset + Tessellator.UV_OFFSET, u);
+        vertices.set(JAVA_FLOAT_UNALIGNED, offset + Tessellator.UV_OFFSET + 4, v);
+        vertices.set(JAVA_BYTE, offset + Tessellator.COLOR_OFFSET, (byte) (colorRGB >>> 16));
+        vertices.set(JAVA_BYTE, offset + Tessellator.COLOR_OFFSET + 1, (byte) (colorRGB >>> 8));
+        vertices.set(JAVA_BYTE, offset + Tessellator.COLOR_OFFSET + 2, (byte) colorRGB);
+    }
+
+    private void buildRow(Wall wall, int row) {
+        final int y = bottom + row;
+        long offset = rowBytes * row;
+        for (int x = left, right = left + columns; x < right; x++, offset += QUAD_BYTES) {
+            final CellType type = wall.getCell(x, y);
+            if (type == CellType.NONE) {
+                vertices.asSlice(offset, QUAD_BYTES).fill((byte) 0);
+                continue;
+            }
+            final float x0 = x * Wall.CELL_SIZE;
+            final float y0 = y * Wall.CELL_SIZE;
+            final float x1 = (x + 1) * Wall.CELL_SIZE;
+            final float y1 = (y + 1) * Wall.CELL_SIZE;
+            final int color = type.colorRGB();
+            vertex(offset, x0, y1, sprite.u0(), sprite.v0(), color);
+            vertex(offset + Tessellator.STRIDE, x0, y0, sprite.u0(), sprite.v1(), color);
+            vertex(offset + Tessellator.STRIDE * 2L, x1, y0, sprite.u1(), sprite.v1(), color);
+            vertex(offset + Tessellator.STRIDE * 3L, x1, y1, sprite.u1(), sprite.v0(), color);
+        }
+        dirtyFrom = Math.min(dirtyFrom, row);
+        dirtyTo = Math.max(dirtyTo, row);
+    }
+
+    /**
+     * Rebuilds the rows changed since the last update.
+     *
+     * @param wall the wall.
+     * @param view the cells to build.
+     * @return {@code true} if any row was rebuilt.
+     */
+    public boolean update(Wall wall, WallView view) {
+        final boolean all = wall != builtWall ||
+                            view.left() != left || view.bottom() != bottom ||
+                            view.columns() != columns || view.rows() != rows;
+        if (!all && wall.modCount() == builtModCount) return false;
+        if (all) {
+            left = view.left();
+            bottom = view.bottom();
+            columns = view.columns();
+            rows = view.rows();
+            rowBytes = columns * QUAD_BYTES;
+            if (vertices.byteSize() < rowBytes * rows) {
+                vertices = MemorySegment.allocateNative(rowBytes * rows, SegmentScope.auto());
+            }
+        }
+        for (int row = 0; row < rows; row++) {
+            if (all || wall.rowStamp(bottom + row) > builtModCount) {
+                buildRow(wall, row);
+            }
+        }
+        builtWall = wall;
+        builtModCount = wall.modCount();
+        return isDirty();
+    }
+
+    public boolean isDirty() {
+        return dirtyTo >= dirtyFrom;
+    }
+
+    /**
+     * {@return the count of the quads of the built view}
+     */
+    public int quadCount() {
+        return columns * rows;
+    }
+
+    /**
+     * {@return the size of the vertices of a row of the built view}
+     */
+    public long rowBytes() {
+        return rowBytes;
+    }
+
+    /**
+     * {@return the lowest row of the view rebuilt since the last {@link #clearDirty()}}
+     */
+    public int dirtyFrom() {
+        return dirtyFrom;
+    }
+
+    /**
+     * {@return the highest row of the view rebuilt since the last {@link #clearDirty()}}
+     */
+    public int dirtyTo() {
+        return dirtyTo;
+    }
+
+    public void clearDirty() {
+        dirtyFrom = Integer.MAX_VALUE;
+        dirtyTo = -1;
+    }
+
+    public MemorySegment vertices() {
+        return vertices;
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.squid233.tetris;
+
+import org.overrun.glib.gl.GL;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * The GPU buffer of a {@link WallMesh}. Only the dirty rows are uploaded, and only when the wall changed.
+ * The buffer is reallocated when the mesh outgrows it.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class WallMeshBuffer implements Disposable {
+    private final WallMesh mesh;
+    private final QuadIndexBuffer quadIndexBuffer;
+    private int vao, vbo;
+    private long capacity;
+
+    public WallMeshBuffer(QuadIndexBuffer quadIndexBuffer, Sprite sprite) {
+        this.quadIndexBuffer = quadIndexBuffer;
+        this.mesh = new WallMesh(sprite);
+    }
+
+    private void init() {
+        vao = GL.genVertexArray();
+        vbo = GL.genBuffer();
+        RenderState.bindVertexArray(vao);
+        GL.bindBuffer(GL.ARRAY_BUFFER, vbo);
+        Tessellator.setupVertexAttributes();
+        GL.bindBuffer(GL.ARRAY_BUFFER, 0);
+        quadIndexBuffer.bind();
+    }
+
+    /**
+     * Uploads the rows of the view changed since the last call.
+     *
+     * @param wall the wall.
+     * @param view the cells to draw.
+     */
+    public void update(Wall wall, WallView view) {
+        if (vao == 0) init();
+        final long tessellateStart = Profiler.start();
+        final boolean changed = mesh.update(wall, view);
+        Profiler.end(Profiler.Phase.TESSELLATE, tessellateStart);
+        if (!changed) return;
+        if (quadIndexBuffer.maxQuads() < mesh.quadCount()) {
+            throw new IllegalStateException("The quad index buffer is too small for the wall view: " + mesh.quadCount());
+        }
+        final long uploadStart = Profiler.start();
+        final long offset = mesh.rowBytes() * mesh.dirtyFrom();
+        final long size = mesh.rowBytes() * (mesh.dirtyTo() - mesh.dirtyFrom() + 1);
+        GL.bindBuffer(GL.ARRAY_BUFFER, vbo);
+        if (capacity < mesh.vertices().byteSize()) {
+            // the vertex attributes refer to the buffer object, not its storage, so they stay valid
+            capacity = mesh.vertices().byteSize();
+            GL.bufferData(GL.ARRAY_BUFFER, capacity, MemorySegment.NULL, GL.DYNAMIC_DRAW);
+        }
+        GL.bufferSubData(GL.ARRAY_BUFFER, offset, size, mesh.vertices().asSlice(offset, size));
+        GL.bindBuffer(GL.ARRAY_BUFFER, 0);
+        mesh.clearDirty();
+        Profiler.end(Profiler.Phase.UPLOAD, uploadStart);
+    }
+
+    public void draw() {
+        final long drawStart = Profiler.start();
+        RenderState.bindVertexArray(vao);
+        GL.drawElements(GL.TRIANGLES, mesh.quadCount() * 6, GL.UNSIGNED_INT, MemorySegment.NULL);
+        Profiler.end(Profiler.Phase.DRAW, drawStart);
+    }
+
+    @Override
+    public void dispose() {
+        if (vao != 0) RenderState.deleteVertexArray(vao);
+        if (vbo != 0) GL.deleteBuffer(vbo);
+    }
+}
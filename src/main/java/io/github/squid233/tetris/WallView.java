@@ -0,0 +1,96 @@
+package io.github.squid233.tetris;
+
+/**
+ * The part of the visible rows of a wall that is drawn, in cells.
+ * <p>
+ * A wall that fits into the window is drawn whole. A larger one is drawn through a window of the size of the
+ * framebuffer that follows the falling piece, so the cost of a frame depends on the size of the window,
+ * not of the wall.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class WallView {
+    /**
+     * The cells kept between the falling piece and the edges of the view, if the view is large enough.
+     */
+    private static final int MARGIN = 4;
+    private int left;
+    private int bottom;
+    private int columns;
+    private int rows;
+
+    private static int follow(int start, int size, int target, int targetSize, int limit) {
+        final int margin = Math.max(0, Math.min(MARGIN, (size - targetSize) / 2));
+        if (target - margin < start) {
+            start = target - margin;
+        } else if (target + targetSize + margin > start + size) {
+            start = target + targetSize + margin - size;
+        }
+        return Math.max(0, Math.min(start, limit - size));
+    }
+
+    /**
+     * Moves the view to follow the falling piece.
+     *
+     * @param wall        the wall.
+     * @param state       the falling piece.
+     * @param pixelWidth  the width of the space for the wall, in pixels.
+     * @param pixelHeight the height of the space for the wall, in pixels.
+     * @param maxCells    the maximum count of the cells in the view.
+     * @return {@code true} if the view changed.
+     */
+    public boolean update(Wall wall, CellState state, int pixelWidth, int pixelHeight, int maxCells) {
+        final int newColumns = Math.max(1, Math.min(Math.min(wall.width(), pixelWidth / Wall.CELL_SIZE), maxCells));
+        final int newRows = Math.max(1, Math.min(Math.min(wall.visibleHeight(), pixelHeight / Wall.CELL_SIZE),
+            maxCells / newColumns));
+        final int newLeft = follow(left, newColumns, state.x(), CellState.STATE_WIDTH, wall.width());
+        final int newBottom = follow(bottom, newRows, state.y(), CellState.STATE_HEIGHT, wall.visibleHeight());
+        if (newLeft == left && newBottom == bottom && newColumns == columns && newRows == rows) return false;
+        left = newLeft;
+        bottom = newBottom;
+        columns = newColumns;
+        rows = newRows;
+        return true;
+    }
+
+    /**
+     * {@return the first column of the view}
+     */
+    public int left() {
+        return left;
+    }
+
+    /**
+     * {@return the first row of the view}
+     */
+    public int bottom() {
+        return bottom;
+    }
+
+    public int columns() {
+        return columns;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * {@return the column after the last column of the view}
+     */
+    public int right() {
+        return left + columns;
+    }
+
+    /**
+     * {@return the row after the last row of the view}
+     */
+    public int top() {
+        return bottom + rows;
+    }
+
+    public boolean contains(int x, int y) {
+        return x >= left && x < right() && y >= bottom && y < top();
+    }
+}
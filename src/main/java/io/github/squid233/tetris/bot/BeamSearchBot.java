@@ -0,0 +1,141 @@
+package io.github.squid233.tetris.bot;
+
+import io.github.squid233.tetris.CellState;
+import io.github.squid233.tetris.CellStateType;
+import io.github.squid233.tetris.Wall;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Chooses a placement by searching through the preview queue.
+ * <p>
+ * Every placement of the current piece is a branch. Each branch is expanded with the placements of the
+ * preview pieces, keeping the best {@code beamWidth} boards at each depth, and the branch with the best
+ * leaf wins. The branches are evaluated in parallel on a {@link ForkJoinPool} if one is given.
+ * The search stops expanding when the time budget runs out and uses the deepest boards it has.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class BeamSearchBot {
+    private static final double DEAD = Double.NEGATIVE_INFINITY;
+    private static final Comparator<Node> BY_VALUE = Comparator.comparingDouble(Node::value).reversed();
+    private final Heuristic heuristic;
+    private final int beamWidth;
+    private final int lookahead;
+    private final long budgetNanos;
+    private final @Nullable ForkJoinPool pool;
+    private final ThreadLocal<PlacementSearch> searches = ThreadLocal.withInitial(PlacementSearch::new);
+
+    /**
+     * Creates the bot.
+     *
+     * @param heuristic    the board evaluation.
+     * @param beamWidth    the count of the boards kept at each depth of a branch.
+     * @param lookahead    the maximum count of the preview pieces to search through.
+     * @param budgetMillis the time budget of each decision in milliseconds.
+     * @param pool         the pool to evaluate the branches in, or {@code null} to evaluate them on the calling thread.
+     */
+    public BeamSearchBot(Heuristic heuristic, int beamWidth, int lookahead, long budgetMillis, @Nullable ForkJoinPool pool) {
+        this.heuristic = heuristic;
+        this.beamWidth = beamWidth;
+        this.lookahead = lookahead;
+        this.budgetNanos = budgetMillis * 1_000_000L;
+        this.pool = pool;
+    }
+
+    private record Node(Wall wall, double reward, double value) {
+    }
+
+    private Node place(Wall wall, PlacementSearch search, int i, CellState scratch, double reward) {
+        final Wall child = new Wall(wall.width(), wall.visibleHeight());
+        child.set(wall);
+        search.apply(i, scratch);
+        final double childReward = reward + heuristic.evaluateLines(scratch.fixToWall(child).count());
+        return new Node(child, childReward, childReward + heuristic.evaluateBoard(child));
+    }
+
+    private double evaluateBranch(Node root, CellStateType[] preview, int depth, long deadline) {
+        final PlacementSearch search = searches.get();
+        final CellState spawn = new CellState();
+        final CellState scratch = new CellState();
+        List<Node> beam = List.of(root);
+        for (int d = 0; d < depth && System.nanoTime() < deadline; d++) {
+            final List<Node> children = new ArrayList<>();
+            for (Node node : beam) {
+                spawn.reset(preview[d], node.wall());
+                final int count = search.search(node.wall(), spawn);
+                for (int i = 0; i < count; i++) {
+                    children.add(place(node.wall(), search, i, scratch, node.reward()));
+                }
+            }
+            // every board of the beam tops out
+            if (children.isEmpty()) return DEAD;
+            children.sort(BY_VALUE);
+            beam = children.size() > beamWidth ? children.subList(0, beamWidth) : children;
+        }
+        return beam.get(0).value();
+    }
+
+    private final class BranchTask extends RecursiveTask<Double> {
+        private final Node root;
+        private final CellStateType[] preview;
+        private final int depth;
+        private final long deadline;
+
+        BranchTask(Node root, CellStateType[] preview, int depth, long deadline) {
+            this.root = root;
+            this.preview = preview;
+            this.depth = depth;
+            this.deadline = deadline;
+        }
+
+        @Override
+        protected Double compute() {
+            return evaluateBranch(root, preview, depth, deadline);
+        }
+    }
+
+    /**
+     * Chooses the placement of the current piece.
+     *
+     * @param wall    the wall.
+     * @param current the current piece.
+     * @param preview the upcoming pieces.
+     * @return the best placement, or {@code null} if the piece cannot be placed.
+     */
+    public @Nullable Placement decide(Wall wall, CellState current, CellStateType[] preview) {
+        final long deadline = System.nanoTime() + budgetNanos;
+        final int depth = Math.min(lookahead, preview.length);
+        final PlacementSearch search = searches.get();
+        final int count = search.search(wall, current);
+        if (count == 0) return null;
+
+        final CellState scratch = new CellState();
+        final List<BranchTask> tasks = new ArrayList<>(count);
+        final Placement[] placements = new Placement[count];
+        for (int i = 0; i < count; i++) {
+            placements[i] = search.placement(i);
+            tasks.add(new BranchTask(place(wall, search, i, scratch, 0), preview, depth, deadline));
+        }
+        if (pool != null) {
+            tasks.forEach(pool::execute);
+        }
+        int best = 0;
+        double bestValue = DEAD;
+        for (int i = 0; i < count; i++) {
+            final BranchTask task = tasks.get(i);
+            final double value = pool != null ? task.join() : task.compute();
+            if (value > bestValue || i == 0) {
+                best = i;
+                bestValue = value;
+            }
+        }
+        return placements[best];
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.squid233.tetris.bot;
+
+import io.github.squid233.tetris.*;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Plays a {@link GameSimulation} by producing the same per-tick inputs as the keyboard.
+ * <p>
+ * A placement is chosen once per piece and the path to it is followed one move per tick. When the piece is not
+ * where the path expects, e.g. after a gravity step, the path is searched again from the current state.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class BotPlayer {
+    private final BeamSearchBot bot;
+    private final PlacementSearch search = new PlacementSearch();
+    private int[] path = new int[0];
+    private final CellState expected = new CellState();
+    private int pathLength;
+    private int pathPos;
+    private @Nullable GameSimulation plannedSimulation;
+    private long plannedPiece = -1;
+    private @Nullable Placement target;
+
+    public BotPlayer(BeamSearchBot bot) {
+        this.bot = bot;
+    }
+
+    private void decide(GameSimulation simulation) {
+        final CellStateType[] preview = new CellStateType[simulation.previewLength()];
+        for (int i = 0; i < preview.length; i++) {
+            preview[i] = simulation.preview(i);
+        }
+        target = bot.decide(simulation.wall(), simulation.holdState(), preview);
+    }
+
+    private boolean findPath(GameSimulation simulation) {
+        if (target == null) return false;
+        search.search(simulation.wall(), simulation.holdState());
+        final int index = search.find(target);
+        if (index == -1) return false;
+        if (path.length < search.maxPathLength()) path = new int[search.maxPathLength()];
+        pathLength = search.path(index, path);
+        pathPos = 0;
+        return true;
+    }
+
+    private static boolean sameState(CellState a, CellState b) {
+        return a.direction() == b.direction() && a.x() == b.x() && a.y() == b.y();
+    }
+
+    /**
+     * Computes the input of the next tick.
+     *
+     * @param simulation the game to play.
+     * @return the {@link GameInput} bits.
+     */
+    public int nextInput(GameSimulation simulation) {
+        if (simulation.isGameOver()) return GameInput.NONE;
+        final CellState state = simulation.holdState();
+        final Wall wall = simulation.wall();
+        if (simulation != plannedSimulation || simulation.pieces() != plannedPiece) {
+            plannedSimulation = simulation;
+            plannedPiece = simulation.pieces();
+            decide(simulation);
+            if (!findPath(simulation)) return GameInput.DROP;
+        } else if (!sameState(state, expected) && !findPath(simulation)) {
+            // pushed off the path; choose again from here
+            decide(simulation);
+            if (!findPath(simulation)) return GameInput.DROP;
+        }
+
+        boolean onlyFalling = true;
+        for (int i = pathPos; i < pathLength; i++) {
+            if (path[i] != GameInput.DOWN) {
+                onlyFalling = false;
+                break;
+            }
+        }
+        if (onlyFalling) return GameInput.DROP;
+
+        final int input = path[pathPos++];
+        expected.set(state);
+        switch (input) {
+            case GameInput.LEFT -> expected.moveLeft(wall);
+            case GameInput.RIGHT -> expected.moveRight(wall);
+            case GameInput.DOWN -> expected.moveDown(wall);
+            case GameInput.ROTATE_CW -> expected.rotateClockwise(wall);
+            case GameInput.ROTATE_CCW -> expected.rotateCounterClockwise(wall);
+        }
+        return input;
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.squid233.tetris.bot;
+
+import io.github.squid233.tetris.Wall;
+
+/**
+ * A linear board evaluation. Higher is better, so the weights of the bad features are negative.
+ *
+ * @param aggregateHeight the weight of the sum of the column heights.
+ * @param holes           the weight of the empty cells with an occupied cell above them.
+ * @param bumpiness       the weight of the sum of the height differences between neighbour columns.
+ * @param lines           the weight of the cleared lines.
+ * @author squid233
+ * @since 0.1.0
+ */
+public record Heuristic(double aggregateHeight, double holes, double bumpiness, double lines) {
+    /**
+     * The weights tuned by Yiyuan Lee for a 10-wide board, which also play well on this wall.
+     */
+    public static final Heuristic DEFAULT = new Heuristic(-0.510066, -0.35663, -0.184483, 0.760666);
+
+    /**
+     * Evaluates the wall without the line clear term.
+     *
+     * @param wall the wall.
+     * @return the score of the wall.
+     */
+    public double evaluateBoard(Wall wall) {
+        final int width = wall.width();
+        final int words = wall.words();
+        final int[] heights = new int[width];
+        final long[] seen = new long[words];
+        int holeCount = 0;
+        // the rows above the top are empty
+        for (int y = wall.top() - 1; y >= 0; y--) {
+            for (int w = 0; w < words; w++) {
+                final long row = wall.rowWord(y, w);
+                holeCount += Long.bitCount(seen[w] & ~row);
+                long newBits = row & ~seen[w];
+                while (newBits != 0) {
+                    heights[w * Long.SIZE + Long.numberOfTrailingZeros(newBits)] = y + 1;
+                    newBits &= newBits - 1;
+                }
+                seen[w] |= row;
+            }
+        }
+        int aggregate = 0;
+        int bumps = 0;
+        for (int x = 0; x < width; x++) {
+            aggregate += heights[x];
+            if (x > 0) bumps += Math.abs(heights[x] - heights[x - 1]);
+        }
+        return aggregateHeight * aggregate + holes * holeCount + bumpiness * bumps;
+    }
+
+    public double evaluateLines(int count) {
+        return lines * count;
+    }
+}
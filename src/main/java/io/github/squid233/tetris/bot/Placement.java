@@ -0,0 +1,20 @@
+package io.github.squid233.tetris.bot;
+
+import io.github.squid233.tetris.CellStateType;
+import io.github.squid233.tetris.Direction;
+
+/**
+ * A final resting position of a piece.
+ *
+ * @param type      the type of the piece.
+ * @param direction the direction.
+ * @param x         the x position of the origin.
+ * @param y         the y position of the origin.
+ * @author squid233
+ * @since 0.1.0
+ */
+public record Placement(CellStateType type, Direction direction, int x, int y) {
+    public int shape() {
+        return type.shape(direction);
+    }
+}
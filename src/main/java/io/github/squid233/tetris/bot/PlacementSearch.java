@@ -0,0 +1,264 @@
+package io.github.squid233.tetris.bot;
+
+import io.github.squid233.tetris.*;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Enumerates the placements reachable from a state with the same moves as the player.
+ * <p>
+ * The search is a breadth-first search over {@code (direction, x, y)}. A state that touches the ground
+ * locks as soon as it is reached, like {@link GameSimulation} does, except the start state, which can still move once.
+ * Placements that cover the same cells in different directions are only reported once.
+ * <p>
+ * A state high above the stack is first moved down through the empty rows, so the searched rows only depend on
+ * the height of the stack, not of the wall.
+ * <p>
+ * The buffers are only reallocated when a search needs more states than before, so a search usually does not
+ * allocate. An instance is not thread-safe.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class PlacementSearch {
+    private static final int X_OFFSET = 4;
+    private static final int Y_OFFSET = 4;
+    /**
+     * The rows kept between the top of the wall and the start state moved down before the search, and the rows
+     * searched above the start state, for the kicks that move a state up.
+     */
+    private static final int HEADROOM = CellState.STATE_HEIGHT * 2;
+    private static final int[] MOVE_INPUTS = {
+        GameInput.LEFT,
+        GameInput.RIGHT,
+        GameInput.DOWN,
+        GameInput.ROTATE_CW,
+        GameInput.ROTATE_CCW
+    };
+    /**
+     * The first direction of each type that has the same cells, and the offset of the cells to the origin.
+     */
+    private static final int[][] CANONICAL_DIRECTION = new int[CellStateType.VALUE_COUNT][Direction.VALUE_COUNT];
+    private static final int[][] CANONICAL_X = new int[CellStateType.VALUE_COUNT][Direction.VALUE_COUNT];
+    private static final int[][] CANONICAL_Y = new int[CellStateType.VALUE_COUNT][Direction.VALUE_COUNT];
+    private int[] visited = new int[0];
+    private int[] resting = new int[0];
+    private int[] parent = new int[0];
+    private byte[] parentMove = new byte[0];
+    private int[] queue = new int[0];
+    private int[] placements = new int[0];
+    private final CellState probe = new CellState();
+    private CellStateType type;
+    private int placementCount;
+    private int generation;
+    private int xRange;
+    private int yRange;
+    /**
+     * The count of the rows the start state was moved down before the search.
+     */
+    private int descent;
+
+    static {
+        for (int t = 0; t < CellStateType.VALUE_COUNT; t++) {
+            final CellStateType type = CellStateType.byId(t);
+            final int[] normalized = new int[Direction.VALUE_COUNT];
+            for (int d = 0; d < Direction.VALUE_COUNT; d++) {
+                final int shape = type.shape(Direction.byId(d));
+                int minX = CellState.STATE_WIDTH, minY = CellState.STATE_HEIGHT;
+                for (int i = 0; i < CellState.STATE_SIZE; i++) {
+                    if ((shape >>> i & 1) != 0) {
+                        minX = Math.min(minX, i % CellState.STATE_WIDTH);
+                        minY = Math.min(minY, i / CellState.STATE_WIDTH);
+                    }
+                }
+                normalized[d] = shape >>> (minY * CellState.STATE_WIDTH + minX);
+                CANONICAL_X[t][d] = minX;
+                CANONICAL_Y[t][d] = minY;
+                int canonical = d;
+                for (int prev = 0; prev < d; prev++) {
+                    if (normalized[prev] == normalized[d]) {
+                        canonical = prev;
+                        break;
+                    }
+                }
+                CANONICAL_DIRECTION[t][d] = canonical;
+            }
+        }
+    }
+
+    private int key(int direction, int x, int y) {
+        return (direction * xRange + x + X_OFFSET) * yRange + y + Y_OFFSET;
+    }
+
+    private int keyDirection(int key) {
+        return key / yRange / xRange;
+    }
+
+    private int keyX(int key) {
+        return key / yRange % xRange - X_OFFSET;
+    }
+
+    private int keyY(int key) {
+        return key % yRange - Y_OFFSET;
+    }
+
+    /**
+     * Sizes the buffers for the states with {@code y} up to the given row.
+     */
+    private void resize(Wall wall, int maxY) {
+        xRange = wall.width() + X_OFFSET;
+        yRange = maxY + 1 + Y_OFFSET;
+        final int stateCount = Direction.VALUE_COUNT * xRange * yRange;
+        if (visited.length < stateCount) {
+            // the marks of the old buffers are dropped with them
+            visited = new int[stateCount];
+            resting = new int[stateCount];
+            parent = new int[stateCount];
+            parentMove = new byte[stateCount];
+            queue = new int[stateCount];
+            placements = new int[stateCount];
+            generation = 0;
+        }
+    }
+
+    private int canonicalKey(int direction, int x, int y) {
+        final int t = type.ordinal();
+        return key(CANONICAL_DIRECTION[t][direction], x + CANONICAL_X[t][direction], y + CANONICAL_Y[t][direction]);
+    }
+
+    private boolean move(Wall wall, int move) {
+        return switch (move) {
+            case 0 -> probe.moveLeft(wall);
+            case 1 -> probe.moveRight(wall);
+            case 2 -> probe.moveDown(wall);
+            case 3 -> probe.rotateClockwise(wall);
+            case 4 -> probe.rotateCounterClockwise(wall);
+            default -> false;
+        };
+    }
+
+    /**
+     * Searches the placements reachable from the given state.
+     *
+     * @param wall  the wall.
+     * @param start the state to start from.
+     * @return the count of the placements.
+     */
+    public int search(Wall wall, CellState start) {
+        type = Objects.requireNonNull(start.type());
+        placementCount = 0;
+        descent = 0;
+        if (start.isBlocked(wall)) return 0;
+        // the rows above the top are empty, so moving down through them first reaches the same placements
+        final int startY = Math.min(start.y(), wall.top() + HEADROOM);
+        descent = start.y() - startY;
+        final int maxY = Math.min(startY + HEADROOM, wall.height() - 1);
+        resize(wall, maxY);
+        if (++generation == 0) {
+            Arrays.fill(visited, 0);
+            Arrays.fill(resting, 0);
+            generation = 1;
+        }
+
+        final int startKey = key(start.direction().ordinal(), start.x(), startY);
+        int head = 0, tail = 0;
+        visited[startKey] = generation;
+        parent[startKey] = -1;
+        queue[tail++] = startKey;
+        while (head < tail) {
+            final int key = queue[head++];
+            final int direction = keyDirection(key);
+            final int x = keyX(key);
+            final int y = keyY(key);
+            probe.set(type, Direction.byId(direction), x, y);
+            if (probe.isOnGround(wall)) {
+                final int canonical = canonicalKey(direction, x, y);
+                if (resting[canonical] != generation) {
+                    resting[canonical] = generation;
+                    placements[placementCount++] = key;
+                }
+                if (key != startKey) continue;
+            }
+            for (int move = 0; move < MOVE_INPUTS.length; move++) {
+                probe.set(type, Direction.byId(direction), x, y);
+                if (!move(wall, move) || probe.y() > maxY) continue;
+                final int next = key(probe.direction().ordinal(), probe.x(), probe.y());
+                if (visited[next] == generation) continue;
+                visited[next] = generation;
+                parent[next] = key;
+                parentMove[next] = (byte) move;
+                queue[tail++] = next;
+            }
+        }
+        return placementCount;
+    }
+
+    public int placementCount() {
+        return placementCount;
+    }
+
+    public Placement placement(int i) {
+        final int key = placements[i];
+        return new Placement(type, Direction.byId(keyDirection(key)), keyX(key), keyY(key));
+    }
+
+    /**
+     * Sets the state to a placement found by the last search.
+     *
+     * @param i     the index of the placement.
+     * @param state the state to set.
+     */
+    public void apply(int i, CellState state) {
+        final int key = placements[i];
+        state.set(type, Direction.byId(keyDirection(key)), keyX(key), keyY(key));
+    }
+
+    /**
+     * {@return the index of the placement covering the same cells as the target, or -1 if it is not reachable}
+     *
+     * @param target the target placement.
+     */
+    public int find(Placement target) {
+        if (target.type() != type) return -1;
+        final int canonical = canonicalKey(target.direction().ordinal(), target.x(), target.y());
+        for (int i = 0; i < placementCount; i++) {
+            final int key = placements[i];
+            if (canonicalKey(keyDirection(key), keyX(key), keyY(key)) == canonical) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the inputs that move the start state to a placement, one per tick.
+     *
+     * @param i      the index of the placement.
+     * @param inputs the {@link GameInput} bits to write into, in order.
+     *               must be large enough to hold the path, e.g. {@link #maxPathLength()}.
+     * @return the count of the inputs.
+     */
+    public int path(int i, int[] inputs) {
+        int length = 0;
+        for (int key = placements[i]; parent[key] != -1; key = parent[key]) {
+            inputs[length++] = MOVE_INPUTS[parentMove[key]];
+        }
+        for (int d = 0; d < descent; d++) {
+            inputs[length++] = GameInput.DOWN;
+        }
+        for (int l = 0, r = length - 1; l < r; l++, r--) {
+            final int t = inputs[l];
+            inputs[l] = inputs[r];
+            inputs[r] = t;
+        }
+        return length;
+    }
+
+    /**
+     * {@return the maximum length of a path found by the last search}
+     */
+    public int maxPathLength() {
+        return visited.length + descent;
+    }
+}
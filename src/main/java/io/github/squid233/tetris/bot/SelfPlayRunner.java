@@ -0,0 +1,216 @@
+package io.github.squid233.tetris.bot;
+
+import io.github.squid233.tetris.GameSimulation;
+import io.github.squid233.tetris.PieceGenerator;
+import io.github.squid233.tetris.Wall;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays many independent seeded games with the bot on all cores.
+ * <p>
+ * The games are split recursively on a work-stealing {@link ForkJoinPool}. Each game is confined to the
+ * thread that plays it and the statistics are merged when the tasks join, so the games share no locks.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class SelfPlayRunner {
+    private final BeamSearchBot bot;
+    private final PieceGenerator.Mode mode;
+    private final long seed;
+    private final long maxPieces;
+    private final int width;
+    private final int visibleHeight;
+
+    /**
+     * Creates the runner.
+     *
+     * @param bot           the bot. should evaluate on the calling thread, as the games already use all cores.
+     * @param mode          the piece generator mode.
+     * @param seed          the seed of the first game. game {@code i} uses {@code seed + i}.
+     * @param maxPieces     the count of the pieces after which a game stops even if it is not over.
+     * @param width         the width of the walls.
+     * @param visibleHeight the visible height of the walls.
+     */
+    public SelfPlayRunner(BeamSearchBot bot, PieceGenerator.Mode mode, long seed, long maxPieces, int width, int visibleHeight) {
+        this.bot = bot;
+        this.mode = mode;
+        this.seed = seed;
+        this.maxPieces = maxPieces;
+        this.width = width;
+        this.visibleHeight = visibleHeight;
+    }
+
+    public SelfPlayRunner(BeamSearchBot bot, PieceGenerator.Mode mode, long seed, long maxPieces) {
+        this(bot, mode, seed, maxPieces, Wall.DEFAULT_WIDTH, Wall.DEFAULT_VISIBLE_HEIGHT);
+    }
+
+    /**
+     * The statistics of some games.
+     */
+    public static final class Stats {
+        private long pieces;
+        private long lines;
+        private long ticks;
+        private long[] lengths;
+        private int games;
+
+        Stats(int capacity) {
+            lengths = new long[capacity];
+        }
+
+        void add(GameSimulation simulation) {
+            pieces += simulation.pieces();
+            lines += simulation.lines();
+            ticks += simulation.ticks();
+            lengths[games++] = simulation.pieces();
+        }
+
+        Stats merge(Stats other) {
+            pieces += other.pieces;
+            lines += other.lines;
+            ticks += other.ticks;
+            if (games + other.games > lengths.length) {
+                lengths = Arrays.copyOf(lengths, games + other.games);
+            }
+            System.arraycopy(other.lengths, 0, lengths, games, other.games);
+            games += other.games;
+            return this;
+        }
+
+        public int games() {
+            return games;
+        }
+
+        public long pieces() {
+            return pieces;
+        }
+
+        public long lines() {
+            return lines;
+        }
+
+        public long ticks() {
+            return ticks;
+        }
+
+        /**
+         * {@return the game length in pieces at the given percentile}
+         *
+         * @param percentile the percentile, from 0 to 100.
+         */
+        public long lengthPercentile(double percentile) {
+            if (games == 0) return 0;
+            final long[] sorted = Arrays.copyOf(lengths, games);
+            Arrays.sort(sorted);
+            final int index = (int) Math.ceil(percentile / 100.0 * games) - 1;
+            return sorted[Math.max(0, Math.min(index, games - 1))];
+        }
+    }
+
+    private final class GamesTask extends RecursiveTask<Stats> {
+        private final int from;
+        private final int to;
+
+        GamesTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Stats compute() {
+            if (to - from == 1) {
+                final Stats stats = new Stats(1);
+                stats.add(play(seed + from));
+                return stats;
+            }
+            final int mid = (from + to) >>> 1;
+            final GamesTask right = new GamesTask(mid, to);
+            right.fork();
+            final Stats left = new GamesTask(from, mid).compute();
+            return left.merge(right.join());
+        }
+    }
+
+    /**
+     * Plays a game to the end or to the piece limit.
+     *
+     * @param gameSeed the seed of the game.
+     * @return the finished game.
+     */
+    public GameSimulation play(long gameSeed) {
+        final GameSimulation simulation = new GameSimulation(gameSeed, mode, width, visibleHeight);
+        final BotPlayer player = new BotPlayer(bot);
+        while (!simulation.isGameOver() && simulation.pieces() < maxPieces) {
+            simulation.tick(player.nextInput(simulation));
+        }
+        return simulation;
+    }
+
+    /**
+     * Plays the games.
+     *
+     * @param pool  the pool to play in.
+     * @param games the count of the games.
+     * @return the statistics.
+     */
+    public Stats run(ForkJoinPool pool, int games) {
+        if (games <= 0) return new Stats(0);
+        return pool.invoke(new GamesTask(0, games));
+    }
+
+    public static void main(String[] args) {
+        int games = 1000;
+        PieceGenerator.Mode mode = PieceGenerator.Mode.BAG_7;
+        long seed = 0;
+        long maxPieces = 10_000;
+        int lookahead = 0;
+        int beamWidth = 4;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int width = Wall.DEFAULT_WIDTH;
+        int height = Wall.DEFAULT_VISIBLE_HEIGHT;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            final String value = args[i + 1];
+            switch (args[i]) {
+                case "--games" -> games = Integer.parseInt(value);
+                case "--generator" -> mode = PieceGenerator.Mode.valueOf(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--max-pieces" -> maxPieces = Long.parseLong(value);
+                case "--lookahead" -> lookahead = Integer.parseInt(value);
+                case "--beam" -> beamWidth = Integer.parseInt(value);
+                case "--threads" -> threads = Integer.parseInt(value);
+                case "--width" -> width = Integer.parseInt(value);
+                case "--height" -> height = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        final SelfPlayRunner runner = new SelfPlayRunner(
+            new BeamSearchBot(Heuristic.DEFAULT, beamWidth, lookahead, 60_000, null),
+            mode,
+            seed,
+            maxPieces,
+            width,
+            height);
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final long start = System.nanoTime();
+        final Stats stats = runner.run(pool, games);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        System.out.printf("games: %d on %d threads in %.3f s (%.2f games/s)%n", stats.games(), threads, seconds, stats.games() / seconds);
+        System.out.printf("pieces: %d (%.1f/game), lines: %d (%.1f/game), ticks: %d%n",
+            stats.pieces(), (double) stats.pieces() / stats.games(),
+            stats.lines(), (double) stats.lines() / stats.games(),
+            stats.ticks());
+        System.out.printf("game length in pieces: min %d, p50 %d, p90 %d, p99 %d, max %d%n",
+            stats.lengthPercentile(0),
+            stats.lengthPercentile(50),
+            stats.lengthPercentile(90),
+            stats.lengthPercentile(99),
+            stats.lengthPercentile(100));
+    }
+}
@@ -0,0 +1,28 @@
+package io.github.squid233.tetris.match;
+
+import io.github.squid233.tetris.GameInput;
+import io.github.squid233.tetris.GameSimulation;
+
+/**
+ * Provides the inputs of a board in a {@link Match}, e.g. a bot or a remote player.
+ * <p>
+ * A source is only called by the task that steps its match, one tick at a time.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+@FunctionalInterface
+public interface InputSource {
+    /**
+     * A source that never presses anything.
+     */
+    InputSource NONE = simulation -> GameInput.NONE;
+
+    /**
+     * Computes the input of the next tick.
+     *
+     * @param simulation the board to play.
+     * @return the {@link GameInput} bits.
+     */
+    int nextInput(GameSimulation simulation);
+}
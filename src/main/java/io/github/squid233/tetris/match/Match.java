@@ -0,0 +1,117 @@
+package io.github.squid233.tetris.match;
+
+import io.github.squid233.tetris.GameSimulation;
+import io.github.squid233.tetris.PieceGenerator;
+
+import java.util.Objects;
+
+/**
+ * A versus match of 2 to {@value #MAX_BOARDS} boards that step in lockstep.
+ * <p>
+ * In each tick every board that is still playing steps once with the input of its {@link InputSource}, and then
+ * the garbage sent by each board is added to the next board still playing after it. So the result only depends
+ * on the seed and the inputs, not on the thread that steps the match.
+ * <p>
+ * A match is confined to one thread at a time; {@link MatchScheduler} never steps a match concurrently.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class Match {
+    public static final int MIN_BOARDS = 2;
+    public static final int MAX_BOARDS = 8;
+    private final long id;
+    private final GameSimulation[] boards;
+    private final InputSource[] inputs;
+    private long ticks;
+    private int playing;
+
+    /**
+     * Creates a match where all boards get the same pieces.
+     *
+     * @param id     the id of the match.
+     * @param seed   the seed of the pieces.
+     * @param mode   the piece generator mode.
+     * @param inputs the input source of each board.
+     */
+    public Match(long id, long seed, PieceGenerator.Mode mode, InputSource... inputs) {
+        if (inputs.length < MIN_BOARDS || inputs.length > MAX_BOARDS) {
+            throw new IllegalArgumentException("A match has " + MIN_BOARDS + " to " + MAX_BOARDS + " boards: " + inputs.length);
+        }
+        this.id = id;
+        this.inputs = inputs.clone();
+        this.boards = new GameSimulation[inputs.length];
+        for (int i = 0; i < boards.length; i++) {
+            Objects.requireNonNull(this.inputs[i]);
+            boards[i] = new GameSimulation(seed, mode);
+        }
+        this.playing = boards.length;
+    }
+
+    /**
+     * Steps every board still playing by one tick and sends the garbage.
+     */
+    public void tick() {
+        if (isFinished()) return;
+        ticks++;
+        for (int i = 0; i < boards.length; i++) {
+            final GameSimulation board = boards[i];
+            if (!board.isGameOver()) {
+                board.tick(inputs[i].nextInput(board));
+            }
+        }
+        int alive = 0;
+        for (int i = 0; i < boards.length; i++) {
+            final GameSimulation board = boards[i];
+            final int garbage = board.takeOutgoingGarbage();
+            if (garbage > 0) {
+                final int target = nextPlaying(i);
+                if (target != -1) boards[target].receiveGarbage(garbage);
+            }
+            if (!board.isGameOver()) alive++;
+        }
+        playing = alive;
+    }
+
+    private int nextPlaying(int from) {
+        for (int i = 1; i < boards.length; i++) {
+            final int index = (from + i) % boards.length;
+            if (!boards[index].isGameOver()) return index;
+        }
+        return -1;
+    }
+
+    /**
+     * {@return whether at most one board is still playing}
+     */
+    public boolean isFinished() {
+        return playing <= 1;
+    }
+
+    /**
+     * {@return the index of the last board playing, or -1 if the match is not finished or every board topped out}
+     */
+    public int winner() {
+        if (!isFinished()) return -1;
+        for (int i = 0; i < boards.length; i++) {
+            if (!boards[i].isGameOver()) return i;
+        }
+        return -1;
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public long ticks() {
+        return ticks;
+    }
+
+    public int boardCount() {
+        return boards.length;
+    }
+
+    public GameSimulation board(int i) {
+        return boards[i];
+    }
+}
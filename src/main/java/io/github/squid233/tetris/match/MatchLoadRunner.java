@@ -0,0 +1,159 @@
+package io.github.squid233.tetris.match;
+
+import io.github.squid233.tetris.GameInput;
+import io.github.squid233.tetris.PieceGenerator;
+import io.github.squid233.tetris.bot.BeamSearchBot;
+import io.github.squid233.tetris.bot.BotPlayer;
+import io.github.squid233.tetris.bot.Heuristic;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Measures how many matches a {@link MatchScheduler} hosts in real time.
+ * <p>
+ * Matches are added while the scheduler is not overloaded, and a finished match is replaced by a new one.
+ * After the ramp-up, the ticks run in the measurement window are divided by the tick rate, giving the count of
+ * the matches that could run in real time, and the matches per core are printed.
+ * The ramp-up may overshoot when the load is bursty, but the overshoot only shows as lag, not as capacity.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class MatchLoadRunner {
+    private final MatchScheduler scheduler;
+    private final int boards;
+    private final boolean bots;
+    private final PieceGenerator.Mode mode;
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+    private final BeamSearchBot bot = new BeamSearchBot(Heuristic.DEFAULT, 1, 0, 60_000, null);
+
+    private MatchLoadRunner(MatchScheduler scheduler, int boards, boolean bots, PieceGenerator.Mode mode) {
+        this.scheduler = scheduler;
+        this.boards = boards;
+        this.bots = bots;
+        this.mode = mode;
+    }
+
+    private InputSource newPlayer(long seed) {
+        if (bots) return new BotPlayer(bot)::nextInput;
+        // presses a random key every few ticks
+        final SplittableRandom random = new SplittableRandom(seed);
+        return simulation -> random.nextInt(4) == 0 ? 1 << random.nextInt(6) : GameInput.NONE;
+    }
+
+    private Match newMatch() {
+        final long id = nextId.getAndIncrement();
+        final InputSource[] players = new InputSource[boards];
+        for (int i = 0; i < boards; i++) {
+            players[i] = newPlayer(id * Match.MAX_BOARDS + i);
+        }
+        return new Match(id, id, mode, players);
+    }
+
+    private boolean hostNew() {
+        return scheduler.host(newMatch(), this::replace);
+    }
+
+    private void replace(Match finished, @Nullable Throwable failure) {
+        if (failure != null) firstFailure.compareAndSet(null, failure);
+        // refused when overloaded; the ramp-up adds matches again when the load drops
+        hostNew();
+    }
+
+    /**
+     * Runs the load test.
+     * <p>
+     * Options: {@code --boards <2-8>}, {@code --players <bot|random>}, {@code --generator <mode>},
+     * {@code --rate <ticks per second>}, {@code --max-lag <ticks>}, {@code --threads <n>}, {@code --virtual true}
+     * to run the match tasks on virtual threads, {@code --ramp <seconds>} and {@code --seconds <seconds>}.
+     *
+     * @param args the arguments.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int boards = 2;
+        boolean bots = true;
+        PieceGenerator.Mode mode = PieceGenerator.Mode.BAG_7;
+        int rate = 60;
+        int maxLag = 30;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean virtual = false;
+        int rampSeconds = 10;
+        int seconds = 10;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            final String value = args[i + 1];
+            switch (args[i]) {
+                case "--boards" -> boards = Integer.parseInt(value);
+                case "--players" -> bots = switch (value) {
+                    case "bot" -> true;
+                    case "random" -> false;
+                    default -> throw new IllegalArgumentException("Unknown players " + value);
+                };
+                case "--generator" -> mode = PieceGenerator.Mode.valueOf(value);
+                case "--rate" -> rate = Integer.parseInt(value);
+                case "--max-lag" -> maxLag = Integer.parseInt(value);
+                case "--threads" -> threads = Integer.parseInt(value);
+                case "--virtual" -> virtual = Boolean.parseBoolean(value);
+                case "--ramp" -> rampSeconds = Integer.parseInt(value);
+                case "--seconds" -> seconds = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        // the virtual threads run on a pool of one carrier thread per core
+        final ExecutorService executor = virtual ? Executors.newVirtualThreadPerTaskExecutor() : new ForkJoinPool(threads);
+        final int cores = virtual ? Runtime.getRuntime().availableProcessors() : threads;
+        try (MatchScheduler scheduler = new MatchScheduler(rate, maxLag, executor)) {
+            final MatchLoadRunner runner = new MatchLoadRunner(scheduler, boards, bots, mode);
+            final long rampEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(rampSeconds);
+            // grow by a tenth of the hosted matches each step, so the ramp-up takes a few seconds at any scale
+            while (System.nanoTime() < rampEnd) {
+                for (int i = Math.max(1, scheduler.hostedMatches() / 10); i > 0; i--) {
+                    if (!runner.hostNew()) break;
+                }
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+
+            final long startTicks = scheduler.steppedTicks();
+            final long startDropped = scheduler.droppedTicks();
+            final long startFinished = scheduler.finishedMatches();
+            final long startFailed = scheduler.failedMatches();
+            final long start = System.nanoTime();
+            long hostedSum = 0;
+            int samples = 0;
+            int lagging = 0;
+            final long end = start + TimeUnit.SECONDS.toNanos(seconds);
+            while (System.nanoTime() < end) {
+                TimeUnit.MILLISECONDS.sleep(100);
+                hostedSum += scheduler.hostedMatches();
+                samples++;
+                lagging = Math.max(lagging, scheduler.laggingMatches());
+            }
+            final double elapsed = (System.nanoTime() - start) / 1e9;
+            final double hosted = (double) hostedSum / samples;
+            final double ticksPerSecond = (scheduler.steppedTicks() - startTicks) / elapsed;
+
+            System.out.printf("%d-board matches with %s players at %d Hz on %d %s%n",
+                boards, bots ? "bot" : "random", rate, cores, virtual ? "cores (virtual threads)" : "threads");
+            System.out.printf("real-time matches: %.1f (%.1f per core)%n",
+                ticksPerSecond / rate, ticksPerSecond / rate / cores);
+            System.out.printf("hosted: %.1f matches, %d finished, %d failed, %.1f%% of real time, %d ticks dropped, max lagging matches %d%n",
+                hosted, scheduler.finishedMatches() - startFinished, scheduler.failedMatches() - startFailed,
+                100 * ticksPerSecond / (hosted * rate), scheduler.droppedTicks() - startDropped, lagging);
+            final Throwable failure = runner.firstFailure.get();
+            if (failure != null) {
+                System.err.println("The first failed match threw:");
+                failure.printStackTrace();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
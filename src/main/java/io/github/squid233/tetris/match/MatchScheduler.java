@@ -0,0 +1,245 @@
+package io.github.squid233.tetris.match;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Steps many {@link Match matches} at a shared tick rate.
+ * <p>
+ * One scheduler thread wakes up at each tick and gives every hosted match a tick. A match with ticks to run has
+ * one task on the executor, which runs the ticks in order and ends when there are none left, so a match is
+ * never stepped concurrently and the matches share no locks; the scheduler and the tasks only exchange atomic
+ * counters. The executor can be a pool with one thread per core or a virtual thread per task executor.
+ * <p>
+ * When the executor cannot keep up, the ticks of a match wait. At most {@code maxLagTicks} ticks wait per match;
+ * the ticks beyond are dropped and the match runs slower than real time. While any match lags by half of that,
+ * the scheduler is {@link #isOverloaded() overloaded} and {@link #host(Match, BiConsumer)} refuses new matches.
+ * <p>
+ * A match that throws ends like a finished match, and the throwable is passed to its finish callback.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class MatchScheduler implements AutoCloseable {
+    private final long tickNanos;
+    private final int maxLagTicks;
+    private final int lagThreshold;
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<Slot> added = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger hosted = new AtomicInteger();
+    private final LongAdder steppedTicks = new LongAdder();
+    private final LongAdder droppedTicks = new LongAdder();
+    private final LongAdder finishedMatches = new LongAdder();
+    private final LongAdder failedMatches = new LongAdder();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile int laggingMatches;
+    // owned by the scheduler thread
+    private final ArrayList<Slot> slots = new ArrayList<>();
+
+    /**
+     * A hosted match and the count of its ticks that wait.
+     */
+    private final class Slot implements Runnable {
+        private final Match match;
+        private final BiConsumer<Match, @Nullable Throwable> onFinished;
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean finished;
+
+        Slot(Match match, BiConsumer<Match, @Nullable Throwable> onFinished) {
+            this.match = match;
+            this.onFinished = onFinished;
+        }
+
+        /**
+         * Gives the match a tick. Only called by the scheduler thread.
+         *
+         * @return {@code false} if the tick was dropped.
+         */
+        boolean request() {
+            if (pending.get() >= maxLagTicks) return false;
+            // the task ends when it takes the count to 0, so a new task is only needed then
+            if (pending.getAndIncrement() == 0) executor.execute(this);
+            return true;
+        }
+
+        @Override
+        public void run() {
+            boolean ended = false;
+            Throwable failure = null;
+            try {
+                do {
+                    match.tick();
+                    steppedTicks.increment();
+                    if (match.isFinished()) {
+                        ended = true;
+                        return;
+                    }
+                } while (pending.decrementAndGet() > 0);
+            } catch (Throwable t) {
+                ended = true;
+                failure = t;
+            } finally {
+                if (ended) finish(failure);
+            }
+        }
+
+        private void finish(@Nullable Throwable failure) {
+            // the pending count stays above 0, so no other task is started
+            finished = true;
+            if (failure == null) {
+                finishedMatches.increment();
+            } else {
+                failedMatches.increment();
+            }
+            onFinished.accept(match, failure);
+        }
+    }
+
+    /**
+     * Creates the scheduler and starts its thread.
+     *
+     * @param ticksPerSecond the tick rate of the matches.
+     * @param maxLagTicks    the maximum count of the ticks that wait per match, at least 2.
+     * @param executor       the executor of the match tasks.
+     */
+    public MatchScheduler(int ticksPerSecond, int maxLagTicks, Executor executor) {
+        if (ticksPerSecond <= 0) {
+            throw new IllegalArgumentException("The tick rate must be positive: " + ticksPerSecond);
+        }
+        if (maxLagTicks < 2) {
+            throw new IllegalArgumentException("The maximum lag must be at least 2 ticks: " + maxLagTicks);
+        }
+        this.tickNanos = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+        this.maxLagTicks = maxLagTicks;
+        this.lagThreshold = maxLagTicks / 2;
+        this.executor = executor;
+        thread = new Thread(this::run, "Match Scheduler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs the ticks at a fixed rate. If the scheduler itself falls behind by more than a second, the missed
+     * ticks are dropped.
+     */
+    private void run() {
+        long nextTick = System.nanoTime();
+        while (running) {
+            final long now = System.nanoTime();
+            final long wait = nextTick - now;
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            if (-wait > TimeUnit.SECONDS.toNanos(1)) {
+                nextTick = now;
+            }
+            for (Slot slot; (slot = added.poll()) != null; ) {
+                slots.add(slot);
+            }
+            int lagging = 0;
+            for (int i = 0; i < slots.size(); ) {
+                final Slot slot = slots.get(i);
+                if (slot.finished) {
+                    // the order of the slots does not matter
+                    slots.set(i, slots.get(slots.size() - 1));
+                    slots.remove(slots.size() - 1);
+                    hosted.decrementAndGet();
+                    continue;
+                }
+                if (!slot.request()) droppedTicks.increment();
+                if (slot.pending.get() >= lagThreshold) lagging++;
+                i++;
+            }
+            laggingMatches = lagging;
+            nextTick += tickNanos;
+        }
+    }
+
+    /**
+     * Hosts a match from the next tick on, unless the scheduler is {@link #isOverloaded() overloaded}.
+     * Can be called on any thread, including from {@code onFinished}.
+     *
+     * @param match      the match.
+     * @param onFinished called on the task thread of the match when it finishes, with the match and the
+     *                   throwable it threw, or {@code null} if it finished normally.
+     * @return {@code false} if the match was refused.
+     */
+    public boolean host(Match match, BiConsumer<Match, @Nullable Throwable> onFinished) {
+        if (!running) {
+            throw new IllegalStateException("The scheduler is closed");
+        }
+        if (isOverloaded()) return false;
+        hosted.incrementAndGet();
+        added.add(new Slot(match, onFinished));
+        return true;
+    }
+
+    /**
+     * {@return whether any match lags by half of the maximum lag}
+     */
+    public boolean isOverloaded() {
+        return laggingMatches > 0;
+    }
+
+    /**
+     * {@return the count of the matches that lagged by half of the maximum lag at the last tick}
+     */
+    public int laggingMatches() {
+        return laggingMatches;
+    }
+
+    /**
+     * {@return the count of the hosted matches, including the ones that will start at the next tick}
+     */
+    public int hostedMatches() {
+        return hosted.get();
+    }
+
+    /**
+     * {@return the count of the match ticks run}
+     */
+    public long steppedTicks() {
+        return steppedTicks.sum();
+    }
+
+    /**
+     * {@return the count of the match ticks dropped because the match lagged by the maximum lag}
+     */
+    public long droppedTicks() {
+        return droppedTicks.sum();
+    }
+
+    public long finishedMatches() {
+        return finishedMatches.sum();
+    }
+
+    /**
+     * {@return the count of the matches that threw while ticking}
+     */
+    public long failedMatches() {
+        return failedMatches.sum();
+    }
+
+    /**
+     * Stops the scheduler thread. The tasks already submitted to the executor still run.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
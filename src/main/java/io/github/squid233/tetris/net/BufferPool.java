@@ -0,0 +1,52 @@
+package io.github.squid233.tetris.net;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of direct buffers of one size. Buffers are only allocated when the pool is empty, so a steady load
+ * allocates nothing. A pool is confined to one thread.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class BufferPool {
+    private final int bufferSize;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+    private int allocated;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param bufferSize the capacity of the buffers.
+     */
+    public BufferPool(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * {@return a cleared buffer from the pool, or a new one if the pool is empty}
+     */
+    public ByteBuffer acquire() {
+        final ByteBuffer buffer = free.pollLast();
+        if (buffer != null) return buffer;
+        allocated++;
+        return ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Returns a buffer acquired from this pool.
+     *
+     * @param buffer the buffer.
+     */
+    public void release(ByteBuffer buffer) {
+        free.addLast(buffer.clear());
+    }
+
+    /**
+     * {@return the count of the buffers allocated by this pool}
+     */
+    public int allocated() {
+        return allocated;
+    }
+}
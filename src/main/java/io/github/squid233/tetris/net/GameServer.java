@@ -0,0 +1,258 @@
+package io.github.squid233.tetris.net;
+
+import io.github.squid233.tetris.Histogram;
+import io.github.squid233.tetris.Wall;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A server hosting one game per client. The connections are spread over a few {@link ServerLoop loops}, each a
+ * thread with its own selector, so a loop handles thousands of connections without a thread per connection.
+ * The protocol is described in {@link NetProtocol}.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class GameServer implements AutoCloseable {
+    private final int ticksPerSecond;
+    private final int width;
+    private final int visibleHeight;
+    private final ServerSocketChannel serverChannel;
+    private final ServerLoop[] loops;
+    private final Thread[] threads;
+    private final AtomicLong nextSeed = new AtomicLong();
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final LongAdder statesSent = new LongAdder();
+    private final LongAdder fullStatesSent = new LongAdder();
+    private final LongAdder statesSkipped = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+
+    /**
+     * Starts a server.
+     *
+     * @param address        the address to listen on.
+     * @param loopCount      the count of the loops.
+     * @param ticksPerSecond the tick rate of the games.
+     * @param width          the width of the walls.
+     * @param visibleHeight  the visible height of the walls.
+     * @throws IOException if the address cannot be bound.
+     */
+    public GameServer(SocketAddress address, int loopCount, int ticksPerSecond, int width, int visibleHeight) throws IOException {
+        this(address, loopCount, ticksPerSecond, width, visibleHeight, true);
+    }
+
+    /**
+     * Creates a server.
+     *
+     * @param startLoops {@code false} to not start the loop threads, so the loops are only stepped by
+     *                   {@link #loop(int)}{@code .step()}, one tick at a time.
+     */
+    GameServer(SocketAddress address, int loopCount, int ticksPerSecond, int width, int visibleHeight, boolean startLoops) throws IOException {
+        if (loopCount < 1) {
+            throw new IllegalArgumentException("The loop count must be at least 1: " + loopCount);
+        }
+        if (ticksPerSecond < 1 || ticksPerSecond > 0xffff) {
+            throw new IllegalArgumentException("The tick rate must be from 1 to " + 0xffff + ": " + ticksPerSecond);
+        }
+        if (width > NetProtocol.MAX_WALL_SIZE || visibleHeight + Wall.SPAWN_ROWS > NetProtocol.MAX_WALL_SIZE) {
+            throw new IllegalArgumentException("The wall is too large for the protocol: " + width + "x" + visibleHeight);
+        }
+        // validates the size
+        new Wall(width, visibleHeight);
+        this.ticksPerSecond = ticksPerSecond;
+        this.width = width;
+        this.visibleHeight = visibleHeight;
+        this.serverChannel = ServerSocketChannel.open();
+        this.loops = new ServerLoop[loopCount];
+        this.threads = new Thread[loopCount];
+        try {
+            serverChannel.bind(address, 4096);
+            serverChannel.configureBlocking(false);
+            for (int i = 0; i < loopCount; i++) {
+                loops[i] = new ServerLoop(this);
+            }
+            // the first loop accepts the connections and hands them out
+            loops[0].listen(serverChannel);
+        } catch (IOException | RuntimeException e) {
+            serverChannel.close();
+            throw e;
+        }
+        if (!startLoops) return;
+        for (int i = 0; i < loopCount; i++) {
+            threads[i] = new Thread(loops[i], "Server loop " + i);
+            threads[i].start();
+        }
+    }
+
+    ServerLoop loop(int index) {
+        return loops[index];
+    }
+
+    void accept(ServerSocketChannel channel) {
+        try {
+            for (SocketChannel accepted; (accepted = channel.accept()) != null; ) {
+                loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)].add(accepted);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to accept a connection: " + e);
+        }
+    }
+
+    long nextSeed() {
+        return nextSeed.getAndIncrement();
+    }
+
+    void connectionOpened() {
+        connections.incrementAndGet();
+    }
+
+    void connectionClosed() {
+        connections.decrementAndGet();
+    }
+
+    void stateSent(boolean full, int bytes) {
+        statesSent.increment();
+        if (full) fullStatesSent.increment();
+        bytesSent.add(bytes);
+    }
+
+    void stateSkipped() {
+        statesSkipped.increment();
+    }
+
+    public int ticksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int visibleHeight() {
+        return visibleHeight;
+    }
+
+    /**
+     * {@return the address the server listens on}
+     *
+     * @throws IOException if an IO error occurs.
+     */
+    public SocketAddress address() throws IOException {
+        return serverChannel.getLocalAddress();
+    }
+
+    public int connections() {
+        return connections.get();
+    }
+
+    public long statesSent() {
+        return statesSent.sum();
+    }
+
+    /**
+     * {@return the count of the states sent relative to an empty wall}
+     */
+    public long fullStatesSent() {
+        return fullStatesSent.sum();
+    }
+
+    /**
+     * {@return the count of the snapshots not sent because the previous state was still being written}
+     */
+    public long statesSkipped() {
+        return statesSkipped.sum();
+    }
+
+    public long bytesSent() {
+        return bytesSent.sum();
+    }
+
+    /**
+     * {@return the highest percentile of the tick times of all loops in nanoseconds}
+     *
+     * @param percentile the percentile, from {@code 0} to {@code 100}.
+     */
+    public long tickTime(double percentile) {
+        long time = 0;
+        for (ServerLoop loop : loops) {
+            time = Math.max(time, loop.tickTimes().percentile(percentile));
+        }
+        return time;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (ServerLoop loop : loops) {
+            loop.stop();
+        }
+        for (int i = 0; i < loops.length; i++) {
+            if (threads[i] == null) {
+                // never started; the loop closes its connections itself otherwise
+                loops[i].close();
+                continue;
+            }
+            try {
+                threads[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        serverChannel.close();
+    }
+
+    /**
+     * Runs a server and prints its statistics every second.
+     * <p>
+     * Options: {@code --port <port>}, {@code --loops <n>}, {@code --rate <ticks per second>},
+     * {@code --width <columns>}, {@code --height <rows>} and {@code --seconds <seconds>}, {@code 0} to run forever.
+     *
+     * @param args the arguments.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = 7100;
+        int loopCount = Runtime.getRuntime().availableProcessors();
+        int rate = 60;
+        int width = Wall.DEFAULT_WIDTH;
+        int height = Wall.DEFAULT_VISIBLE_HEIGHT;
+        int seconds = 0;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            final String value = args[i + 1];
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(value);
+                case "--loops" -> loopCount = Integer.parseInt(value);
+                case "--rate" -> rate = Integer.parseInt(value);
+                case "--width" -> width = Integer.parseInt(value);
+                case "--height" -> height = Integer.parseInt(value);
+                case "--seconds" -> seconds = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        try (GameServer server = new GameServer(new InetSocketAddress(port), loopCount, rate, width, height)) {
+            System.out.println("Listening on " + server.address());
+            final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            long lastStates = 0;
+            long lastBytes = 0;
+            while (seconds == 0 || System.nanoTime() < end) {
+                TimeUnit.SECONDS.sleep(1);
+                final long states = server.statesSent();
+                final long bytes = server.bytesSent();
+                System.out.printf("%d connections, %d states/s, %.1f KB/s, tick p99 %.2f ms, %d full, %d skipped%n",
+                    server.connections(), states - lastStates, (bytes - lastBytes) / 1024.0,
+                    server.tickTime(99) / 1e6, server.fullStatesSent(), server.statesSkipped());
+                lastStates = states;
+                lastBytes = bytes;
+            }
+        }
+    }
+}
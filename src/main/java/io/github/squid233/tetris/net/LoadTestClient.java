@@ -0,0 +1,281 @@
+package io.github.squid233.tetris.net;
+
+import io.github.squid233.tetris.GameInput;
+import io.github.squid233.tetris.Histogram;
+import io.github.squid233.tetris.Wall;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Simulates many clients of a {@link GameServer} on one thread and measures the latency of the states.
+ * <p>
+ * Each client sends a random input every tick and keeps a {@link RemoteGame} in sync with the states. The latency
+ * of a state is the time since the client sent the input the server echoed in it, so it includes the wait for the
+ * next server tick.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class LoadTestClient {
+    private final Selector selector;
+    private final ArrayList<Client> clients = new ArrayList<>();
+    private final Histogram latencies = new Histogram();
+    private int connected;
+    private long statesReceived;
+    private long bytesReceived;
+    private long errors;
+
+    private LoadTestClient() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    private final class Client {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final SplittableRandom random;
+        private final ByteBuffer out = ByteBuffer.allocateDirect(NetProtocol.INPUT_SIZE);
+        // only holds the hello until the size of the wall is known
+        private ByteBuffer in = ByteBuffer.allocateDirect(NetProtocol.HELLO_SIZE);
+        private RemoteGame game;
+        private boolean isConnected;
+
+        Client(SocketAddress address, long seed) throws IOException {
+            this.random = new SplittableRandom(seed);
+            this.channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            if (channel.connect(address)) {
+                this.key = channel.register(selector, SelectionKey.OP_READ, this);
+                isConnected = true;
+                connected++;
+            } else {
+                this.key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+            }
+        }
+
+        void finishConnect() throws IOException {
+            if (channel.finishConnect()) {
+                key.interestOps(SelectionKey.OP_READ);
+                isConnected = true;
+                connected++;
+            }
+        }
+
+        void read() throws IOException {
+            while (true) {
+                final int read = channel.read(in);
+                if (read < 0) throw new IOException("Closed by the server");
+                if (read == 0) break;
+                bytesReceived += read;
+                in.flip();
+                parse();
+                in.compact();
+            }
+        }
+
+        private void parse() {
+            while (in.remaining() >= 4) {
+                final int start = in.position();
+                final int end = start + 4 + in.getInt(start);
+                if (end > in.limit()) break;
+                final int limit = in.limit();
+                in.position(start + 4).limit(end);
+                final byte type = in.get();
+                switch (type) {
+                    case NetProtocol.HELLO -> hello();
+                    case NetProtocol.STATE -> {
+                        if (game == null) throw new IllegalStateException("State before the hello");
+                        if (game.apply(in)) {
+                            statesReceived++;
+                            // the first states may come before any input
+                            if (game.echoTime() != 0) latencies.record(System.nanoTime() - game.echoTime());
+                        }
+                    }
+                    default -> throw new IllegalStateException("Unknown message " + type);
+                }
+                in.limit(limit).position(end);
+                if (type == NetProtocol.HELLO) {
+                    // the states are larger than the hello
+                    final ByteBuffer rest = in.slice();
+                    in = ByteBuffer.allocateDirect(NetProtocol.STATE_HEADER_SIZE +
+                        NetProtocol.maxRowsSize(game.wall().width(), game.wall().height()));
+                    in.put(rest).flip();
+                }
+            }
+        }
+
+        private void hello() {
+            final int version = in.get();
+            if (version != NetProtocol.VERSION) {
+                throw new IllegalStateException("Unsupported protocol version " + version);
+            }
+            final int width = in.getShort() & 0xffff;
+            final int visibleHeight = in.getShort() & 0xffff;
+            in.getShort();
+            game = new RemoteGame(width, visibleHeight);
+        }
+
+        void sendInput(long time) throws IOException {
+            if (game == null) return;
+            // a client that cannot keep up skips the input
+            if (out.hasRemaining() && out.position() != 0) {
+                channel.write(out);
+                return;
+            }
+            final int input = random.nextInt(4) == 0 ? 1 << random.nextInt(6) : GameInput.NONE;
+            out.clear()
+                .put(NetProtocol.INPUT)
+                .put((byte) input)
+                .putInt(game.snapshot())
+                .putLong(time)
+                .flip();
+            channel.write(out);
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        final Client client = (Client) key.attachment();
+        try {
+            if (key.isConnectable()) {
+                client.finishConnect();
+            } else if (key.isReadable()) {
+                client.read();
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(client, e);
+        }
+    }
+
+    private void fail(Client client, Exception e) {
+        if (errors++ == 0) System.err.println("Client failed: " + e);
+        client.close();
+        clients.remove(client);
+        if (client.isConnected) connected--;
+    }
+
+    /**
+     * Runs the load test.
+     * <p>
+     * Options: {@code --host <host>}, {@code --port <port>}, {@code --clients <n>}, {@code --rate <inputs per second>},
+     * {@code --seconds <seconds>}, and {@code --server true} to start a server on the loopback address in this process,
+     * with {@code --loops <n>} loops.
+     *
+     * @param args the arguments.
+     */
+    public static void main(String[] args) throws IOException {
+        String host = "localhost";
+        int port = 7100;
+        int clientCount = 1000;
+        int rate = 60;
+        int seconds = 10;
+        boolean startServer = false;
+        int loopCount = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            final String value = args[i + 1];
+            switch (args[i]) {
+                case "--host" -> host = value;
+                case "--port" -> port = Integer.parseInt(value);
+                case "--clients" -> clientCount = Integer.parseInt(value);
+                case "--rate" -> rate = Integer.parseInt(value);
+                case "--seconds" -> seconds = Integer.parseInt(value);
+                case "--server" -> startServer = Boolean.parseBoolean(value);
+                case "--loops" -> loopCount = Integer.parseInt(value);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        final GameServer server = startServer
+            ? new GameServer(new InetSocketAddress("127.0.0.1", 0), loopCount, rate, Wall.DEFAULT_WIDTH, Wall.DEFAULT_VISIBLE_HEIGHT)
+            : null;
+        try {
+            final SocketAddress address = server != null ? server.address() : new InetSocketAddress(host, port);
+            new LoadTestClient().run(address, clientCount, rate, seconds);
+        } finally {
+            if (server != null) {
+                server.close();
+                System.out.printf("server: %d states sent, %d full, %d skipped, tick p99 %.2f ms%n",
+                    server.statesSent(), server.fullStatesSent(), server.statesSkipped(), server.tickTime(99) / 1e6);
+            }
+        }
+    }
+
+    private void run(SocketAddress address, int clientCount, int rate, int seconds) throws IOException {
+        for (int i = 0; i < clientCount; i++) {
+            clients.add(new Client(address, i));
+        }
+
+        final long tickNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long nextTick = start;
+        long nextReport = start + TimeUnit.SECONDS.toNanos(1);
+        long lastStates = 0;
+        long lastBytes = 0;
+        long totalLatencyP99 = 0;
+        int reports = 0;
+        try {
+            while (true) {
+                final long now = System.nanoTime();
+                if (now - end >= 0) break;
+                if (now - nextReport >= 0) {
+                    System.out.printf("%d connected, %d states/s, %.1f KB/s, latency p50 %d us, p99 %d us, max %d us%n",
+                        connected, statesReceived - lastStates, (bytesReceived - lastBytes) / 1024.0,
+                        latencies.percentile(50) / 1000, latencies.percentile(99) / 1000, latencies.max() / 1000);
+                    totalLatencyP99 += latencies.percentile(99);
+                    reports++;
+                    latencies.reset();
+                    lastStates = statesReceived;
+                    lastBytes = bytesReceived;
+                    nextReport += TimeUnit.SECONDS.toNanos(1);
+                }
+                final long wait = nextTick - now;
+                if (wait > 0) {
+                    final long millis = TimeUnit.NANOSECONDS.toMillis(wait);
+                    if (millis > 0) {
+                        selector.select(this::handle, millis);
+                    } else {
+                        selector.selectNow(this::handle);
+                        LockSupport.parkNanos(wait);
+                    }
+                    continue;
+                }
+                selector.selectNow(this::handle);
+                for (int i = clients.size() - 1; i >= 0; i--) {
+                    final Client client = clients.get(i);
+                    try {
+                        client.sendInput(now);
+                    } catch (IOException e) {
+                        fail(client, e);
+                    }
+                }
+                nextTick = Math.max(nextTick + tickNanos, now);
+            }
+        } finally {
+            for (Client client : clients) {
+                client.close();
+            }
+            selector.close();
+        }
+        System.out.printf("%d clients: %.0f states/s, mean p99 latency %d us, %d errors%n",
+            clientCount, statesReceived / ((System.nanoTime() - start) / 1e9),
+            reports > 0 ? totalLatencyP99 / reports / 1000 : 0, errors);
+    }
+}
@@ -0,0 +1,55 @@
+package io.github.squid233.tetris.net;
+
+/**
+ * The network protocol.
+ * <pre>{@code
+ * client -> server, fixed size:
+ *   input: u8 INPUT, u8 input bits, i32 acknowledged snapshot, i64 client time
+ * server -> client, each prefixed with the i32 size of the rest:
+ *   hello: u8 HELLO, u8 version, u16 wall width, u16 visible wall height, u16 ticks per second
+ *   state: u8 STATE, i32 snapshot, i32 base snapshot, i64 echoed client time, i64 ticks, i64 score, i32 lines,
+ *          u8 game over, u8 piece type, u8 direction, i16 x, i16 y, u16 row count,
+ *          rows: u16 y, one CellType ordinal byte per column
+ * }</pre>
+ * All numbers are big-endian. The client sends one input per tick; the server ORs the inputs received between two
+ * ticks, and echoes the client time of the last one so the client can measure the latency.
+ * <p>
+ * The snapshots are numbered from 1. A state only contains the rows changed since its base snapshot, the last
+ * snapshot the client acknowledged, so the client applies it on top of the newest snapshot it has. The base
+ * {@link #FULL} means the rows are relative to an empty wall. The server does not queue states: while a state
+ * is still being written, the snapshots of the next ticks are skipped and the next state covers them.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+final class NetProtocol {
+    static final int VERSION = 1;
+    static final byte INPUT = 1;
+    static final byte HELLO = 2;
+    static final byte STATE = 3;
+    /**
+     * The base snapshot of a state relative to an empty wall.
+     */
+    static final int FULL = 0;
+    static final int NO_PIECE = 0xff;
+    static final int INPUT_SIZE = 1 + 1 + 4 + 8;
+    static final int HELLO_SIZE = 4 + 1 + 1 + 2 + 2 + 2;
+    static final int STATE_HEADER_SIZE = 4 + 1 + 4 + 4 + 8 + 8 + 8 + 4 + 1 + 1 + 1 + 2 + 2 + 2;
+    /**
+     * The maximum size of the wall in either direction, limited by the signed shorts of the piece position.
+     */
+    static final int MAX_WALL_SIZE = Short.MAX_VALUE;
+
+    private NetProtocol() {
+    }
+
+    /**
+     * {@return the maximum size of the rows of a state}
+     *
+     * @param width  the width of the wall.
+     * @param height the height of the wall, including the spawn rows.
+     */
+    static int maxRowsSize(int width, int height) {
+        return height * (2 + width);
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.squid233.tetris.net;
+
+import io.github.squid233.tetris.CellState;
+import io.github.squid233.tetris.CellStateType;
+import io.github.squid233.tetris.Direction;
+import io.github.squid233.tetris.Wall;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The client copy of a game hosted by a {@link GameServer}, rebuilt from the states it sends.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class RemoteGame {
+    private final CellState piece = new CellState();
+    private Wall wall;
+    private int snapshot = NetProtocol.FULL;
+    private long echoTime;
+    private long ticks;
+    private long score;
+    private int lines;
+    private boolean gameOver;
+    private boolean hasPiece;
+
+    /**
+     * Creates a game with an empty wall.
+     *
+     * @param width         the width of the wall from the hello message.
+     * @param visibleHeight the visible height of the wall from the hello message.
+     */
+    public RemoteGame(int width, int visibleHeight) {
+        this.wall = new Wall(width, visibleHeight);
+    }
+
+    /**
+     * Applies a state message. The buffer contains the message after its type, and is read to its limit.
+     *
+     * @param src the message.
+     * @return {@code true} if the state was applied; {@code false} if it is older than the current snapshot.
+     * @throws IllegalStateException if the base of the state is newer than the current snapshot.
+     */
+    public boolean apply(ByteBuffer src) {
+        final int newSnapshot = src.getInt();
+        final int base = src.getInt();
+        if (newSnapshot <= snapshot) {
+            src.position(src.limit());
+            return false;
+        }
+        if (base > snapshot) {
+            throw new IllegalStateException("The base snapshot " + base + " is newer than " + snapshot);
+        }
+        echoTime = src.getLong();
+        ticks = src.getLong();
+        score = src.getLong();
+        lines = src.getInt();
+        gameOver = src.get() != 0;
+        final int type = src.get() & 0xff;
+        final int direction = src.get();
+        final int x = src.getShort();
+        final int y = src.getShort();
+        final int rowCount = src.getShort() & 0xffff;
+        if (base == NetProtocol.FULL) {
+            wall = new Wall(wall.width(), wall.visibleHeight());
+        }
+        for (int i = 0; i < rowCount; i++) {
+            wall.setRow(src.getShort() & 0xffff, src);
+        }
+        hasPiece = type != NetProtocol.NO_PIECE;
+        if (hasPiece) {
+            piece.set(CellStateType.byId(type), Direction.byId(direction), x, y);
+        }
+        snapshot = newSnapshot;
+        return true;
+    }
+
+    public Wall wall() {
+        return wall;
+    }
+
+    /**
+     * {@return the piece, or {@code null} if there is none}
+     */
+    public @Nullable CellState piece() {
+        return hasPiece ? piece : null;
+    }
+
+    /**
+     * {@return the newest applied snapshot, acknowledged in the next input}
+     */
+    public int snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * {@return the client time of the last input the server received before the newest snapshot}
+     */
+    public long echoTime() {
+        return echoTime;
+    }
+
+    public long ticks() {
+        return ticks;
+    }
+
+    public long score() {
+        return score;
+    }
+
+    public int lines() {
+        return lines;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+}
@@ -0,0 +1,209 @@
+package io.github.squid233.tetris.net;
+
+import io.github.squid233.tetris.CellState;
+import io.github.squid233.tetris.CellStateType;
+import io.github.squid233.tetris.GameInput;
+import io.github.squid233.tetris.GameSimulation;
+import io.github.squid233.tetris.PieceGenerator;
+import io.github.squid233.tetris.Wall;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A client connected to a {@link ServerLoop}, playing its own game. Confined to the thread of the loop.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+final class ServerConnection {
+    /**
+     * The count of the sent snapshots remembered as bases for the next states.
+     */
+    static final int HISTORY = 64;
+    private final ServerLoop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final ByteBuffer in = ByteBuffer.allocateDirect(NetProtocol.INPUT_SIZE * 16);
+    // the header and the rows of the state being written, or null
+    private final ByteBuffer[] out = new ByteBuffer[2];
+    private final long[] historyModCount = new long[HISTORY];
+    private final int[] historyTop = new int[HISTORY];
+    private GameSimulation simulation;
+    private int input = GameInput.NONE;
+    private int acked = NetProtocol.FULL;
+    private long echoTime;
+    private int sequence;
+    /**
+     * The first snapshot of the current game; older snapshots are of other walls and cannot be bases.
+     */
+    private int gameStart = 1;
+    private boolean writeInterest;
+
+    ServerConnection(ServerLoop loop, SocketChannel channel, SelectionKey key, GameSimulation simulation) {
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+        this.simulation = simulation;
+    }
+
+    GameSimulation simulation() {
+        return simulation;
+    }
+
+    void sendHello() throws IOException {
+        final Wall wall = simulation.wall();
+        final ByteBuffer header = loop.headers().acquire();
+        header.putInt(NetProtocol.HELLO_SIZE - 4)
+            .put(NetProtocol.HELLO)
+            .put((byte) NetProtocol.VERSION)
+            .putShort((short) wall.width())
+            .putShort((short) wall.visibleHeight())
+            .putShort((short) loop.server().ticksPerSecond())
+            .flip();
+        out[0] = header;
+        out[1] = loop.rows().acquire().flip();
+        flush();
+    }
+
+    /**
+     * Reads the inputs.
+     *
+     * @return {@code false} if the connection was closed by the client.
+     * @throws IOException if an IO error occurs.
+     * @throws IllegalStateException if the client sent an unknown message.
+     */
+    boolean read() throws IOException {
+        if (channel.read(in) < 0) return false;
+        in.flip();
+        while (in.remaining() >= NetProtocol.INPUT_SIZE) {
+            final byte type = in.get();
+            if (type != NetProtocol.INPUT) {
+                throw new IllegalStateException("Unknown message " + type);
+            }
+            input |= in.get() & GameInput.MASK;
+            final int ack = in.getInt();
+            // an acknowledgement of a snapshot not sent yet is ignored
+            if (ack > acked && ack <= sequence) acked = ack;
+            echoTime = in.getLong();
+        }
+        in.compact();
+        return true;
+    }
+
+    /**
+     * Steps the game with the inputs received since the last tick and sends the state.
+     *
+     * @throws IOException if an IO error occurs.
+     */
+    void tick() throws IOException {
+        if (simulation.isGameOver()) {
+            simulation = new GameSimulation(loop.server().nextSeed(), PieceGenerator.Mode.BAG_7,
+                simulation.wall().width(), simulation.wall().visibleHeight());
+            gameStart = sequence + 1;
+        }
+        simulation.tick(input);
+        input = GameInput.NONE;
+        if (out[0] != null) {
+            // still writing; the next state covers this snapshot
+            loop.server().stateSkipped();
+            return;
+        }
+        encodeState();
+        flush();
+    }
+
+    private void encodeState() {
+        final Wall wall = simulation.wall();
+        final int snapshot = ++sequence;
+        final boolean full = acked < gameStart || acked <= snapshot - HISTORY;
+        final int base = full ? NetProtocol.FULL : acked;
+        final long baseModCount = full ? -1 : historyModCount[base % HISTORY];
+        historyModCount[snapshot % HISTORY] = wall.modCount();
+        historyTop[snapshot % HISTORY] = wall.top();
+        // the client may have any snapshot from the base on, and the rows at and above all their tops are empty
+        int end = wall.top();
+        if (!full) {
+            for (int s = base; s < snapshot; s++) {
+                end = Math.max(end, historyTop[s % HISTORY]);
+            }
+        }
+
+        final ByteBuffer rows = loop.rows().acquire();
+        int rowCount = 0;
+        for (int y = 0; y < end; y++) {
+            if (wall.rowStamp(y) > baseModCount) {
+                rows.putShort((short) y);
+                wall.getRow(y, rows);
+                rowCount++;
+            }
+        }
+        rows.flip();
+
+        final CellState piece = simulation.holdState();
+        final CellStateType type = piece.type();
+        final ByteBuffer header = loop.headers().acquire();
+        header.putInt(NetProtocol.STATE_HEADER_SIZE - 4 + rows.remaining())
+            .put(NetProtocol.STATE)
+            .putInt(snapshot)
+            .putInt(base)
+            .putLong(echoTime)
+            .putLong(simulation.ticks())
+            .putLong(simulation.score())
+            .putInt((int) simulation.lines())
+            .put((byte) (simulation.isGameOver() ? 1 : 0))
+            .put((byte) (type != null ? type.ordinal() : NetProtocol.NO_PIECE))
+            .put((byte) piece.direction().ordinal())
+            .putShort((short) piece.x())
+            .putShort((short) piece.y())
+            .putShort((short) rowCount)
+            .flip();
+        out[0] = header;
+        out[1] = rows;
+        loop.server().stateSent(full, NetProtocol.STATE_HEADER_SIZE + rows.remaining());
+    }
+
+    /**
+     * Writes the pending message with one gathering write, and waits for the socket to be writable if it could not
+     * be written at once.
+     *
+     * @throws IOException if an IO error occurs.
+     */
+    void flush() throws IOException {
+        if (out[0] == null) return;
+        channel.write(out);
+        // the rows are empty in the hello and in most states, so the header may be the part left
+        final boolean done = !out[0].hasRemaining() && !out[1].hasRemaining();
+        if (done) {
+            loop.headers().release(out[0]);
+            loop.rows().release(out[1]);
+            out[0] = null;
+            out[1] = null;
+        }
+        if (writeInterest == done) {
+            writeInterest = !done;
+            key.interestOps(done ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    boolean isClosed() {
+        return !channel.isOpen();
+    }
+
+    void close() {
+        if (!channel.isOpen()) return;
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        if (out[0] != null) {
+            loop.headers().release(out[0]);
+            loop.rows().release(out[1]);
+            out[0] = null;
+            out[1] = null;
+        }
+    }
+}
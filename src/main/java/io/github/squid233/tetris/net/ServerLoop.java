@@ -0,0 +1,203 @@
+package io.github.squid233.tetris.net;
+
+import io.github.squid233.tetris.GameSimulation;
+import io.github.squid233.tetris.Histogram;
+import io.github.squid233.tetris.PieceGenerator;
+import io.github.squid233.tetris.Wall;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A thread with one selector that reads the inputs of its connections, steps their games at the tick rate and
+ * writes their states. The buffers are pooled per loop, so the loops share nothing but the counters of the server.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+final class ServerLoop implements Runnable {
+    private final GameServer server;
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+    private final ArrayList<ServerConnection> connections = new ArrayList<>();
+    private final BufferPool headers = new BufferPool(NetProtocol.STATE_HEADER_SIZE);
+    private final BufferPool rows;
+    private final Histogram tickTimes = new Histogram();
+    private volatile boolean running = true;
+
+    ServerLoop(GameServer server) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+        this.rows = new BufferPool(NetProtocol.maxRowsSize(server.width(), server.visibleHeight() + Wall.SPAWN_ROWS));
+    }
+
+    GameServer server() {
+        return server;
+    }
+
+    BufferPool headers() {
+        return headers;
+    }
+
+    BufferPool rows() {
+        return rows;
+    }
+
+    /**
+     * {@return the time of each tick of this loop in nanoseconds}
+     */
+    Histogram tickTimes() {
+        return tickTimes;
+    }
+
+    void listen(ServerSocketChannel serverChannel) throws IOException {
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Hands a new connection to this loop. Can be called on any thread.
+     *
+     * @param channel the connection.
+     */
+    void add(SocketChannel channel) {
+        accepted.add(channel);
+        selector.wakeup();
+    }
+
+    private void register() {
+        for (SocketChannel channel; (channel = accepted.poll()) != null; ) {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                final SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                final ServerConnection connection = new ServerConnection(this, channel, key,
+                    new GameSimulation(server.nextSeed(), PieceGenerator.Mode.BAG_7, server.width(), server.visibleHeight()));
+                key.attach(connection);
+                connections.add(connection);
+                server.connectionOpened();
+                connection.sendHello();
+            } catch (IOException e) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        if (key.isAcceptable()) {
+            server.accept((ServerSocketChannel) key.channel());
+            return;
+        }
+        final ServerConnection connection = (ServerConnection) key.attachment();
+        try {
+            if (key.isReadable() && !connection.read()) {
+                close(connection);
+                return;
+            }
+            if (key.isValid() && key.isWritable()) connection.flush();
+        } catch (IOException | RuntimeException e) {
+            close(connection);
+        }
+    }
+
+    private void close(ServerConnection connection) {
+        // the closed connections are removed at the next tick
+        connection.close();
+    }
+
+    private void tick() {
+        for (int i = 0; i < connections.size(); ) {
+            final ServerConnection connection = connections.get(i);
+            if (connection.isClosed()) {
+                // the order of the connections does not matter
+                connections.set(i, connections.get(connections.size() - 1));
+                connections.remove(connections.size() - 1);
+                server.connectionClosed();
+                continue;
+            }
+            try {
+                connection.tick();
+            } catch (IOException | RuntimeException e) {
+                close(connection);
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Runs the ticks at a fixed rate and handles the IO between them.
+     * If the ticks fall behind by more than a second, the missed ticks are dropped.
+     */
+    @Override
+    public void run() {
+        final long tickNanos = TimeUnit.SECONDS.toNanos(1) / server.ticksPerSecond();
+        long nextTick = System.nanoTime();
+        try {
+            while (running) {
+                final long now = System.nanoTime();
+                final long wait = nextTick - now;
+                if (wait > 0) {
+                    final long millis = TimeUnit.NANOSECONDS.toMillis(wait);
+                    if (millis > 0) {
+                        selector.select(this::handle, millis);
+                    } else {
+                        selector.selectNow(this::handle);
+                        LockSupport.parkNanos(wait);
+                    }
+                    continue;
+                }
+                if (-wait > TimeUnit.SECONDS.toNanos(1)) {
+                    nextTick = now;
+                }
+                step();
+                tickTimes.record(System.nanoTime() - now);
+                nextTick += tickNanos;
+            }
+        } catch (IOException e) {
+            System.err.println("Server loop failed: " + e);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Handles the pending IO, registers the new connections and ticks all games once.
+     *
+     * @throws IOException if the selector fails.
+     */
+    void step() throws IOException {
+        // a loop behind its ticks still handles the IO before each tick
+        selector.selectNow(this::handle);
+        register();
+        tick();
+    }
+
+    List<ServerConnection> connections() {
+        return connections;
+    }
+
+    void close() {
+        for (ServerConnection connection : connections) {
+            connection.close();
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+}
@@ -0,0 +1,195 @@
+package io.github.squid233.tetris.replay;
+
+import io.github.squid233.tetris.GameSimulation;
+import io.github.squid233.tetris.PieceGenerator;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentScope;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * A memory-mapped replay file.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class Replay {
+    private final MemorySegment segment;
+    private final PieceGenerator.Mode mode;
+    private final long seed;
+    private final int width;
+    private final int visibleHeight;
+    private final long bodyEnd;
+
+    private Replay(Path path, MemorySegment segment) {
+        this.segment = segment;
+        final long size = segment.byteSize();
+        if (size < ReplayFormat.HEADER_SIZE + ReplayFormat.FOOTER_SIZE ||
+            segment.get(ReplayFormat.INT, 0) != ReplayFormat.MAGIC ||
+            segment.get(ReplayFormat.INT, size - 4) != ReplayFormat.END_MAGIC) {
+            throw new IllegalStateException("Not a complete replay: " + path);
+        }
+        final int version = segment.get(ValueLayout.JAVA_BYTE, 4);
+        if (version != ReplayFormat.VERSION) {
+            throw new IllegalStateException("Unsupported replay version " + version + ": " + path);
+        }
+        mode = PieceGenerator.Mode.byId(segment.get(ValueLayout.JAVA_BYTE, 5));
+        seed = segment.get(ReplayFormat.LONG, 6);
+        width = segment.get(ReplayFormat.INT, 14);
+        visibleHeight = segment.get(ReplayFormat.INT, 18);
+        bodyEnd = size - ReplayFormat.FOOTER_SIZE;
+    }
+
+    /**
+     * Maps a replay file.
+     *
+     * @param path  the replay file.
+     * @param scope the segment scope. must be alive until the replay is no longer used.
+     * @return the replay.
+     * @throws IOException if an IO error occurs.
+     */
+    public static Replay open(Path path, SegmentScope scope) throws IOException {
+        try (var fc = FileChannel.open(path)) {
+            return new Replay(path, fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size(), scope));
+        }
+    }
+
+    public PieceGenerator.Mode mode() {
+        return mode;
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * {@return the count of the columns of the wall}
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * {@return the count of the visible rows of the wall}
+     */
+    public int visibleHeight() {
+        return visibleHeight;
+    }
+
+    public long ticks() {
+        return segment.get(ReplayFormat.LONG, bodyEnd);
+    }
+
+    public long pieces() {
+        return segment.get(ReplayFormat.LONG, bodyEnd + 8);
+    }
+
+    public long lines() {
+        return segment.get(ReplayFormat.LONG, bodyEnd + 16);
+    }
+
+    public long score() {
+        return segment.get(ReplayFormat.LONG, bodyEnd + 24);
+    }
+
+    /**
+     * {@return a cursor over the recorded inputs}
+     */
+    public Inputs inputs() {
+        return new Inputs();
+    }
+
+    /**
+     * Simulates the replay up to the given tick.
+     *
+     * @param tick the count of the ticks to simulate.
+     * @return the game at the given tick, or at the end of the replay.
+     */
+    public GameSimulation seek(long tick) {
+        final GameSimulation simulation = new GameSimulation(seed, mode, width, visibleHeight);
+        final Inputs inputs = inputs();
+        long remaining = tick;
+        while (remaining > 0 && inputs.nextRun()) {
+            final int input = inputs.runInput();
+            final long count = Math.min(inputs.runLength(), remaining);
+            for (long i = 0; i < count; i++) {
+                simulation.tick(input);
+            }
+            remaining -= count;
+        }
+        return simulation;
+    }
+
+    /**
+     * Simulates the whole replay and compares the game with the recorded summary.
+     *
+     * @return {@code true} if the game matches.
+     */
+    public boolean verify() {
+        final GameSimulation simulation = seek(Long.MAX_VALUE);
+        return simulation.ticks() == ticks() &&
+               simulation.pieces() == pieces() &&
+               simulation.lines() == lines() &&
+               simulation.score() == score();
+    }
+
+    /**
+     * A cursor over the runs of the same input, or over single ticks with {@link #nextInput()}.
+     */
+    public final class Inputs {
+        private long pos = ReplayFormat.HEADER_SIZE;
+        private int runInput;
+        private long runLength;
+
+        private Inputs() {
+        }
+
+        /**
+         * Moves to the next run.
+         *
+         * @return {@code false} if there are no more runs.
+         */
+        public boolean nextRun() {
+            if (pos >= bodyEnd) return false;
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = segment.get(ValueLayout.JAVA_BYTE, pos++);
+                value |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            runInput = (int) (value & ((1 << ReplayFormat.INPUT_BITS) - 1));
+            runLength = (value >>> ReplayFormat.INPUT_BITS) + 1;
+            return true;
+        }
+
+        public int runInput() {
+            return runInput;
+        }
+
+        public long runLength() {
+            return runLength;
+        }
+
+        public boolean hasNext() {
+            return runLength > 0 || pos < bodyEnd;
+        }
+
+        /**
+         * {@return the input of the next tick}
+         *
+         * @throws IllegalStateException if there are no more inputs.
+         */
+        public int nextInput() {
+            if (runLength == 0 && !nextRun()) {
+                throw new IllegalStateException("No more inputs");
+            }
+            runLength--;
+            return runInput;
+        }
+    }
+}
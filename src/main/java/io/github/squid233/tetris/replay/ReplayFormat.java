@@ -0,0 +1,43 @@
+package io.github.squid233.tetris.replay;
+
+import io.github.squid233.tetris.GameInput;
+
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The replay file format.
+ * <pre>{@code
+ * header: magic "TRPL", u8 version, u8 piece generator mode, i64 seed, i32 wall width, i32 visible wall height
+ * body:   runs of the same input, each a varint of ((run length - 1) << INPUT_BITS | input bits)
+ * footer: i64 ticks, i64 pieces, i64 lines, i64 score, magic "TEND"
+ * }</pre>
+ * All fixed-size numbers are big-endian. The varints are unsigned LEB128.
+ * The footer has a fixed size, so the summary of a replay can be read without decoding the body.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+final class ReplayFormat {
+    static final int MAGIC = 0x5452504c;
+    static final int END_MAGIC = 0x54454e44;
+    static final int VERSION = 3;
+    static final int HEADER_SIZE = 4 + 1 + 1 + 8 + 4 + 4;
+    static final int FOOTER_SIZE = 8 * 4 + 4;
+    static final int MAX_VARINT_SIZE = 10;
+    static final int INPUT_BITS = Integer.SIZE - Integer.numberOfLeadingZeros(GameInput.MASK);
+    static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private ReplayFormat() {
+    }
+
+    static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.squid233.tetris.replay;
+
+import io.github.squid233.tetris.GameSimulation;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records the inputs of a game.
+ * <p>
+ * {@link #record(int)} only extends the current run in most ticks. A run is encoded when the input changes,
+ * and full buffers are written by the {@link ReplayWriter}.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ReplayRecorder {
+    private final ReplayWriter writer;
+    private final FileChannel channel;
+    private ByteBuffer buffer;
+    private int runInput = -1;
+    private long runLength = 0;
+
+    ReplayRecorder(ReplayWriter writer, FileChannel channel, GameSimulation simulation) {
+        this.writer = writer;
+        this.channel = channel;
+        buffer = writer.acquire();
+        buffer.putInt(ReplayFormat.MAGIC)
+            .put((byte) ReplayFormat.VERSION)
+            .put((byte) simulation.generator().mode().ordinal())
+            .putLong(simulation.seed())
+            .putInt(simulation.wall().width())
+            .putInt(simulation.wall().visibleHeight());
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes) {
+            writer.submit(channel, buffer, false);
+            buffer = writer.acquire();
+        }
+    }
+
+    private void flushRun() {
+        if (runLength == 0) return;
+        ensure(ReplayFormat.MAX_VARINT_SIZE);
+        ReplayFormat.putVarint(buffer, (runLength - 1) << ReplayFormat.INPUT_BITS | runInput);
+    }
+
+    /**
+     * Records the input of a tick.
+     *
+     * @param input the {@link io.github.squid233.tetris.GameInput GameInput} bits passed to the simulation.
+     */
+    public void record(int input) {
+        if (input == runInput) {
+            runLength++;
+            return;
+        }
+        flushRun();
+        runInput = input;
+        runLength = 1;
+    }
+
+    /**
+     * Writes the summary of the game and closes the file.
+     *
+     * @param simulation the recorded game.
+     */
+    public void finish(GameSimulation simulation) {
+        flushRun();
+        runLength = 0;
+        ensure(ReplayFormat.FOOTER_SIZE);
+        buffer.putLong(simulation.ticks())
+            .putLong(simulation.pieces())
+            .putLong(simulation.lines())
+            .putLong(simulation.score())
+            .putInt(ReplayFormat.END_MAGIC);
+        writer.submit(channel, buffer, true);
+        buffer = null;
+    }
+}
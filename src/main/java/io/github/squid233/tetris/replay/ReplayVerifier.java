@@ -0,0 +1,48 @@
+package io.github.squid233.tetris.replay;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Re-simulates every replay in a directory in parallel and checks them against their summaries.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ReplayVerifier {
+    private ReplayVerifier() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        final Path dir = Path.of(args.length > 0 ? args[0] : "replays");
+        final List<Path> files;
+        try (Stream<Path> stream = Files.walk(dir)) {
+            files = stream.filter(Files::isRegularFile).toList();
+        }
+        final LongAdder failed = new LongAdder();
+        final LongAdder ticks = new LongAdder();
+        final long start = System.nanoTime();
+        files.parallelStream().forEach(path -> {
+            try (Arena arena = Arena.openConfined()) {
+                final Replay replay = Replay.open(path, arena.scope());
+                if (replay.verify()) {
+                    ticks.add(replay.ticks());
+                } else {
+                    failed.increment();
+                    System.err.println("Mismatch: " + path);
+                }
+            } catch (Exception e) {
+                failed.increment();
+                System.err.println("Failed to read " + path + ": " + e.getMessage());
+            }
+        });
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d replays, %d failed, %d ticks in %.3f s (%.0f ticks/s)%n",
+            files.size(), failed.sum(), ticks.sum(), seconds, ticks.sum() / seconds);
+    }
+}
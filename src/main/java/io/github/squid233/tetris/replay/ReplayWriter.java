@@ -0,0 +1,130 @@
+package io.github.squid233.tetris.replay;
+
+import io.github.squid233.tetris.GameSimulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Writes the replays on a background thread.
+ * <p>
+ * The recorders fill pooled buffers and hand the full ones to this writer, so the tick loop never waits for IO
+ * unless the writer falls behind by the whole queue.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+public final class ReplayWriter implements AutoCloseable {
+    private static final Chunk STOP = new Chunk(null, null, true);
+    private final int bufferSize;
+    private final BlockingQueue<Chunk> queue;
+    private final ConcurrentLinkedQueue<ByteBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile IOException failure;
+
+    private record Chunk(FileChannel channel, ByteBuffer buffer, boolean last) {
+    }
+
+    /**
+     * Creates the writer and starts its thread.
+     *
+     * @param bufferSize    the size of each buffer.
+     * @param queueCapacity the count of the full buffers that can wait for writing.
+     */
+    public ReplayWriter(int bufferSize, int queueCapacity) {
+        this.bufferSize = bufferSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        thread = new Thread(this::run, "Replay Writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public ReplayWriter() {
+        this(64 * 1024, 64);
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                final Chunk chunk = queue.take();
+                if (chunk == STOP) return;
+                final ByteBuffer buffer = chunk.buffer().flip();
+                try {
+                    while (buffer.hasRemaining()) {
+                        chunk.channel().write(buffer);
+                    }
+                    if (chunk.last()) chunk.channel().close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+                freeBuffers.offer(buffer.clear());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkFailure() {
+        final IOException e = failure;
+        if (e != null) {
+            throw new IllegalStateException("Failed to write replay", e);
+        }
+    }
+
+    ByteBuffer acquire() {
+        final ByteBuffer buffer = freeBuffers.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    void submit(FileChannel channel, ByteBuffer buffer, boolean last) {
+        checkFailure();
+        try {
+            queue.put(new Chunk(channel, buffer, last));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while submitting replay data", e);
+        }
+    }
+
+    /**
+     * Starts recording a game into a file.
+     *
+     * @param path       the replay file. replaced if it exists.
+     * @param simulation the game to record. must not be ticked yet,
+     *                   and its generator must be a built-in generator with the default preview length.
+     * @return the recorder.
+     */
+    public ReplayRecorder open(Path path, GameSimulation simulation) {
+        checkFailure();
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open replay " + path, e);
+        }
+        return new ReplayRecorder(this, channel, simulation);
+    }
+
+    /**
+     * Writes the remaining buffers and stops the thread.
+     */
+    @Override
+    public void close() {
+        try {
+            queue.put(STOP);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkFailure();
+    }
+}
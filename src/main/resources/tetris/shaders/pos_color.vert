@@ -5,7 +5,10 @@ in vec3 Color;
 
 out vec4 vertexColor;
 
-uniform mat4 Projection, ModelView;
+layout(std140) uniform Matrices {
+    mat4 Projection;
+    mat4 ModelView;
+};
 
 void main() {
     gl_Position = Projection * ModelView * vec4(Position, 0.0, 1.0);
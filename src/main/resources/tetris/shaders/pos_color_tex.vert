@@ -7,7 +7,10 @@ in vec2 UV;
 out vec4 vertexColor;
 out vec2 texCoord;
 
-uniform mat4 Projection, ModelView;
+layout(std140) uniform Matrices {
+    mat4 Projection;
+    mat4 ModelView;
+};
 
 void main() {
     gl_Position = Projection * ModelView * vec4(Position, 0.0, 1.0);
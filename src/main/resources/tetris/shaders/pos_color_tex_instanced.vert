@@ -0,0 +1,22 @@
+#version 150 core
+
+in vec2 Position;
+in vec2 UV;
+in vec2 InstancePos;
+in float InstanceColor;
+
+out vec4 vertexColor;
+out vec2 texCoord;
+
+layout(std140) uniform Matrices {
+    mat4 Projection;
+    mat4 ModelView;
+};
+uniform float CellSize;
+uniform vec3 Palette[PALETTE_SIZE];
+
+void main() {
+    gl_Position = Projection * ModelView * vec4((InstancePos + Position) * CellSize, 0.0, 1.0);
+    vertexColor = vec4(Palette[int(InstanceColor)], 1.0);
+    texCoord = UV;
+}
@@ -0,0 +1,136 @@
+package io.github.squid233.tetris;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT_UNALIGNED;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Writes the {@link CellInstances} of a fixed wall without a GL context and checks them against the cells.
+ * The wall is wider than one word of a row, so the views cross the word boundary.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+class CellInstancesTest {
+    private static Wall newWall() {
+        final Wall wall = new Wall(70, 10);
+        wall.setCell(CellType.RED, 0, 0);
+        wall.setCell(CellType.GREEN, 63, 0);
+        wall.setCell(CellType.BLUE, 64, 0);
+        wall.setCell(CellType.GARBAGE, 69, 2);
+        wall.setCell(CellType.CYAN, 10, 5);
+        wall.setCell(CellType.YELLOW, 65, 9);
+        return wall;
+    }
+
+    private static WallView newView(Wall wall, CellState state, int columns, int rows) {
+        final WallView view = new WallView();
+        view.update(wall, state, columns * Wall.CELL_SIZE, rows * Wall.CELL_SIZE, Integer.MAX_VALUE);
+        return view;
+    }
+
+    /**
+     * {@return the expected instances as x, y and color: the settled cells of the view row by row, then the
+     * cells of the piece in the view}
+     */
+    private static List<int[]> expected(Wall wall, WallView view, CellState state) {
+        final List<int[]> list = new ArrayList<>();
+        for (int y = view.bottom(); y < view.top(); y++) {
+            for (int x = view.left(); x < view.right(); x++) {
+                final CellType type = wall.getCell(x, y);
+                if (type != CellType.NONE) list.add(new int[]{x, y, type.ordinal()});
+            }
+        }
+        for (int dy = 0; dy < CellState.STATE_HEIGHT; dy++) {
+            for (int dx = 0; dx < CellState.STATE_WIDTH; dx++) {
+                final int x = state.x() + dx;
+                final int y = state.y() + dy;
+                if (state.isCell(dx, dy) && view.contains(x, y)) list.add(new int[]{x, y, state.color().ordinal()});
+            }
+        }
+        return list;
+    }
+
+    private static void assertInstances(CellInstances instances, int wallCount, List<int[]> expected) {
+        assertEquals(wallCount, instances.wallCount());
+        assertEquals(expected.size(), instances.count());
+        final MemorySegment segment = instances.segment();
+        for (int i = 0; i < expected.size(); i++) {
+            final long offset = (long) i * CellInstances.STRIDE;
+            final int[] cell = expected.get(i);
+            assertEquals(cell[0], segment.get(JAVA_SHORT_UNALIGNED, offset) & 0xffff, "x of instance " + i);
+            assertEquals(cell[1], segment.get(JAVA_SHORT_UNALIGNED, offset + 2) & 0xffff, "y of instance " + i);
+            assertEquals(cell[2], segment.get(JAVA_BYTE, offset + 4) & 0xff, "color of instance " + i);
+        }
+    }
+
+    @Test
+    void writesWholeWall() {
+        final Wall wall = newWall();
+        final CellState state = new CellState();
+        state.set(CellStateType.T, Direction.UP, 30, 3);
+        final WallView view = newView(wall, state, wall.width(), wall.visibleHeight());
+        final CellInstances instances = new CellInstances();
+
+        instances.update(wall, view, state);
+        assertTrue(instances.wallChanged());
+        assertInstances(instances, 6, expected(wall, view, state));
+    }
+
+    @Test
+    void keepsWallWhenOnlyThePieceMoves() {
+        final Wall wall = newWall();
+        final CellState state = new CellState();
+        state.set(CellStateType.T, Direction.UP, 30, 3);
+        final WallView view = newView(wall, state, wall.width(), wall.visibleHeight());
+        final CellInstances instances = new CellInstances();
+        instances.update(wall, view, state);
+
+        state.set(CellStateType.I, Direction.RIGHT, 31, 2);
+        instances.update(wall, view, state);
+        assertFalse(instances.wallChanged());
+        assertInstances(instances, 6, expected(wall, view, state));
+
+        wall.setCell(CellType.NONE, 10, 5);
+        instances.update(wall, view, state);
+        assertTrue(instances.wallChanged());
+        assertInstances(instances, 5, expected(wall, view, state));
+    }
+
+    @Test
+    void writesOnlyTheView() {
+        final Wall wall = newWall();
+        final CellState state = new CellState();
+        state.set(CellStateType.T, Direction.UP, 62, 0);
+        final WallView view = newView(wall, state, 8, 4);
+        assertEquals(60, view.left());
+        assertEquals(0, view.bottom());
+        final CellInstances instances = new CellInstances();
+
+        // a view of the same size on the other side first, so only the columns move
+        final CellState other = new CellState();
+        other.set(CellStateType.T, Direction.UP, 0, 0);
+        final WallView first = newView(wall, other, 8, 4);
+        assertEquals(0, first.left());
+        instances.update(wall, first, other);
+        assertInstances(instances, 1, expected(wall, first, other));
+
+        instances.update(wall, view, state);
+        assertTrue(instances.wallChanged());
+        assertInstances(instances, 2, expected(wall, view, state));
+
+        // the cells of the piece outside the view are left out
+        state.set(CellStateType.I, Direction.UP, 57, 1);
+        instances.update(wall, view, state);
+        assertFalse(instances.wallChanged());
+        final List<int[]> cells = expected(wall, view, state);
+        assertEquals(2 + 1, cells.size());
+        assertInstances(instances, 2, cells);
+    }
+}
@@ -0,0 +1,124 @@
+package io.github.squid233.tetris;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that the generators are reproducible from their seeds, also when split, and that the bags hold every
+ * type as often as they should.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+class PieceGeneratorTest {
+    private static final int PIECES = 700;
+
+    private static CellStateType[] take(PieceGenerator generator, int count) {
+        final CellStateType[] types = new CellStateType[count];
+        for (int i = 0; i < count; i++) {
+            types[i] = generator.next();
+        }
+        return types;
+    }
+
+    /**
+     * {@return the pieces of a generator and of two generators split from it between its pieces}
+     */
+    private static List<CellStateType[]> play(PieceGenerator.Mode mode, long seed) {
+        final PieceGenerator generator = PieceGenerator.of(mode, seed, 5);
+        final List<CellStateType[]> sequences = new ArrayList<>();
+        final CellStateType[] parent = new CellStateType[PIECES * 3];
+        System.arraycopy(take(generator, PIECES), 0, parent, 0, PIECES);
+        final PieceGenerator first = generator.split();
+        System.arraycopy(take(generator, PIECES), 0, parent, PIECES, PIECES);
+        final PieceGenerator second = generator.split();
+        System.arraycopy(take(generator, PIECES), 0, parent, PIECES * 2, PIECES);
+        sequences.add(parent);
+        sequences.add(take(first, PIECES));
+        sequences.add(take(second, PIECES));
+        return sequences;
+    }
+
+    @Test
+    void sameSeedGivesSameSequenceOnAnyThread() throws InterruptedException, ExecutionException {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (PieceGenerator.Mode mode : PieceGenerator.Mode.values()) {
+                final List<CellStateType[]> expected = play(mode, 42);
+                final List<Future<List<CellStateType[]>>> futures = new ArrayList<>();
+                for (int i = 0; i < 16; i++) {
+                    futures.add(executor.submit(() -> play(mode, 42)));
+                }
+                for (Future<List<CellStateType[]>> future : futures) {
+                    final List<CellStateType[]> actual = future.get();
+                    for (int i = 0; i < expected.size(); i++) {
+                        assertTrue(Arrays.equals(expected.get(i), actual.get(i)), mode + " sequence " + i);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void splitLeavesTheParentAlone() {
+        for (PieceGenerator.Mode mode : PieceGenerator.Mode.values()) {
+            final CellStateType[] unsplit = take(PieceGenerator.of(mode, 7, 5), PIECES * 3);
+            final List<CellStateType[]> split = play(mode, 7);
+            assertTrue(Arrays.equals(unsplit, split.get(0)), mode + " parent changed by split");
+            // the children are neither the parent nor each other
+            assertFalse(Arrays.equals(Arrays.copyOf(unsplit, PIECES), split.get(1)), mode + " first child");
+            assertFalse(Arrays.equals(split.get(1), split.get(2)), mode + " second child");
+        }
+    }
+
+    @Test
+    void splitIsReproducible() {
+        final PieceGenerator a = PieceGenerator.of(PieceGenerator.Mode.BAG_7, 3, 0);
+        final PieceGenerator b = PieceGenerator.of(PieceGenerator.Mode.BAG_7, 3, 0);
+        take(b, 100);
+        for (int i = 0; i < 4; i++) {
+            final PieceGenerator childA = a.split();
+            final PieceGenerator childB = b.split();
+            assertEquals(childA.seed(), childB.seed());
+            assertEquals(PieceGenerator.Mode.BAG_7, childA.mode());
+            assertEquals(0, childA.previewLength());
+        }
+    }
+
+    private static void assertBags(PieceGenerator generator, int copies) {
+        final int size = CellStateType.VALUE_COUNT * copies;
+        final int[] counts = new int[CellStateType.VALUE_COUNT];
+        for (int bag = 0; bag < 100; bag++) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < size; i++) {
+                counts[generator.next().ordinal()]++;
+            }
+            for (int type = 0; type < counts.length; type++) {
+                assertEquals(copies, counts[type], "type " + type + " in bag " + bag);
+            }
+        }
+    }
+
+    @Test
+    void bagsHoldEveryTypeOnceOrTwice() {
+        for (int previewLength : new int[]{0, 1, 5, 14, 20}) {
+            final PieceGenerator bag7 = PieceGenerator.of(PieceGenerator.Mode.BAG_7, previewLength, previewLength);
+            assertBags(bag7, 1);
+            assertBags(bag7.split(), 1);
+            final PieceGenerator bag14 = PieceGenerator.of(PieceGenerator.Mode.BAG_14, previewLength, previewLength);
+            assertBags(bag14, 2);
+            assertBags(bag14.split(), 2);
+        }
+    }
+}
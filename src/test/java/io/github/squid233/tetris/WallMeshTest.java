@@ -0,0 +1,168 @@
+package io.github.squid233.tetris;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_FLOAT_UNALIGNED;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Builds the {@link WallMesh} of a fixed wall without a GL context and checks every quad against the cells.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+class WallMeshTest {
+    private static final Sprite SPRITE = new Sprite(0.25f, 0.5f, 0.75f, 1f, 16, 16);
+    private static final long QUAD_BYTES = 4L * Tessellator.STRIDE;
+
+    private static Wall newWall() {
+        final Wall wall = new Wall(6, 8);
+        wall.setCell(CellType.RED, 0, 0);
+        wall.setCell(CellType.GARBAGE, 5, 0);
+        wall.setCell(CellType.BLUE, 2, 3);
+        wall.setCell(CellType.YELLOW, 3, 7);
+        return wall;
+    }
+
+    private static WallView newView(Wall wall, CellState state, int columns, int rows) {
+        final WallView view = new WallView();
+        view.update(wall, state, columns * Wall.CELL_SIZE, rows * Wall.CELL_SIZE, Integer.MAX_VALUE);
+        return view;
+    }
+
+    private static void assertVertex(MemorySegment vertices, long offset, float x, float y, float u, float v, int colorRGB) {
+        assertEquals(x, vertices.get(JAVA_FLOAT_UNALIGNED, offset));
+        assertEquals(y, vertices.get(JAVA_FLOAT_UNALIGNED, offset + 4));
+        assertEquals(u, vertices.get(JAVA_FLOAT_UNALIGNED, offset + Tessellator.UV_OFFSET));
+        assertEquals(v, vertices.get(JAVA_FLOAT_UNALIGNED, offset + Tessellator.UV_OFFSET + 4));
+        assertEquals((byte) (colorRGB >>> 16), vertices.get(JAVA_BYTE, offset + Tessellator.COLOR_OFFSET));
+        assertEquals((byte) (colorRGB >>> 8), vertices.get(JAVA_BYTE, offset + Tessellator.COLOR_OFFSET + 1));
+        assertEquals((byte) colorRGB, vertices.get(JAVA_BYTE, offset + Tessellator.COLOR_OFFSET + 2));
+    }
+
+    /**
+     * Checks that the mesh holds one quad per cell of the view, degenerate for the empty cells.
+     *
+     * @return the count of the quads that are not degenerate.
+     */
+    private static int assertBuilt(WallMesh mesh, Wall wall, WallView view) {
+        assertEquals(view.columns() * view.rows(), mesh.quadCount());
+        assertEquals(view.columns() * QUAD_BYTES, mesh.rowBytes());
+        final MemorySegment vertices = mesh.vertices();
+        int cells = 0;
+        for (int row = 0; row < view.rows(); row++) {
+            for (int column = 0; column < view.columns(); column++) {
+                final int x = view.left() + column;
+                final int y = view.bottom() + row;
+                final long offset = mesh.rowBytes() * row + column * QUAD_BYTES;
+                final CellType type = wall.getCell(x, y);
+                if (type == CellType.NONE) {
+                    for (long i = 0; i < QUAD_BYTES; i++) {
+                        if (vertices.get(JAVA_BYTE, offset + i) != 0) fail("Empty cell " + x + ", " + y + " is not degenerate");
+                    }
+                    continue;
+                }
+                final float x0 = x * Wall.CELL_SIZE;
+                final float y0 = y * Wall.CELL_SIZE;
+                final float x1 = (x + 1) * Wall.CELL_SIZE;
+                final float y1 = (y + 1) * Wall.CELL_SIZE;
+                final int color = type.colorRGB();
+                assertVertex(vertices, offset, x0, y1, SPRITE.u0(), SPRITE.v0(), color);
+                assertVertex(vertices, offset + Tessellator.STRIDE, x0, y0, SPRITE.u0(), SPRITE.v1(), color);
+                assertVertex(vertices, offset + Tessellator.STRIDE * 2L, x1, y0, SPRITE.u1(), SPRITE.v1(), color);
+                assertVertex(vertices, offset + Tessellator.STRIDE * 3L, x1, y1, SPRITE.u1(), SPRITE.v0(), color);
+                cells++;
+            }
+        }
+        return cells;
+    }
+
+    @Test
+    void buildsWholeWall() {
+        final Wall wall = newWall();
+        final CellState state = new CellState();
+        state.reset(CellStateType.T, wall);
+        final WallView view = newView(wall, state, wall.width(), wall.visibleHeight());
+        final WallMesh mesh = new WallMesh(SPRITE);
+
+        assertTrue(mesh.update(wall, view));
+        assertEquals(0, mesh.dirtyFrom());
+        assertEquals(wall.visibleHeight() - 1, mesh.dirtyTo());
+        assertEquals(4, assertBuilt(mesh, wall, view));
+
+        mesh.clearDirty();
+        assertFalse(mesh.update(wall, view));
+        assertFalse(mesh.isDirty());
+    }
+
+    @Test
+    void rebuildsChangedRows() {
+        final Wall wall = newWall();
+        final CellState state = new CellState();
+        state.reset(CellStateType.T, wall);
+        final WallView view = newView(wall, state, wall.width(), wall.visibleHeight());
+        final WallMesh mesh = new WallMesh(SPRITE);
+        mesh.update(wall, view);
+        mesh.clearDirty();
+
+        wall.setCell(CellType.GREEN, 4, 5);
+        assertTrue(mesh.update(wall, view));
+        assertEquals(5, mesh.dirtyFrom());
+        assertEquals(5, mesh.dirtyTo());
+        assertEquals(5, assertBuilt(mesh, wall, view));
+        mesh.clearDirty();
+
+        wall.setCell(CellType.NONE, 2, 3);
+        assertTrue(mesh.update(wall, view));
+        assertEquals(3, mesh.dirtyFrom());
+        assertEquals(3, mesh.dirtyTo());
+        assertEquals(4, assertBuilt(mesh, wall, view));
+        mesh.clearDirty();
+
+        // the rows above a cleared line move down
+        for (int x = 0; x < wall.width(); x++) {
+            wall.setCell(CellType.ORANGE, x, 1);
+        }
+        mesh.update(wall, view);
+        mesh.clearDirty();
+        assertEquals(1, wall.clearLines(1, 1).count());
+        assertTrue(mesh.update(wall, view));
+        assertEquals(1, mesh.dirtyFrom());
+        assertEquals(wall.visibleHeight() - 1, mesh.dirtyTo());
+        assertEquals(4, assertBuilt(mesh, wall, view));
+    }
+
+    @Test
+    void rebuildsMovedView() {
+        final Wall wall = newWall();
+        final CellState state = new CellState();
+        state.reset(CellStateType.T, wall);
+        final WallMesh mesh = new WallMesh(SPRITE);
+        mesh.update(wall, newView(wall, state, wall.width(), wall.visibleHeight()));
+        mesh.clearDirty();
+
+        // a smaller view in the top right corner, following the piece
+        state.set(CellStateType.T, Direction.UP, 2, 4);
+        final WallView view = newView(wall, state, 4, 3);
+        assertEquals(2, view.left());
+        assertEquals(5, view.bottom());
+        assertTrue(mesh.update(wall, view));
+        assertEquals(0, mesh.dirtyFrom());
+        assertEquals(2, mesh.dirtyTo());
+        assertEquals(1, assertBuilt(mesh, wall, view));
+        mesh.clearDirty();
+
+        // only the columns move
+        state.set(CellStateType.T, Direction.UP, 0, 5);
+        final WallView left = newView(wall, state, 4, 3);
+        assertEquals(0, left.left());
+        assertEquals(5, left.bottom());
+        assertTrue(mesh.update(wall, left));
+        assertEquals(0, mesh.dirtyFrom());
+        assertEquals(2, mesh.dirtyTo());
+        assertEquals(1, assertBuilt(mesh, wall, left));
+    }
+}
@@ -0,0 +1,67 @@
+package io.github.squid233.tetris.match;
+
+import io.github.squid233.tetris.GameInput;
+import io.github.squid233.tetris.PieceGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that a match that throws ends and leaves the scheduler able to host new matches.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+class MatchSchedulerTest {
+    private static Match throwingMatch(Throwable throwable, int ticks) {
+        final AtomicInteger count = new AtomicInteger();
+        return new Match(0, 0, PieceGenerator.Mode.BAG_7, simulation -> {
+            if (count.incrementAndGet() > ticks) {
+                if (throwable instanceof Error error) throw error;
+                throw (RuntimeException) throwable;
+            }
+            return GameInput.NONE;
+        }, simulation -> GameInput.NONE);
+    }
+
+    private static void assertEnds(Throwable throwable) throws InterruptedException, ExecutionException, TimeoutException {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (MatchScheduler scheduler = new MatchScheduler(1000, 4, executor)) {
+            final CompletableFuture<Throwable> failure = new CompletableFuture<>();
+            assertTrue(scheduler.host(throwingMatch(throwable, 3), (match, t) -> failure.complete(t)));
+            assertSame(throwable, failure.get(10, TimeUnit.SECONDS));
+            assertEquals(1, scheduler.failedMatches());
+            assertEquals(0, scheduler.finishedMatches());
+
+            // the slot is removed, and the scheduler is not left overloaded
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (scheduler.hostedMatches() > 0 || scheduler.isOverloaded()) {
+                if (System.nanoTime() > deadline) fail("The failed match is still hosted");
+                TimeUnit.MILLISECONDS.sleep(1);
+            }
+            final CompletableFuture<Throwable> next = new CompletableFuture<>();
+            assertTrue(scheduler.host(throwingMatch(throwable, 10), (match, t) -> next.complete(t)));
+            assertSame(throwable, next.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void runtimeExceptionEndsTheMatch() throws InterruptedException, ExecutionException, TimeoutException {
+        assertEnds(new IllegalStateException("test"));
+    }
+
+    @Test
+    void errorEndsTheMatch() throws InterruptedException, ExecutionException, TimeoutException {
+        assertEnds(new AssertionError("test"));
+    }
+}
@@ -0,0 +1,284 @@
+package io.github.squid233.tetris.net;
+
+import io.github.squid233.tetris.CellState;
+import io.github.squid233.tetris.GameInput;
+import io.github.squid233.tetris.GameSimulation;
+import io.github.squid233.tetris.Wall;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives a {@link GameServer} over the loopback address one tick at a time and checks that a {@link RemoteGame}
+ * rebuilt from the states always matches the game on the server.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+class LoopbackSyncTest {
+    /**
+     * A client that reads one message at a time, blocking, or the complete messages that arrived with
+     * {@link #readAvailable()}.
+     */
+    private static final class Client implements AutoCloseable {
+        private final SocketChannel channel;
+        private final ByteBuffer out = ByteBuffer.allocate(NetProtocol.INPUT_SIZE);
+        private final ByteBuffer size = ByteBuffer.allocate(4);
+        private final RemoteGame game;
+        private ByteBuffer pending;
+        private long states;
+
+        Client(GameServer server) throws IOException {
+            this(server, 0);
+        }
+
+        /**
+         * Connects a client.
+         *
+         * @param receiveBufferSize the size of the socket receive buffer, or {@code 0} for the default.
+         */
+        Client(GameServer server, int receiveBufferSize) throws IOException {
+            channel = SocketChannel.open();
+            if (receiveBufferSize > 0) channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+            channel.connect(server.address());
+            // the loop accepts the connection, sends the hello and the first state in one step
+            final ServerLoop loop = server.loop(0);
+            while (loop.connections().isEmpty()) {
+                loop.step();
+            }
+            final ByteBuffer hello = read();
+            assertEquals(NetProtocol.HELLO, hello.get());
+            assertEquals(NetProtocol.VERSION, hello.get());
+            game = new RemoteGame(hello.getShort() & 0xffff, hello.getShort() & 0xffff);
+            assertEquals(server.ticksPerSecond(), hello.getShort() & 0xffff);
+            readState();
+        }
+
+        private ByteBuffer read() throws IOException {
+            size.clear();
+            while (size.hasRemaining()) {
+                if (channel.read(size) < 0) fail("Closed by the server");
+            }
+            final ByteBuffer message = ByteBuffer.allocate(size.flip().getInt());
+            while (message.hasRemaining()) {
+                if (channel.read(message) < 0) fail("Closed by the server");
+            }
+            return message.flip();
+        }
+
+        void readState() throws IOException {
+            apply(read());
+        }
+
+        private void apply(ByteBuffer state) {
+            assertEquals(NetProtocol.STATE, state.get());
+            assertTrue(game.apply(state), "stale state");
+            assertFalse(state.hasRemaining());
+            states++;
+        }
+
+        /**
+         * Reads the complete states that arrived, without blocking. The client cannot read blocking afterwards.
+         *
+         * @return the count of the states read.
+         */
+        int readAvailable() throws IOException {
+            if (pending == null) {
+                channel.configureBlocking(false);
+                pending = ByteBuffer.allocate(4 + NetProtocol.STATE_HEADER_SIZE +
+                    NetProtocol.maxRowsSize(game.wall().width(), game.wall().height()));
+            }
+            if (channel.read(pending) < 0) fail("Closed by the server");
+            pending.flip();
+            int count = 0;
+            while (pending.remaining() >= 4) {
+                final int length = pending.getInt(pending.position());
+                if (length <= 0 || length > pending.capacity() - 4) fail("Broken framing: a message of " + length + " bytes");
+                if (pending.remaining() < 4 + length) break;
+                final int start = pending.position() + 4;
+                apply(pending.slice(start, length));
+                pending.position(start + length);
+                count++;
+            }
+            pending.compact();
+            return count;
+        }
+
+        void send(int input, int ack) throws IOException {
+            out.clear().put(NetProtocol.INPUT).put((byte) input).putInt(ack).putLong(0).flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static GameServer newServer(int width, int visibleHeight) throws IOException {
+        return new GameServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1, 60, width, visibleHeight, false);
+    }
+
+    private static void assertSynced(GameSimulation simulation, RemoteGame game) {
+        assertEquals(simulation.ticks(), game.ticks());
+        assertEquals(simulation.score(), game.score());
+        assertEquals(simulation.lines(), game.lines());
+        assertEquals(simulation.isGameOver(), game.isGameOver());
+        final Wall expected = simulation.wall();
+        final Wall actual = game.wall();
+        assertEquals(expected.top(), actual.top(), "top");
+        for (int y = 0; y < expected.height(); y++) {
+            for (int x = 0; x < expected.width(); x++) {
+                if (expected.getCell(x, y) != actual.getCell(x, y)) {
+                    fail("Cell " + x + ", " + y + " at tick " + simulation.ticks());
+                }
+            }
+        }
+        final CellState piece = simulation.holdState();
+        if (piece.type() == null) {
+            assertNull(game.piece());
+        } else {
+            assertNotNull(game.piece());
+            assertEquals(piece.type(), game.piece().type());
+            assertEquals(piece.direction(), game.piece().direction());
+            assertEquals(piece.x(), game.piece().x());
+            assertEquals(piece.y(), game.piece().y());
+        }
+    }
+
+    /**
+     * Plays random inputs and only acknowledges a snapshot now and then, so the bases lag by many ticks and
+     * several pieces lock and clear lines between the base and the snapshot the client has.
+     * Hard drops end many games, so the fallback to a full state on a new game is covered too.
+     */
+    private static void playRandom(int width, int visibleHeight, long seed, int ticks) throws IOException {
+        try (GameServer server = newServer(width, visibleHeight);
+             Client client = new Client(server)) {
+            final ServerLoop loop = server.loop(0);
+            final SplittableRandom random = new SplittableRandom(seed);
+            int acked = client.game.snapshot();
+            GameSimulation lastGame = loop.connections().get(0).simulation();
+            int games = 1;
+            for (int i = 0; i < ticks; i++) {
+                if (random.nextInt(ServerConnection.HISTORY / 4) == 0) acked = client.game.snapshot();
+                final int input = random.nextInt(3) == 0 ? 1 << random.nextInt(6) : GameInput.NONE;
+                client.send(input, acked);
+                loop.step();
+                client.readState();
+                final GameSimulation simulation = loop.connections().get(0).simulation();
+                if (simulation != lastGame) {
+                    lastGame = simulation;
+                    games++;
+                }
+                assertSynced(simulation, client.game);
+            }
+            assertTrue(games > 1, "no game ended");
+            assertTrue(server.fullStatesSent() < server.statesSent() / 2, "mostly full states");
+            assertEquals(0, server.statesSkipped());
+        }
+    }
+
+    @Test
+    void deltasRebuildDefaultWall() throws IOException {
+        playRandom(Wall.DEFAULT_WIDTH, Wall.DEFAULT_VISIBLE_HEIGHT, 1, 5000);
+    }
+
+    @Test
+    void deltasRebuildSmallWall() throws IOException {
+        playRandom(4, 6, 2, 3000);
+    }
+
+    @Test
+    void deltasRebuildWideWall() throws IOException {
+        // more than one word per row and more than one chunk of rows
+        playRandom(70, 40, 3, 3000);
+    }
+
+    @Test
+    void clientBehindHistoryGetsFullStates() throws IOException {
+        try (GameServer server = newServer(Wall.DEFAULT_WIDTH, Wall.DEFAULT_VISIBLE_HEIGHT);
+             Client client = new Client(server)) {
+            final ServerLoop loop = server.loop(0);
+            final SplittableRandom random = new SplittableRandom(4);
+            // move the first piece around, then stop acknowledging until the base falls out of the history
+            int acked = 0;
+            int fullStates = 0;
+            for (int i = 0; i < ServerConnection.HISTORY * 2; i++) {
+                if (i < 10) acked = client.game.snapshot();
+                client.send(i % 4 == 0 ? 1 << random.nextInt(2) : GameInput.NONE, acked);
+                final long full = server.fullStatesSent();
+                loop.step();
+                client.readState();
+                assertSynced(loop.connections().get(0).simulation(), client.game);
+                final boolean behind = client.game.snapshot() - acked >= ServerConnection.HISTORY;
+                assertEquals(behind, server.fullStatesSent() > full, "full state at snapshot " + client.game.snapshot());
+                if (behind) fullStates++;
+            }
+            assertTrue(fullStates > 0, "never fell behind the history");
+
+            // deltas again once the client acknowledges
+            final long full = server.fullStatesSent();
+            for (int i = 0; i < 200; i++) {
+                client.send(random.nextInt(8) == 0 ? GameInput.LEFT : GameInput.NONE, client.game.snapshot());
+                loop.step();
+                client.readState();
+                assertSynced(loop.connections().get(0).simulation(), client.game);
+            }
+            assertEquals(full, server.fullStatesSent());
+        }
+    }
+
+    /**
+     * Reads the states that arrived until the client has every state the server sent.
+     */
+    private static void drain(GameServer server, ServerConnection connection, Client client) throws IOException {
+        // the TCP stack may take a while to reopen a full window
+        long lastRead = System.nanoTime();
+        while (client.states < server.statesSent()) {
+            connection.flush();
+            if (client.readAvailable() > 0) {
+                lastRead = System.nanoTime();
+            } else if (System.nanoTime() - lastRead > TimeUnit.SECONDS.toNanos(10)) {
+                fail("Stalled at " + client.states + " of " + server.statesSent() + " states");
+            }
+        }
+    }
+
+    @Test
+    void partialWritesKeepTheFraming() throws IOException {
+        // the first piece falls through the whole test, so the wall stays empty and every state is a header
+        // without rows, and any partial write leaves a part of a header
+        try (GameServer server = newServer(Wall.DEFAULT_WIDTH, 30_000);
+             Client client = new Client(server, 4096)) {
+            final ServerLoop loop = server.loop(0);
+            final ServerConnection connection = loop.connections().get(0);
+            final SplittableRandom random = new SplittableRandom(5);
+            for (int round = 0; round < 5; round++) {
+                // the client stops reading until the socket buffers are full and a state is held back
+                final long skipped = server.statesSkipped();
+                for (int tick = 0; server.statesSkipped() == skipped; tick++) {
+                    if (tick > 200_000) fail("No state was held back; the partly written states were dropped");
+                    client.send(random.nextInt(4) == 0 ? 1 << random.nextInt(2) : GameInput.NONE, client.game.snapshot());
+                    loop.step();
+                }
+                drain(server, connection, client);
+                // the tick that was skipped last is sent by the next one
+                loop.step();
+                drain(server, connection, client);
+                assertSynced(connection.simulation(), client.game);
+                assertEquals(0, client.game.wall().top());
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package io.github.squid233.tetris.replay;
+
+import io.github.squid233.tetris.CellState;
+import io.github.squid233.tetris.GameInput;
+import io.github.squid233.tetris.GameSimulation;
+import io.github.squid233.tetris.PieceGenerator;
+import io.github.squid233.tetris.Wall;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Records seeded games, maps the files and checks that the replays simulate to the live games.
+ *
+ * @author squid233
+ * @since 0.1.0
+ */
+class ReplayTest {
+    private static final PieceGenerator.Mode MODE = PieceGenerator.Mode.BAG_7;
+    private static final int WIDTH = Wall.DEFAULT_WIDTH;
+    // tall enough that the game lasts all inputs
+    private static final int VISIBLE_HEIGHT = 200;
+    // no hard drops, so the game lasts
+    private static final int[] KEYS = {GameInput.LEFT, GameInput.RIGHT, GameInput.DOWN, GameInput.ROTATE_CW, GameInput.ROTATE_CCW};
+
+    /**
+     * {@return inputs with long runs of the same input between stretches of an input change every tick or two}
+     */
+    private static int[] inputs(long seed, int ticks) {
+        final SplittableRandom random = new SplittableRandom(seed);
+        final int[] inputs = new int[ticks];
+        int i = 0;
+        while (i < ticks) {
+            final int end = Math.min(ticks, i + 1 + random.nextInt(2000));
+            if (random.nextBoolean()) {
+                // held, e.g. nothing or a move against the side
+                final int input = random.nextInt(3) == 0 ? GameInput.NONE : 1 << random.nextInt(2);
+                while (i < end) inputs[i++] = input;
+            } else {
+                for (; i < end; i++) {
+                    // a new run every tick
+                    final int previous = i > 0 ? inputs[i - 1] : GameInput.NONE;
+                    int input;
+                    do {
+                        input = random.nextInt(2) == 0 ? GameInput.NONE : KEYS[random.nextInt(KEYS.length)];
+                    } while (input == previous);
+                    inputs[i] = input;
+                }
+            }
+        }
+        return inputs;
+    }
+
+    private static GameSimulation newGame(long seed) {
+        return new GameSimulation(seed, MODE, WIDTH, VISIBLE_HEIGHT);
+    }
+
+    /**
+     * Plays the inputs on a new game, recording them.
+     *
+     * @return the game.
+     */
+    private static GameSimulation record(ReplayWriter writer, Path path, long seed, int[] inputs) {
+        final GameSimulation simulation = newGame(seed);
+        final ReplayRecorder recorder = writer.open(path, simulation);
+        for (int input : inputs) {
+            recorder.record(input);
+            simulation.tick(input);
+        }
+        recorder.finish(simulation);
+        return simulation;
+    }
+
+    private static GameSimulation play(long seed, int[] inputs, int ticks) {
+        final GameSimulation simulation = newGame(seed);
+        for (int i = 0; i < ticks; i++) {
+            simulation.tick(inputs[i]);
+        }
+        return simulation;
+    }
+
+    private static void assertSameGame(GameSimulation expected, GameSimulation actual) {
+        assertEquals(expected.ticks(), actual.ticks());
+        assertEquals(expected.pieces(), actual.pieces());
+        assertEquals(expected.lines(), actual.lines());
+        assertEquals(expected.score(), actual.score());
+        assertEquals(expected.isGameOver(), actual.isGameOver(), "game over");
+        final CellState expectedPiece = expected.holdState();
+        final CellState actualPiece = actual.holdState();
+        assertEquals(expectedPiece.type(), actualPiece.type());
+        assertEquals(expectedPiece.direction(), actualPiece.direction());
+        assertEquals(expectedPiece.x(), actualPiece.x());
+        assertEquals(expectedPiece.y(), actualPiece.y());
+        final Wall expectedWall = expected.wall();
+        final Wall actualWall = actual.wall();
+        assertEquals(expectedWall.top(), actualWall.top(), "top");
+        for (int y = 0; y < expectedWall.top(); y++) {
+            for (int x = 0; x < expectedWall.width(); x++) {
+                if (expectedWall.getCell(x, y) != actualWall.getCell(x, y)) fail("Cell " + x + ", " + y);
+            }
+        }
+    }
+
+    /**
+     * Records a game, maps the file and checks the summary, {@link Replay#verify()}, {@link Replay#seek(long)}
+     * and {@link Replay.Inputs#nextInput()} against live games.
+     *
+     * @return the size of the replay file.
+     */
+    private static long assertReplays(ReplayWriter writer, long seed, int[] inputs) throws IOException {
+        final Path path = Files.createTempFile("tetris", ".trpl");
+        try {
+            final GameSimulation live;
+            try (writer) {
+                live = record(writer, path, seed, inputs);
+            }
+            assertEquals(inputs.length, live.ticks(), "the game ended before the inputs");
+            try (Arena arena = Arena.openConfined()) {
+                final Replay replay = Replay.open(path, arena.scope());
+                assertEquals(MODE, replay.mode());
+                assertEquals(seed, replay.seed());
+                assertEquals(WIDTH, replay.width());
+                assertEquals(VISIBLE_HEIGHT, replay.visibleHeight());
+                assertEquals(live.ticks(), replay.ticks());
+                assertEquals(live.pieces(), replay.pieces());
+                assertEquals(live.lines(), replay.lines());
+                assertEquals(live.score(), replay.score());
+                assertTrue(replay.verify(), "verify");
+
+                final Replay.Inputs cursor = replay.inputs();
+                for (int i = 0; i < inputs.length; i++) {
+                    assertTrue(cursor.hasNext());
+                    assertEquals(inputs[i], cursor.nextInput(), "input of tick " + i);
+                }
+                assertFalse(cursor.hasNext());
+                assertThrows(IllegalStateException.class, cursor::nextInput);
+
+                final SplittableRandom random = new SplittableRandom(seed);
+                final long[] ticks = {0, 1, inputs.length / 2, inputs.length - 1, random.nextInt(inputs.length + 1)};
+                for (long tick : ticks) {
+                    assertSameGame(play(seed, inputs, (int) tick), replay.seek(tick));
+                }
+                // past the end
+                assertSameGame(live, replay.seek(inputs.length + 100L));
+            }
+            return Files.size(path);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void replaysLongGame() throws IOException {
+        final long size = assertReplays(new ReplayWriter(), 1, inputs(1, 150_000));
+        assertTrue(size > 64 * 1024, "not more than one default buffer: " + size);
+    }
+
+    @Test
+    void replaysAcrossSmallBuffers() throws IOException {
+        // a buffer only holds the footer, so the header, many runs and the footer each cross a boundary
+        assertReplays(new ReplayWriter(ReplayFormat.FOOTER_SIZE, 2), 2, inputs(2, 20_000));
+    }
+
+    @Test
+    void replaysLongRun() throws IOException {
+        // after the header and 5 runs of one byte, a buffer of the footer size has no room for a varint, so the
+        // long run, a varint of several bytes, starts the next buffer
+        final int[] inputs = new int[60_000];
+        inputs[0] = GameInput.LEFT;
+        inputs[2] = GameInput.RIGHT;
+        inputs[4] = GameInput.LEFT;
+        assertReplays(new ReplayWriter(ReplayFormat.FOOTER_SIZE, 2), 3, inputs);
+    }
+
+    @Test
+    void replaysZeroTickGame() throws IOException {
+        final Path path = Files.createTempFile("tetris", ".trpl");
+        try {
+            try (ReplayWriter writer = new ReplayWriter()) {
+                writer.open(path, newGame(4)).finish(newGame(4));
+            }
+            try (Arena arena = Arena.openConfined()) {
+                final Replay replay = Replay.open(path, arena.scope());
+                assertEquals(0, replay.ticks());
+                assertEquals(0, replay.score());
+                assertTrue(replay.verify(), "verify");
+                assertFalse(replay.inputs().hasNext());
+                assertFalse(replay.inputs().nextRun());
+                assertSameGame(newGame(4), replay.seek(10));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}